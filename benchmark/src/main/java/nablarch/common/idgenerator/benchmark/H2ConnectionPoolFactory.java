@@ -0,0 +1,69 @@
+package nablarch.common.idgenerator.benchmark;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import nablarch.core.repository.di.ComponentFactory;
+
+/**
+ * ベンチマークで使用するH2のコネクションプールを生成するクラス。
+ */
+public class H2ConnectionPoolFactory implements ComponentFactory<DataSource> {
+
+    /** 接続URL */
+    private String url;
+
+    /** ユーザ */
+    private String user = "sa";
+
+    /** パスワード */
+    private String password = "";
+
+    /** 最大コネクション数 */
+    private int maxConnections = 10;
+
+    @Override
+    public DataSource createObject() {
+        final JdbcConnectionPool pool = JdbcConnectionPool.create(url, user, password);
+        pool.setMaxConnections(maxConnections);
+        return pool;
+    }
+
+    /**
+     * 接続URLを設定する。
+     *
+     * @param url 接続URL
+     */
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * ユーザを設定する。
+     *
+     * @param user ユーザ
+     */
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    /**
+     * パスワードを設定する。
+     *
+     * @param password パスワード
+     */
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * 最大コネクション数を設定する。<br>
+     * 計測するスレッド数の2倍(業務トランザクションと採番用トランザクション)以上を設定すること。
+     *
+     * @param maxConnections 最大コネクション数
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+}
@@ -0,0 +1,15 @@
+package nablarch.common.idgenerator.benchmark;
+
+import nablarch.common.idgenerator.SequenceIdGeneratorSupport;
+
+/**
+ * H2のシーケンスを使用して採番する{@link SequenceIdGeneratorSupport}の実装クラス。
+ */
+@SuppressWarnings("deprecation")
+public class H2SequenceIdGenerator extends SequenceIdGeneratorSupport {
+
+    @Override
+    protected String createSql(String sequenceName) {
+        return "SELECT NEXT VALUE FOR " + sequenceName + " AS GENERATE_ID";
+    }
+}
@@ -0,0 +1,279 @@
+package nablarch.common.idgenerator.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import nablarch.common.idgenerator.IdGenerator;
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.core.repository.SystemRepository;
+import nablarch.core.repository.di.DiContainer;
+import nablarch.core.repository.di.config.xml.XmlComponentDefinitionLoader;
+import nablarch.core.repository.disposal.ApplicationDisposer;
+import nablarch.core.repository.initialization.ApplicationInitializer;
+
+/**
+ * 各採番クラスのスループット、レイテンシ、1回あたりのメモリ割り当て量を組み込みH2で計測するベンチマーク。<br>
+ * <br>
+ * 計測対象の採番クラスは{@link #generator}、採番対象IDの分布は{@link #distribution}で切り替える。
+ * スレッド数は1、4、16、64のそれぞれをベンチマークメソッドとして定義している。<br>
+ * <br>
+ * {@link nablarch.common.idgenerator.TableIdGenerator}、{@link nablarch.common.idgenerator.SequenceIdGenerator}、
+ * {@link nablarch.common.idgenerator.SequenceIdGeneratorSupport}は業務トランザクション内で使用するクラスのため、
+ * 1回の計測に業務トランザクションの開始とコミットを含めている。
+ * {@link nablarch.common.idgenerator.FastTableIdGenerator}は独自のトランザクションで採番するため、採番処理のみを計測する。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    /** コンポーネント設定ファイル */
+    private static final String CONFIG = "nablarch/common/idgenerator/benchmark/benchmark.xml";
+
+    /** 多数キーの分布で使用する採番対象IDの数 */
+    private static final int KEY_COUNT = 256;
+
+    /**
+     * 計測対象の採番クラス(コンポーネント名)。
+     * <ul>
+     *     <li>tableIdGenerator</li>
+     *     <li>fastTableIdGenerator(1件ごとに採番テーブルを更新)</li>
+     *     <li>fastTableIdGeneratorBlock(ブロック単位の予約と先読み)</li>
+     *     <li>sequenceIdGenerator</li>
+     *     <li>sequenceIdGeneratorSupport</li>
+     * </ul>
+     */
+    @Param({"tableIdGenerator", "fastTableIdGenerator", "fastTableIdGeneratorBlock",
+            "sequenceIdGenerator", "sequenceIdGeneratorSupport"})
+    public String generator;
+
+    /**
+     * 採番対象IDの分布。
+     * <ul>
+     *     <li>hot:全スレッドが同一の採番対象IDを使用する</li>
+     *     <li>many:{@value #KEY_COUNT}個の採番対象IDから無作為に選択する</li>
+     * </ul>
+     */
+    @Param({"hot", "many"})
+    public String distribution;
+
+    /** 計測対象の採番クラス */
+    private IdGenerator idGenerator;
+
+    /** 業務トランザクション(採番処理のみを計測する場合は{@code null}) */
+    private SimpleDbTransactionManager businessTransactionManager;
+
+    /** 採番対象ID */
+    private String[] keys;
+
+    /**
+     * 採番テーブル、シーケンスを作成し、採番クラスを初期化する。
+     *
+     * @throws Exception 例外
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SystemRepository.clear();
+        SystemRepository.load(new DiContainer(new XmlComponentDefinitionLoader(CONFIG)));
+
+        final int keyCount = "hot".equals(distribution) ? 1 : KEY_COUNT;
+        final String[] ids = new String[keyCount];
+        final String[] sequenceNames = new String[keyCount];
+        final Map<String, String> idTable = new HashMap<String, String>();
+        for (int i = 0; i < keyCount; i++) {
+            ids[i] = String.format("K%03d", i);
+            sequenceNames[i] = String.format("BENCH_SEQ_%03d", i);
+            idTable.put(ids[i], sequenceNames[i]);
+        }
+        createSchema(SystemRepository.<DataSource>get("dataSource"), ids, sequenceNames);
+
+        final H2SequenceIdGenerator support = SystemRepository.get("sequenceIdGeneratorSupport");
+        support.setIdTable(idTable);
+        SystemRepository.<ApplicationInitializer>get("initializer").initialize();
+
+        idGenerator = SystemRepository.get(generator);
+        if (idGenerator == null) {
+            throw new IllegalArgumentException("generator was not found. generator = " + generator);
+        }
+        businessTransactionManager = generator.startsWith("fastTable")
+                ? null : SystemRepository.<SimpleDbTransactionManager>get("businessTransactionManager");
+        keys = generator.equals("sequenceIdGenerator") ? sequenceNames : ids;
+    }
+
+    /**
+     * 採番クラスを廃棄し、コネクションプールを閉じる。
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SystemRepository.<ApplicationDisposer>get("disposer").dispose();
+        SystemRepository.<JdbcConnectionPool>get("dataSource").dispose();
+        SystemRepository.clear();
+    }
+
+    /**
+     * 1スレッドで採番する。
+     *
+     * @return 採番結果
+     */
+    @Benchmark
+    @Threads(1)
+    public String threads01() {
+        return generate(nextKey());
+    }
+
+    /**
+     * 4スレッドで採番する。
+     *
+     * @return 採番結果
+     */
+    @Benchmark
+    @Threads(4)
+    public String threads04() {
+        return generate(nextKey());
+    }
+
+    /**
+     * 16スレッドで採番する。
+     *
+     * @return 採番結果
+     */
+    @Benchmark
+    @Threads(16)
+    public String threads16() {
+        return generate(nextKey());
+    }
+
+    /**
+     * 64スレッドで採番する。
+     *
+     * @return 採番結果
+     */
+    @Benchmark
+    @Threads(64)
+    public String threads64() {
+        return generate(nextKey());
+    }
+
+    /**
+     * 分布に従って採番対象IDを選択する。
+     *
+     * @return 採番対象ID
+     */
+    private String nextKey() {
+        return keys.length == 1 ? keys[0] : keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    /**
+     * 採番する。
+     *
+     * @param key 採番対象ID
+     * @return 採番結果
+     */
+    private String generate(final String key) {
+        if (businessTransactionManager == null) {
+            return idGenerator.generateId(key);
+        }
+        return new SimpleDbTransactionExecutor<String>(businessTransactionManager) {
+            @Override
+            public String execute(AppDbConnection connection) {
+                return idGenerator.generateId(key);
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * 採番テーブルとシーケンスを作成する。
+     *
+     * @param dataSource データソース
+     * @param ids 採番対象ID
+     * @param sequenceNames シーケンス名
+     * @throws Exception 例外
+     */
+    private static void createSchema(DataSource dataSource, String[] ids, String[] sequenceNames) throws Exception {
+        final Connection connection = dataSource.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                statement.execute("DROP TABLE IF EXISTS BENCH_SBN");
+                statement.execute("CREATE TABLE BENCH_SBN (ID_COL VARCHAR(10) NOT NULL PRIMARY KEY, NO_COL BIGINT NOT NULL)");
+                for (String sequenceName : sequenceNames) {
+                    statement.execute("DROP SEQUENCE IF EXISTS " + sequenceName);
+                    statement.execute("CREATE SEQUENCE " + sequenceName);
+                }
+            } finally {
+                statement.close();
+            }
+            final PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO BENCH_SBN (ID_COL, NO_COL) VALUES (?, 0)");
+            try {
+                for (String id : ids) {
+                    insert.setString(1, id);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            } finally {
+                insert.close();
+            }
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * スループット(ops/s)とレイテンシの分布(us/op)を、1回あたりのメモリ割り当て量とあわせて計測する。<br>
+     * 引数で{@link IdGeneratorBenchmark}のパラメータを絞り込む場合は、JMHのコマンドライン({@code java -jar benchmarks.jar})を使用すること。
+     *
+     * @param args 使用しない
+     * @throws Exception 例外
+     */
+    public static void main(String[] args) throws Exception {
+        final Options throughput = new OptionsBuilder()
+                .include(IdGeneratorBenchmark.class.getSimpleName())
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(throughput).run();
+
+        final Options latency = new OptionsBuilder()
+                .include(IdGeneratorBenchmark.class.getSimpleName())
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(latency).run();
+    }
+}
@@ -0,0 +1,90 @@
+package nablarch.common.idgenerator;
+
+/**
+ * 採番対象のIDごとの消費速度に応じてブロックサイズを増減させる{@link BlockSizePolicy}の実装クラス。<br>
+ * <br>
+ * 前回予約したブロックが目標の予約間隔({@link #setTargetIntervalMillis(long)})の半分未満で消費された場合はブロックサイズを倍にし、
+ * 目標の予約間隔の2倍を超えて消費された場合(採番頻度が下がった場合)は、経過時間に反比例してブロックサイズを縮小する。
+ * ブロックサイズは、最小値と最大値の範囲内に収まるよう調整する。<br>
+ * <br>
+ * 初回の予約時は、最小値をブロックサイズとする。
+ * 最小値に最大値より大きい値を設定した場合は、ブロックサイズの決定時に例外を送出する。
+ */
+public class AdaptiveBlockSizePolicy implements BlockSizePolicy {
+
+    /** ブロックサイズの最小値 */
+    private int minBlockSize = 10;
+
+    /** ブロックサイズの最大値 */
+    private int maxBlockSize = 10000;
+
+    /** 目標とする予約間隔(ミリ秒) */
+    private long targetIntervalMillis = 1000L;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException ブロックサイズの最小値が最大値より大きい場合
+     */
+    @Override
+    public int nextBlockSize(String id, int previousBlockSize, long elapsedMillis) {
+        // 設定順に依存しないよう、最小値と最大値の大小関係は使用時に検証する。
+        if (minBlockSize > maxBlockSize) {
+            throw new IllegalStateException(String.format(
+                    "minBlockSize must be less than or equal to maxBlockSize. minBlockSize = %d, maxBlockSize = %d",
+                    minBlockSize, maxBlockSize));
+        }
+        if (previousBlockSize <= 0 || elapsedMillis < 0) {
+            return minBlockSize;
+        }
+        long size = previousBlockSize;
+        if (elapsedMillis * 2 < targetIntervalMillis) {
+            // 消費が速いため拡大する。
+            size = size * 2;
+        } else if (elapsedMillis > targetIntervalMillis * 2) {
+            // 消費が遅いため、経過時間に反比例して縮小する。
+            size = size * targetIntervalMillis / elapsedMillis;
+        }
+        return (int) Math.max(minBlockSize, Math.min(maxBlockSize, size));
+    }
+
+    /**
+     * ブロックサイズの最小値を設定する。<br>
+     * デフォルトは10。
+     *
+     * @param minBlockSize ブロックサイズの最小値
+     */
+    public void setMinBlockSize(int minBlockSize) {
+        if (minBlockSize < 1) {
+            throw new IllegalArgumentException("minBlockSize must be greater than 0. minBlockSize = " + minBlockSize);
+        }
+        this.minBlockSize = minBlockSize;
+    }
+
+    /**
+     * ブロックサイズの最大値を設定する。<br>
+     * デフォルトは10000。
+     *
+     * @param maxBlockSize ブロックサイズの最大値
+     */
+    public void setMaxBlockSize(int maxBlockSize) {
+        if (maxBlockSize < 1) {
+            throw new IllegalArgumentException("maxBlockSize must be greater than 0. maxBlockSize = " + maxBlockSize);
+        }
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    /**
+     * 目標とする予約間隔(ミリ秒)を設定する。<br>
+     * デフォルトは1000ミリ秒。
+     *
+     * @param targetIntervalMillis 目標とする予約間隔(ミリ秒)
+     */
+    public void setTargetIntervalMillis(long targetIntervalMillis) {
+        if (targetIntervalMillis < 1) {
+            throw new IllegalArgumentException(
+                    "targetIntervalMillis must be greater than 0. targetIntervalMillis = " + targetIntervalMillis);
+        }
+        this.targetIntervalMillis = targetIntervalMillis;
+    }
+}
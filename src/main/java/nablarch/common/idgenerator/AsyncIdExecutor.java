@@ -0,0 +1,72 @@
+package nablarch.common.idgenerator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非同期の採番を、上限付きの待ち行列を持つスレッドプールで実行するクラス。<br>
+ * <br>
+ * スレッドは採番の要求があった時点で開始され、一定時間使用されない場合は停止する。
+ * 待ち行列が上限に達している場合は、呼び出し元で待機せずに例外で完了した{@link CompletableFuture}を返却する。
+ */
+class AsyncIdExecutor {
+
+    /** スレッドが待機状態で停止するまでの時間(秒) */
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    /** 非同期採番用のスレッドプール */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * コンストラクタ。
+     *
+     * @param threadCount スレッド数
+     * @param queueCapacity 待ち行列の上限
+     */
+    AsyncIdExecutor(int threadCount, int queueCapacity) {
+        executor = new ThreadPoolExecutor(threadCount, threadCount,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                ExecutorSupport.daemonThreadFactory(FastTableIdGenerator.class.getSimpleName() + "-async"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 採番をスレッドプールで実行する。
+     *
+     * @param generator 採番に使用する採番クラス
+     * @param id 採番対象を識別するID
+     * @return 採番結果で完了する{@link CompletableFuture}
+     */
+    CompletableFuture<Long> submit(final LongIdGenerator generator, final String id) {
+        final CompletableFuture<Long> future = new CompletableFuture<Long>();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(generator.generateLongId(id));
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new RuntimeException(
+                    "failed in generation of id. id = " + id, e));
+        }
+        return future;
+    }
+
+    /**
+     * スレッドプールを停止する。実行中の採番がある場合は、その完了を待機する。
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    void shutdown() throws InterruptedException {
+        ExecutorSupport.shutdown(executor, "async");
+    }
+}
@@ -0,0 +1,39 @@
+package nablarch.common.idgenerator;
+
+import java.util.concurrent.CompletableFuture;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 採番結果を{@link CompletableFuture}で非同期に返却するインタフェース。<br>
+ * <br>
+ * 呼び出し元のスレッドでデータベースアクセスを行わないため、仮想スレッドから呼び出す場合などに使用する。
+ */
+@Published
+public interface AsyncIdGenerator {
+
+    /**
+     * 引数で指定された採番対象ID内でユニークなIDを非同期に採番する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 採番対象ID内でユニークな採番結果のID
+     */
+    CompletableFuture<String> generateIdAsync(String id);
+
+    /**
+     * 引数で指定された採番対象ID内でユニークなIDを非同期に採番し、指定されたフォーマッターでフォーマットする。
+     *
+     * @param id 採番対象を識別するID
+     * @param formatter 採番したIDをフォーマットするフォーマッター(nullの場合はフォーマットしない)
+     * @return フォーマット済みの採番結果のID
+     */
+    CompletableFuture<String> generateIdAsync(String id, IdFormatter formatter);
+
+    /**
+     * 引数で指定された採番対象ID内でユニークな値を非同期に採番する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 採番対象ID内でユニークな採番結果の値
+     */
+    CompletableFuture<Long> generateLongIdAsync(String id);
+}
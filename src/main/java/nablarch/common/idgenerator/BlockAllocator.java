@@ -0,0 +1,616 @@
+package nablarch.common.idgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+
+/**
+ * 採番対象IDごとにブロック単位で値を予約し、予約済みのブロックから払い出すクラス。<br>
+ * <br>
+ * ブロックサイズの決定、次のブロックの先読み、予約状態の記録ファイル({@link ReservationJournal})への記録、
+ * 廃棄時の未払い出しの値の返却を行う。採番テーブルへのアクセスは{@link RangeReserver}に委譲する。<br>
+ * 払い出し処理のロックには{@code synchronized}を使用していないため、仮想スレッドから呼び出した場合でもキャリアスレッドは固定(pin)されない。
+ */
+class BlockAllocator {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(BlockAllocator.class);
+
+    /** 採番テーブルの値の予約と返却 */
+    private final RangeReserver reserver;
+
+    /** 一度に予約する値の数 */
+    private volatile int blockSize = 1;
+
+    /** ブロックサイズの決定方法(nullの場合はブロックサイズ固定) */
+    private BlockSizePolicy blockSizePolicy;
+
+    /** 次のブロックの先読みを開始する残数の閾値(0の場合は先読みを行わない) */
+    private volatile int prefetchThreshold = 0;
+
+    /** 先読み用のスレッド */
+    private ExecutorService prefetchExecutor;
+
+    /** 予約状態の記録ファイル(記録しない場合はnull) */
+    private ReservationJournal journal;
+
+    /** 予約状態の記録ファイルのパス */
+    private String journalPath;
+
+    /** 予約状態の記録ファイルに記録できる採番対象IDの数 */
+    private int journalCapacity;
+
+    /** 読み込んだ採番対象IDごとの予約状態(採番対象IDを読み込まない場合はnull) */
+    private KeyRegistry<BlockHolder> keyRegistry;
+
+    /** 採番対象のIDごとの予約状態 */
+    private final ConcurrentMap<String, BlockHolder> blockHolders = new ConcurrentHashMap<String, BlockHolder>();
+
+    /**
+     * コンストラクタ。
+     *
+     * @param reserver 採番テーブルの値の予約と返却
+     */
+    BlockAllocator(RangeReserver reserver) {
+        this.reserver = reserver;
+    }
+
+    /**
+     * ブロック単位で予約を行うか否か。
+     *
+     * @return ブロック単位で予約を行う場合は{@code true}
+     */
+    boolean isBlockMode() {
+        return blockSize > 1 || blockSizePolicy != null;
+    }
+
+    /**
+     * 一度に予約する値の数を返却する。
+     *
+     * @return ブロックサイズ
+     */
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 一度に予約する値の数を設定する。
+     *
+     * @param blockSize ブロックサイズ
+     */
+    void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * ブロックサイズの決定方法が設定されているか否か。
+     *
+     * @return 設定されている場合は{@code true}
+     */
+    boolean hasBlockSizePolicy() {
+        return blockSizePolicy != null;
+    }
+
+    /**
+     * ブロックサイズの決定方法を設定する。
+     *
+     * @param blockSizePolicy ブロックサイズの決定方法
+     */
+    void setBlockSizePolicy(BlockSizePolicy blockSizePolicy) {
+        this.blockSizePolicy = blockSizePolicy;
+    }
+
+    /**
+     * 次のブロックの先読みを開始する残数の閾値を返却する。
+     *
+     * @return 先読みを開始する残数の閾値
+     */
+    int getPrefetchThreshold() {
+        return prefetchThreshold;
+    }
+
+    /**
+     * 次のブロックの先読みを開始する残数の閾値を設定する。
+     *
+     * @param prefetchThreshold 先読みを開始する残数の閾値
+     */
+    void setPrefetchThreshold(int prefetchThreshold) {
+        this.prefetchThreshold = prefetchThreshold;
+    }
+
+    /**
+     * 読み込んだ採番対象IDごとの予約状態を設定する。<br>
+     * 設定した場合は、読み込んでいない採番対象IDの払い出しはエラーとなる。
+     *
+     * @param keyRegistry 読み込んだ採番対象IDごとの予約状態
+     */
+    void setKeyRegistry(KeyRegistry<BlockHolder> keyRegistry) {
+        this.keyRegistry = keyRegistry;
+    }
+
+    /**
+     * 先読み用のスレッドを生成する。<br>
+     * 先読みを開始する残数の閾値は実行中に変更できるため、閾値に関わらず生成しておく(スレッドは最初の先読み時に開始される)。
+     */
+    void start() {
+        prefetchExecutor = Executors.newSingleThreadExecutor(
+                ExecutorSupport.daemonThreadFactory(FastTableIdGenerator.class.getSimpleName() + "-prefetch"));
+    }
+
+    /**
+     * 予約状態の記録ファイルを開き、未払い出しの値が残っているブロックから払い出しを再開する。<br>
+     * 採番テーブルが初期化されている(NOがブロックの最終値より小さい)場合は、値が重複するため再開せずに記録を破棄する。
+     *
+     * @param path 予約状態の記録ファイルのパス
+     * @param capacity 予約状態の記録ファイルに記録できる採番対象IDの数
+     */
+    void openJournal(String path, int capacity) {
+        journalPath = path;
+        journalCapacity = capacity;
+        journal = new ReservationJournal(path, capacity);
+
+        final Map<String, IdRange> unused = journal.unusedRanges();
+        if (unused.isEmpty()) {
+            return;
+        }
+        final Map<String, Boolean> reserved = reserver.isReserved(unused);
+        for (Map.Entry<String, IdRange> entry : unused.entrySet()) {
+            final String id = entry.getKey();
+            final IdRange range = entry.getValue();
+            final int slot = journal.slotOf(id);
+            if (!reserved.get(id)) {
+                journal.clear(slot);
+                LOGGER.logWarn("discarded journaled ids because the numbering table was reset. id = " + id
+                        + ", unused = " + range);
+                continue;
+            }
+            final BlockHolder holder = getBlockHolder(id);
+            holder.journalSlot = slot;
+            holder.current = new IdBlock(range);
+            LOGGER.logInfo("resumed journaled ids. id = " + id + ", unused = " + range);
+        }
+    }
+
+    /**
+     * 指定された採番対象IDの最初のブロックを並行して予約する。<br>
+     * 予約状態の記録ファイルから払い出しを再開したブロックがある採番対象IDは、予約しない。
+     *
+     * @param ids 採番対象を識別するID
+     * @param threadCount 予約に使用するスレッド数の上限
+     * @throws IllegalStateException 予約に失敗した場合
+     */
+    void warmUp(List<String> ids, int threadCount) {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, ids.size()),
+                ExecutorSupport.daemonThreadFactory(FastTableIdGenerator.class.getSimpleName() + "-warm-up"));
+        try {
+            final Map<String, Future<IdBlock>> reservations = new TreeMap<String, Future<IdBlock>>();
+            for (final String id : ids) {
+                final BlockHolder holder = getBlockHolder(id);
+                if (reservations.containsKey(id) || holder.remaining() > 0) {
+                    continue;
+                }
+                reservations.put(id, executor.submit(new Callable<IdBlock>() {
+                    @Override
+                    public IdBlock call() {
+                        return reserveBlock(id, nextBlockSize(id, holder));
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<IdBlock>> reservation : reservations.entrySet()) {
+                final String id = reservation.getKey();
+                try {
+                    final BlockHolder holder = getBlockHolder(id);
+                    holder.lock.lock();
+                    try {
+                        switchBlock(id, holder, reservation.getValue().get());
+                    } finally {
+                        holder.lock.unlock();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while warming up. id = " + id, e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("failed to warm up. id = " + id, e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 予約済みのブロックから次の値を払い出す。<br>
+     * ブロック内の値が全て払い出し済みの場合は、新たなブロックを予約する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 払い出した値
+     */
+    long next(String id) {
+        final BlockHolder holder = getBlockHolder(id);
+        long no = holder.next();
+        while (no == IdBlock.EXHAUSTED) {
+            holder.lock.lock();
+            try {
+                // ロック待機中に他スレッドが予約済みの場合は、そのブロックから払い出す。
+                no = holder.next();
+                if (no == IdBlock.EXHAUSTED) {
+                    switchBlock(id, holder, takeNextBlock(id, holder));
+                    no = holder.next();
+                }
+            } finally {
+                holder.lock.unlock();
+            }
+        }
+        journalIssued(holder, no);
+        prefetchIfNeeded(id, holder);
+        return no;
+    }
+
+    /**
+     * 予約済みのブロックから次の値を払い出す。<br>
+     * ブロック内の値が全て払い出し済みの場合は、新たなブロックの予約は行わない。
+     *
+     * @param id 採番対象を識別するID
+     * @param holder 予約状態
+     * @return 払い出した値。払い出し可能な値が存在しない場合は{@link IdBlock#EXHAUSTED}
+     */
+    long tryNext(String id, BlockHolder holder) {
+        final long no = holder.next();
+        if (no != IdBlock.EXHAUSTED) {
+            journalIssued(holder, no);
+            prefetchIfNeeded(id, holder);
+        }
+        return no;
+    }
+
+    /**
+     * 採番対象のIDに対応する予約状態を、データベースにアクセスせずに取得する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 予約状態。採番対象IDを読み込む場合で、読み込み済みでない場合は{@code null}
+     */
+    BlockHolder findBlockHolder(String id) {
+        final KeyRegistry<BlockHolder> registry = keyRegistry;
+        return registry == null ? getBlockHolder(id) : registry.peek(id);
+    }
+
+    /**
+     * 採番対象のIDごとの払い出し中のブロックの残数を返却する。
+     *
+     * @return 採番対象のIDごとの残数
+     */
+    Map<String, Long> getRemainingInBlock() {
+        final Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, BlockHolder> entry : holders().entrySet()) {
+            result.put(entry.getKey(), entry.getValue().remaining());
+        }
+        return result;
+    }
+
+    /**
+     * 先読み用のスレッドを停止する。先読み中の予約がある場合は、その完了を待機する。
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    void shutdown() throws InterruptedException {
+        ExecutorSupport.shutdown(prefetchExecutor, "prefetch");
+    }
+
+    /**
+     * 全ての採番対象IDのブロックを閉じ、未払い出しの値を採番テーブルに返却する。<br>
+     * 先読み済みのブロックは払い出し中のブロックより後に予約しているため、先に返却する。
+     * 返却できなかった値は、ログに出力する。
+     */
+    void releaseUnused() {
+        for (Map.Entry<String, BlockHolder> entry : holders().entrySet()) {
+            final String id = entry.getKey();
+            final BlockHolder holder = entry.getValue();
+            final List<IdRange> unused = new ArrayList<IdRange>(2);
+            final FutureTask<IdBlock> prefetch = holder.prefetch.getAndSet(null);
+            if (prefetch != null && prefetch.isDone()) {
+                try {
+                    addIfNotNull(unused, prefetch.get().close());
+                } catch (ExecutionException e) {
+                    // 先読みに失敗したブロックは予約されていないため、返却しない。
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final IdBlock current = holder.current;
+            if (current != null) {
+                addIfNotNull(unused, current.close());
+            }
+            boolean allReleased = true;
+            for (int i = 0; i < unused.size(); i++) {
+                final IdRange range = unused.get(i);
+                boolean released = false;
+                try {
+                    released = reserver.release(id, range);
+                } catch (RuntimeException e) {
+                    LOGGER.logWarn("failed to release unused ids. id = " + id + ", unused = " + range, e);
+                }
+                if (!released) {
+                    allReleased = false;
+                    // 予約後に採番テーブルが更新された場合は返却できない。
+                    // 後続の範囲は返却した範囲の直前でなければ返却できないため、全て返却できなかった値として出力する。
+                    for (IdRange rest : unused.subList(i, unused.size())) {
+                        LOGGER.logWarn("unused ids were not released. id = " + id + ", unused = " + rest);
+                    }
+                    break;
+                }
+                LOGGER.logInfo("released unused ids. id = " + id + ", unused = " + range);
+            }
+            // 返却できなかった値は、再起動時に予約状態の記録ファイルから払い出しを再開できるように記録を残す。
+            if (allReleased && journal != null && holder.journalSlot >= 0) {
+                journal.clear(holder.journalSlot);
+            }
+        }
+    }
+
+    /**
+     * 予約状態の記録ファイルを書き出して閉じる。<br>
+     * 記録ファイルを使用していない場合は何もしない。閉じることができなかった場合は、ワーニングログを出力する。
+     */
+    void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (RuntimeException e) {
+            LOGGER.logWarn("failed to close journal. path = " + journalPath, e);
+        }
+        journal = null;
+    }
+
+    /**
+     * 払い出し中のブロックを切り替える。<br>
+     * 予約状態を記録する場合は、ブロックの範囲を記録してから切り替える。
+     *
+     * @param id 採番対象を識別するID
+     * @param holder 予約状態
+     * @param block 新たに払い出すブロック
+     */
+    private void switchBlock(String id, BlockHolder holder, IdBlock block) {
+        final ReservationJournal j = journal;
+        if (j != null) {
+            if (holder.journalSlot == BlockHolder.SLOT_UNASSIGNED) {
+                final int slot = j.slotOf(id);
+                if (slot < 0) {
+                    LOGGER.logWarn("reserved blocks are not journaled because the journal is full or the id is too long. "
+                            + "id = " + id + ", journal capacity = " + journalCapacity);
+                }
+                holder.journalSlot = slot < 0 ? BlockHolder.SLOT_UNAVAILABLE : slot;
+            }
+            if (holder.journalSlot >= 0) {
+                j.record(holder.journalSlot, new IdRange(block.getFirst(), block.getLast(), block.getStep()));
+            }
+        }
+        holder.current = block;
+    }
+
+    /**
+     * 予約状態を記録する場合は、払い出した値を記録する。
+     *
+     * @param holder 予約状態
+     * @param no 払い出した値
+     */
+    private void journalIssued(BlockHolder holder, long no) {
+        final ReservationJournal j = journal;
+        if (j != null && holder.journalSlot >= 0) {
+            j.issued(holder.journalSlot, no);
+        }
+    }
+
+    /**
+     * 払い出し中のブロックの残数が閾値以下の場合は、次のブロックの先読みを開始する。
+     *
+     * @param id 採番対象を識別するID
+     * @param holder 予約状態
+     */
+    private void prefetchIfNeeded(String id, BlockHolder holder) {
+        final int threshold = prefetchThreshold;
+        if (threshold > 0 && prefetchExecutor != null && holder.prefetch.get() == null
+                && holder.remaining() <= threshold) {
+            startPrefetch(id, holder);
+        }
+    }
+
+    /**
+     * 次に払い出すブロックを取得する。<br>
+     * 先読み済み(先読み中)のブロックが存在する場合はそのブロックを、存在しない場合は新たに予約したブロックを返却する。
+     *
+     * @param id 採番対象を識別するID
+     * @param holder 予約状態
+     * @return 次に払い出すブロック
+     */
+    private IdBlock takeNextBlock(String id, BlockHolder holder) {
+        final FutureTask<IdBlock> prefetch = holder.prefetch.getAndSet(null);
+        if (prefetch != null) {
+            try {
+                return prefetch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(
+                        "failed in generation of id. id = " + id, e);
+            } catch (ExecutionException e) {
+                // 先読みに失敗した場合は、呼び出し元のスレッドで予約を再試行する。
+                LOGGER.logWarn("failed to prefetch id block. id = " + id, e.getCause());
+            }
+        }
+        return reserveBlock(id, nextBlockSize(id, holder));
+    }
+
+    /**
+     * 次に予約するブロックのサイズを決定する。
+     *
+     * @param id 採番対象を識別するID
+     * @param holder 予約状態
+     * @return 次に予約するブロックのサイズ
+     */
+    private int nextBlockSize(String id, BlockHolder holder) {
+        if (blockSizePolicy == null) {
+            return blockSize;
+        }
+        final long now = System.nanoTime();
+        final long elapsedMillis = holder.lastBlockSize == 0
+                ? -1L : TimeUnit.NANOSECONDS.toMillis(now - holder.lastReservedNanos);
+        final int size = blockSizePolicy.nextBlockSize(id, holder.lastBlockSize, elapsedMillis);
+        if (size < 1) {
+            throw new IllegalStateException("block size must be greater than 0. id = " + id + ", block size = " + size);
+        }
+        holder.lastBlockSize = size;
+        holder.lastReservedNanos = now;
+        return size;
+    }
+
+    /**
+     * 次のブロックの先読みを開始する。<br>
+     * 既に他のスレッドが先読みを開始している場合は何もしない。
+     *
+     * @param id 採番対象を識別するID
+     * @param holder 予約状態
+     */
+    private void startPrefetch(final String id, final BlockHolder holder) {
+        final FutureTask<IdBlock> prefetch = new FutureTask<IdBlock>(new Callable<IdBlock>() {
+            @Override
+            public IdBlock call() {
+                return reserveBlock(id, nextBlockSize(id, holder));
+            }
+        });
+        if (!holder.prefetch.compareAndSet(null, prefetch)) {
+            return;
+        }
+        try {
+            prefetchExecutor.execute(prefetch);
+        } catch (RejectedExecutionException e) {
+            // 廃棄処理後は先読みを行わず、ブロックを使い切った時点で呼び出し元のスレッドで予約する。
+            holder.prefetch.compareAndSet(prefetch, null);
+        }
+    }
+
+    /**
+     * 採番対象のIDに対応する予約状態を取得する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 予約状態
+     */
+    private BlockHolder getBlockHolder(String id) {
+        final KeyRegistry<BlockHolder> registry = keyRegistry;
+        if (registry != null) {
+            final BlockHolder holder = registry.get(id);
+            if (holder == null) {
+                throw FastTableIdGenerator.unknownId(id);
+            }
+            return holder;
+        }
+        BlockHolder holder = blockHolders.get(id);
+        if (holder == null) {
+            final BlockHolder newHolder = new BlockHolder();
+            holder = blockHolders.putIfAbsent(id, newHolder);
+            if (holder == null) {
+                holder = newHolder;
+            }
+        }
+        return holder;
+    }
+
+    /**
+     * 採番対象のIDごとの予約状態を返却する。
+     *
+     * @return 採番対象のIDごとの予約状態
+     */
+    private Map<String, BlockHolder> holders() {
+        final KeyRegistry<BlockHolder> registry = keyRegistry;
+        return registry == null ? blockHolders : registry.states();
+    }
+
+    /**
+     * 採番テーブルの値を指定された数だけ進め、予約した範囲をコミットする。
+     *
+     * @param id 採番対象を識別するID
+     * @param size 予約する数
+     * @return 予約したブロック
+     */
+    private IdBlock reserveBlock(String id, int size) {
+        return new IdBlock(reserver.reserve(id, size));
+    }
+
+    /**
+     * 範囲が{@code null}でない場合は、リストに追加する。
+     *
+     * @param ranges リスト
+     * @param range 範囲
+     */
+    private static void addIfNotNull(List<IdRange> ranges, IdRange range) {
+        if (range != null) {
+            ranges.add(range);
+        }
+    }
+
+    /**
+     * 採番対象のIDごとの予約状態を保持するクラス。
+     */
+    static final class BlockHolder {
+
+        /** 予約状態の記録ファイルのスロットが未割り当てであることを示す値 */
+        private static final int SLOT_UNASSIGNED = -1;
+
+        /** 予約状態の記録ファイルのスロットを割り当てられないことを示す値 */
+        private static final int SLOT_UNAVAILABLE = -2;
+
+        /** 新たなブロックの予約を直列化するためのロック */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** 払い出し中のブロック */
+        private volatile IdBlock current;
+
+        /** 前回予約したブロックのサイズ */
+        private volatile int lastBlockSize;
+
+        /** 前回予約した時刻(ナノ秒) */
+        private volatile long lastReservedNanos;
+
+        /** 先読み済み(先読み中)の次のブロック */
+        private final AtomicReference<FutureTask<IdBlock>> prefetch = new AtomicReference<FutureTask<IdBlock>>();
+
+        /** 予約状態の記録ファイルのスロット番号 */
+        private volatile int journalSlot = SLOT_UNASSIGNED;
+
+        /**
+         * 払い出し中のブロックから次の値を払い出す。
+         *
+         * @return 払い出した値。払い出し可能な値が存在しない場合は{@link IdBlock#EXHAUSTED}
+         */
+        private long next() {
+            final IdBlock block = current;
+            return block == null ? IdBlock.EXHAUSTED : block.next();
+        }
+
+        /**
+         * 払い出し中のブロックの残数を返却する。
+         *
+         * @return 払い出し中のブロックの残数
+         */
+        private long remaining() {
+            final IdBlock block = current;
+            return block == null ? 0L : block.remaining();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package nablarch.common.idgenerator;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link FastTableIdGenerator}が一度に予約する値の数(ブロックサイズ)を決定するインタフェース。<br>
+ * <br>
+ * 本インタフェースは、採番対象のIDごとに新たなブロックを予約する直前に呼び出される。
+ * 実装クラスは複数スレッドから同時に呼び出されるため、スレッドセーフに実装すること。
+ */
+@Published(tag = "architect")
+public interface BlockSizePolicy {
+
+    /**
+     * 次に予約するブロックのサイズを決定する。
+     *
+     * @param id 採番対象を識別するID
+     * @param previousBlockSize 前回予約したブロックのサイズ(初回の予約時は0)
+     * @param elapsedMillis 前回の予約から今回の予約までの経過時間(ミリ秒)。初回の予約時は-1
+     * @return 次に予約するブロックのサイズ(1以上)
+     */
+    int nextBlockSize(String id, int previousBlockSize, long elapsedMillis);
+}
@@ -0,0 +1,153 @@
+package nablarch.common.idgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 同一の採番対象IDに対する同時の採番を、1回の採番テーブルの更新にまとめるクラス。<br>
+ * <br>
+ * 採番要求を待ち行列に追加した後にロックを取得し、取得した時点で他のスレッドにより採番済みの場合はその値を返却する。
+ * 採番済みでない場合は、待ち行列の全ての採番要求の件数分を1回の更新で採番し、待ち行列の順に割り当てる。
+ * 値をメモリ上に保持しないため、アプリケーションの停止時にも抜け番は発生しない。
+ */
+class CoalescingGenerator {
+
+    /** 採番テーブルの値の予約 */
+    private final RangeReserver reserver;
+
+    /** まとめて採番する前に、後続の呼び出しを待ち合わせる時間(ミリ秒) */
+    private final long windowMillis;
+
+    /** 採番対象のIDごとの同時の採番の待ち合わせ状態 */
+    private final ConcurrentMap<String, Combiner> combiners = new ConcurrentHashMap<String, Combiner>();
+
+    /**
+     * コンストラクタ。
+     *
+     * @param reserver 採番テーブルの値の予約
+     * @param windowMillis まとめて採番する前に、後続の呼び出しを待ち合わせる時間(ミリ秒)
+     */
+    CoalescingGenerator(RangeReserver reserver, long windowMillis) {
+        this.reserver = reserver;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * 同時の採番とまとめて採番する。<br>
+     * まとめて採番したスレッドは、採番に失敗した場合の例外をそのまま送出する。
+     * 他のスレッドがまとめて採番した場合は、呼び出し元のスタックトレースを残すため、その例外を原因として送出する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 採番した値
+     */
+    long generate(String id) {
+        final Combiner combiner = getCombiner(id);
+        final CoalescedRequest request = new CoalescedRequest();
+        combiner.requests.add(request);
+        boolean combined = false;
+        combiner.lock.lock();
+        try {
+            if (!request.done) {
+                combine(id, combiner);
+                combined = true;
+            }
+        } finally {
+            combiner.lock.unlock();
+        }
+        if (request.error != null) {
+            if (combined) {
+                throw request.error;
+            }
+            throw new RuntimeException(request.error.getMessage(), request.error);
+        }
+        return request.value;
+    }
+
+    /**
+     * 待ち行列の採番要求をまとめて採番する。ロックを取得した状態で呼び出すこと。
+     *
+     * @param id 採番対象を識別するID
+     * @param combiner 待ち合わせ状態
+     */
+    private void combine(String id, Combiner combiner) {
+        if (windowMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(windowMillis);
+            } catch (InterruptedException e) {
+                // 待ち合わせを打ち切り、その時点までの採番要求をまとめて採番する。
+                Thread.currentThread().interrupt();
+            }
+        }
+        final List<CoalescedRequest> batch = new ArrayList<CoalescedRequest>();
+        CoalescedRequest request;
+        while ((request = combiner.requests.poll()) != null) {
+            batch.add(request);
+        }
+        try {
+            final IdRange range = reserver.reserve(id, batch.size());
+            long no = range.getStart();
+            for (CoalescedRequest each : batch) {
+                each.value = no;
+                no += range.getStep();
+                each.done = true;
+            }
+        } catch (RuntimeException e) {
+            for (CoalescedRequest each : batch) {
+                each.error = e;
+                each.done = true;
+            }
+        }
+    }
+
+    /**
+     * 採番対象のIDに対応する待ち合わせ状態を取得する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 待ち合わせ状態
+     */
+    private Combiner getCombiner(String id) {
+        Combiner combiner = combiners.get(id);
+        if (combiner == null) {
+            final Combiner newCombiner = new Combiner();
+            combiner = combiners.putIfAbsent(id, newCombiner);
+            if (combiner == null) {
+                combiner = newCombiner;
+            }
+        }
+        return combiner;
+    }
+
+    /**
+     * 採番対象のIDごとに、同時の採番の待ち合わせ状態を保持するクラス。
+     */
+    private static final class Combiner {
+
+        /** まとめて採番する処理を直列化するためのロック */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** 採番を待機している要求 */
+        private final Queue<CoalescedRequest> requests = new ConcurrentLinkedQueue<CoalescedRequest>();
+    }
+
+    /**
+     * まとめて採番される採番要求。<br>
+     * 各フィールドは{@link Combiner#lock}を取得した状態で更新、参照する。
+     */
+    private static final class CoalescedRequest {
+
+        /** 採番済みか否か */
+        private boolean done;
+
+        /** 採番した値 */
+        private long value;
+
+        /** 採番に失敗した場合の例外 */
+        private RuntimeException error;
+    }
+}
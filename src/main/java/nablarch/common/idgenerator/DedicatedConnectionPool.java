@@ -0,0 +1,249 @@
+package nablarch.common.idgenerator;
+
+import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import nablarch.core.db.DbAccessException;
+import nablarch.core.db.connection.ConnectionFactory;
+import nablarch.core.db.connection.TransactionManagerConnection;
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+
+/**
+ * 採番テーブルの更新専用のデータベース接続を保持するクラス。<br>
+ * <br>
+ * 接続は生成時に指定された数だけ取得し、自動コミットを有効にして、インクリメントと取得を1回で行うSQLを準備しておく。
+ * 採番時は空いている接続を借りてSQLを1回実行するのみとなり、接続プールからの取得やトランザクションの開始・終了は行わない。
+ * SQLの実行で例外が発生した接続は破棄し、次に借りられた時点で接続し直す。
+ */
+class DedicatedConnectionPool {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(DedicatedConnectionPool.class);
+
+    /** 接続を取得するファクトリ */
+    private final ConnectionFactory connectionFactory;
+
+    /** 接続名 */
+    private final String connectionName;
+
+    /** インクリメントと取得を1回で行うSQL */
+    private final String sql;
+
+    /** データベース製品 */
+    private final DialectType dialectType;
+
+    /** 分割番号をパラメータに含むか否か */
+    private final boolean sharded;
+
+    /** 全ての接続 */
+    private final List<Slot> slots;
+
+    /** 空いている接続 */
+    private final BlockingQueue<Slot> idle;
+
+    /**
+     * 接続を取得し、SQLを準備する。
+     *
+     * @param connectionFactory 接続を取得するファクトリ
+     * @param connectionName 接続名
+     * @param size 接続数
+     * @param tableIdGenerator 初期化済みのテーブル採番
+     * @throws IllegalStateException インクリメントと取得を1回で行うことができないデータベースの場合
+     */
+    DedicatedConnectionPool(ConnectionFactory connectionFactory, String connectionName, int size,
+            TableIdGenerator tableIdGenerator) {
+        this.connectionFactory = connectionFactory;
+        this.connectionName = connectionName;
+        this.sharded = tableIdGenerator.isSharded();
+        this.slots = new ArrayList<Slot>(size);
+        this.idle = new ArrayBlockingQueue<Slot>(size);
+
+        final TransactionManagerConnection first = connectionFactory.getConnection(connectionName);
+        this.dialectType = DialectType.of(first.getDialect());
+        this.sql = tableIdGenerator.getIncrementReturningSql(dialectType);
+        if (sql == null) {
+            first.terminate();
+            throw new IllegalStateException(
+                    "dedicated connections require a database that can increment and select in a single statement. "
+                            + "dialect = " + first.getDialect().getClass().getName());
+        }
+        try {
+            Slot slot = new Slot();
+            slot.open(first);
+            slots.add(slot);
+            for (int i = 1; i < size; i++) {
+                slot = new Slot();
+                slot.open(connectionFactory.getConnection(connectionName));
+                slots.add(slot);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        idle.addAll(slots);
+    }
+
+    /**
+     * データベース製品を返却する。
+     *
+     * @return データベース製品
+     */
+    DialectType getDialectType() {
+        return dialectType;
+    }
+
+    /**
+     * 空いている接続を使用して、IDに紐付くデータをインクリメントし、インクリメント後の値を返却する。<br>
+     * 空いている接続が無い場合は、空くまで待機する。
+     *
+     * @param id 採番対象を識別するためのID
+     * @param count インクリメントする数
+     * @param shard 分割番号
+     * @return インクリメント後の値
+     * @throws IllegalStateException IDに紐付くデータが存在しない場合
+     */
+    long increment(String id, int count, int shard) {
+        final Slot slot;
+        try {
+            slot = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a dedicated connection. id = " + id, e);
+        }
+        try {
+            return slot.increment(id, count, shard);
+        } catch (SQLException e) {
+            slot.close();
+            throw new DbAccessException("failed to increment with a dedicated connection. id = " + id, e);
+        } finally {
+            idle.offer(slot);
+        }
+    }
+
+    /**
+     * 全ての接続を切断する。
+     */
+    void close() {
+        for (Slot slot : slots) {
+            slot.close();
+        }
+    }
+
+    /**
+     * 接続と準備済みのSQL。
+     */
+    private final class Slot {
+
+        /** 接続(切断している場合はnull) */
+        private TransactionManagerConnection connection;
+
+        /** 準備済みのSQL */
+        private PreparedStatement statement;
+
+        /**
+         * 自動コミットを有効にして、SQLを準備する。
+         *
+         * @param connection 接続
+         */
+        private void open(TransactionManagerConnection connection) {
+            this.connection = connection;
+            try {
+                final Connection jdbcConnection = connection.getConnection();
+                jdbcConnection.setAutoCommit(true);
+                if (dialectType.isReturningByOutParameter()) {
+                    final CallableStatement call = jdbcConnection.prepareCall(sql);
+                    call.registerOutParameter(outIndex(), Types.NUMERIC);
+                    statement = call;
+                } else {
+                    statement = jdbcConnection.prepareStatement(sql);
+                }
+            } catch (SQLException e) {
+                close();
+                throw new DbAccessException("failed to open a dedicated connection.", e);
+            }
+        }
+
+        /**
+         * IDに紐付くデータをインクリメントし、インクリメント後の値を返却する。
+         *
+         * @param id 採番対象を識別するためのID
+         * @param count インクリメントする数
+         * @param shard 分割番号
+         * @return インクリメント後の値
+         * @throws SQLException SQLの実行に失敗した場合
+         */
+        private long increment(String id, int count, int shard) throws SQLException {
+            if (connection == null) {
+                open(connectionFactory.getConnection(connectionName));
+            }
+            statement.setInt(1, count);
+            statement.setString(2, id);
+            if (sharded) {
+                statement.setInt(3, shard);
+            }
+            if (dialectType.isReturningByOutParameter()) {
+                final CallableStatement call = (CallableStatement) statement;
+                call.execute();
+                final BigDecimal no = call.getBigDecimal(outIndex());
+                if (no == null) {
+                    // 更新対象が存在しない場合は、エラー
+                    throw new IllegalStateException(String.format("id was not found. id:%s", id));
+                }
+                return no.longValue();
+            }
+            final ResultSet rs = statement.executeQuery();
+            try {
+                if (!rs.next()) {
+                    // 更新対象が存在しない場合は、エラー
+                    throw new IllegalStateException(String.format("id was not found. id:%s", id));
+                }
+                return rs.getLong(1);
+            } finally {
+                rs.close();
+            }
+        }
+
+        /**
+         * 出力パラメータの位置を返却する。
+         *
+         * @return 出力パラメータの位置
+         */
+        private int outIndex() {
+            return sharded ? 4 : 3;
+        }
+
+        /**
+         * SQLを閉じ、自動コミットを元に戻して切断する。
+         */
+        private void close() {
+            if (connection == null) {
+                return;
+            }
+            try {
+                if (statement != null) {
+                    statement.close();
+                }
+                connection.getConnection().setAutoCommit(false);
+            } catch (SQLException e) {
+                LOGGER.logWarn("failed to close a dedicated connection.", e);
+            }
+            try {
+                connection.terminate();
+            } catch (RuntimeException e) {
+                LOGGER.logWarn("failed to terminate a dedicated connection.", e);
+            }
+            connection = null;
+            statement = null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package nablarch.common.idgenerator;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * コミット時に採番される値を表すクラス。<br>
+ * <br>
+ * {@link TableIdGenerator#generateDeferredId(String)}で取得し、業務トランザクションのコミットの直前に採番され、コミットの成功後に値が設定される。
+ * 採番やコミットに失敗した場合は、値は設定されない。
+ * 値が設定される前に{@link #getValue()}を呼び出した場合は、例外を送出する。
+ */
+@Published
+public final class DeferredId {
+
+    /** 採番対象を識別するID */
+    private final String id;
+
+    /** 採番時に呼び出すコールバック(nullの場合は呼び出さない) */
+    private final DeferredIdCallback callback;
+
+    /** 採番した値 */
+    private volatile long value;
+
+    /** 採番済みか否か */
+    private volatile boolean generated;
+
+    /**
+     * コンストラクタ。
+     *
+     * @param id 採番対象を識別するID
+     * @param callback 採番時に呼び出すコールバック(nullの場合は呼び出さない)
+     */
+    DeferredId(String id, DeferredIdCallback callback) {
+        this.id = id;
+        this.callback = callback;
+    }
+
+    /**
+     * 採番対象を識別するIDを返却する。
+     *
+     * @return 採番対象を識別するID
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * 採番済みか否かを返却する。
+     *
+     * @return 採番済みの場合は{@code true}
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    /**
+     * 採番した値を返却する。
+     *
+     * @return 採番した値
+     * @throws IllegalStateException 採番前の場合
+     */
+    public long getValue() {
+        if (!generated) {
+            throw new IllegalStateException(
+                    "id has not been generated yet. it is generated when the transaction is committed. id = " + id);
+        }
+        return value;
+    }
+
+    /**
+     * 採番した値を設定する。
+     *
+     * @param value 採番した値
+     */
+    void setValue(long value) {
+        this.value = value;
+        this.generated = true;
+    }
+
+    /**
+     * 採番時に呼び出すコールバックを返却する。
+     *
+     * @return コールバック(設定されていない場合はnull)
+     */
+    DeferredIdCallback getCallback() {
+        return callback;
+    }
+
+    @Override
+    public String toString() {
+        return generated ? "DeferredId{id=" + id + ", value=" + value + '}' : "DeferredId{id=" + id + ", not generated}";
+    }
+}
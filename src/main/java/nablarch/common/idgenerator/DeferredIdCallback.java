@@ -0,0 +1,24 @@
+package nablarch.common.idgenerator;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * コミット時に採番された値を受け取るインタフェース。<br>
+ * <br>
+ * 本インタフェースは、業務トランザクションのコミットの直前に、採番と同一のトランザクション内で呼び出される。
+ * 採番した値を業務データに反映する場合は、本インタフェースの実装で更新すること。
+ * 例外を送出した場合は、コミットは行われない。<br>
+ * {@link DeferredId}への値の設定はコミットの成功後に行うため、本インタフェースの呼び出し時点では{@link DeferredId#getValue()}は使用できない。
+ * 採番した値は引数で受け取ること。
+ */
+@Published
+public interface DeferredIdCallback {
+
+    /**
+     * 採番された値を受け取る。
+     *
+     * @param id 採番対象を識別するID
+     * @param value 採番した値
+     */
+    void generated(String id, long value);
+}
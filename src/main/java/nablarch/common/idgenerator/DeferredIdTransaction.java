@@ -0,0 +1,173 @@
+package nablarch.common.idgenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.transaction.Transaction;
+
+/**
+ * コミットの直前に、保留中の採番を行うトランザクション。<br>
+ * <br>
+ * 保留中の採番は、全ての採番クラスをまとめて採番テーブル名、採番対象IDの昇順に行う。
+ * 同一の採番対象IDの採番は、保留した数だけ採番テーブルを1回で更新し、保留した順に値を割り当てる。
+ * これにより、採番テーブルの行ロックを保有する時間はコミットまでの僅かな時間となり、
+ * 全てのトランザクションが同じ順序でロックを取得するためデッドロックも発生しない。
+ * 採番はコミットと同一のトランザクションで行うため、抜け番は発生しない。<br>
+ * <br>
+ * 採番した値は、コミットが成功した後に{@link DeferredId}に設定する。
+ * 採番、コールバック、コミットのいずれかが失敗した場合は、{@link DeferredId}は採番前のままとなる。
+ */
+class DeferredIdTransaction implements Transaction {
+
+    /** 保留中の採番を行う順序(採番テーブル名、採番対象IDの昇順) */
+    private static final Comparator<Pending> ORDER = new Comparator<Pending>() {
+        @Override
+        public int compare(Pending o1, Pending o2) {
+            final int result = o1.generator.getTableName().compareTo(o2.generator.getTableName());
+            return result != 0 ? result : o1.id.compareTo(o2.id);
+        }
+    };
+
+    /** 委譲先のトランザクション */
+    private final Transaction transaction;
+
+    /** 採番クラスと採番対象IDごとの保留中の採番(保留した順) */
+    private final List<Pending> pending = new ArrayList<Pending>();
+
+    /** 採番クラスごとの、採番対象IDと保留中の採番 */
+    private final Map<TableIdGenerator, Map<String, Pending>> index = new HashMap<TableIdGenerator, Map<String, Pending>>();
+
+    /**
+     * コンストラクタ。
+     *
+     * @param transaction 委譲先のトランザクション
+     */
+    DeferredIdTransaction(Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    /**
+     * 採番をコミットの直前まで保留する。
+     *
+     * @param generator 採番クラス
+     * @param deferredId コミット時に採番される値
+     */
+    void defer(TableIdGenerator generator, DeferredId deferredId) {
+        Map<String, Pending> ids = index.get(generator);
+        if (ids == null) {
+            ids = new HashMap<String, Pending>();
+            index.put(generator, ids);
+        }
+        Pending entry = ids.get(deferredId.getId());
+        if (entry == null) {
+            entry = new Pending(generator, deferredId.getId());
+            ids.put(deferredId.getId(), entry);
+            pending.add(entry);
+        }
+        entry.deferredIds.add(deferredId);
+    }
+
+    @Override
+    public void begin() {
+        clear();
+        transaction.begin();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * 保留中の採番を行い、コールバックを呼び出した後にコミットし、採番した値を設定する。
+     * 採番やコールバックで例外が発生した場合は、コミットせずに例外を送出する。
+     */
+    @Override
+    public void commit() {
+        final List<Pending> generated;
+        try {
+            generated = generatePending();
+        } finally {
+            clear();
+        }
+        transaction.commit();
+        for (Pending entry : generated) {
+            for (int i = 0; i < entry.deferredIds.size(); i++) {
+                entry.deferredIds.get(i).setValue(entry.values[i]);
+            }
+        }
+    }
+
+    @Override
+    public void rollback() {
+        clear();
+        transaction.rollback();
+    }
+
+    /**
+     * 保留中の採番を破棄する。
+     */
+    private void clear() {
+        pending.clear();
+        index.clear();
+    }
+
+    /**
+     * 保留中の採番を行い、コールバックを呼び出す。<br>
+     * 採番した値は保留中の採番に保持し、{@link DeferredId}には設定しない。
+     *
+     * @return 採番した保留中の採番(採番した順)
+     */
+    private List<Pending> generatePending() {
+        final List<Pending> sorted = new ArrayList<Pending>(pending);
+        Collections.sort(sorted, ORDER);
+        for (Pending entry : sorted) {
+            final IdRange range = entry.generator.reserve(entry.id, entry.deferredIds.size());
+            entry.values = new long[entry.deferredIds.size()];
+            long value = range.getStart();
+            for (int i = 0; i < entry.values.length; i++) {
+                entry.values[i] = value;
+                value += range.getStep();
+            }
+        }
+        for (Pending entry : sorted) {
+            for (int i = 0; i < entry.deferredIds.size(); i++) {
+                final DeferredIdCallback callback = entry.deferredIds.get(i).getCallback();
+                if (callback != null) {
+                    callback.generated(entry.id, entry.values[i]);
+                }
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * 採番クラスと採番対象IDごとの保留中の採番。
+     */
+    private static final class Pending {
+
+        /** 採番クラス */
+        private final TableIdGenerator generator;
+
+        /** 採番対象を識別するID */
+        private final String id;
+
+        /** コミット時に採番される値(保留した順) */
+        private final List<DeferredId> deferredIds = new ArrayList<DeferredId>();
+
+        /** 採番した値(採番前はnull) */
+        private long[] values;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param generator 採番クラス
+         * @param id 採番対象を識別するID
+         */
+        private Pending(TableIdGenerator generator, String id) {
+            this.generator = generator;
+            this.id = id;
+        }
+    }
+}
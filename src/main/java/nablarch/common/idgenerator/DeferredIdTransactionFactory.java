@@ -0,0 +1,42 @@
+package nablarch.common.idgenerator;
+
+import nablarch.core.transaction.Transaction;
+import nablarch.core.transaction.TransactionFactory;
+
+/**
+ * コミット時の採番({@link TableIdGenerator#generateDeferredId(String)})を行うためのトランザクションを生成するクラス。<br>
+ * <br>
+ * 設定されたトランザクションファクトリが生成するトランザクションに、コミットの直前に保留中の採番を行う処理を追加する。
+ * 業務トランザクションのトランザクションファクトリとして、本クラスを設定すること。
+ * <pre>
+ * {@code
+ * <component name="transactionFactory" class="nablarch.common.idgenerator.DeferredIdTransactionFactory">
+ *   <property name="transactionFactory">
+ *     <component class="nablarch.core.db.transaction.JdbcTransactionFactory" />
+ *   </property>
+ * </component>
+ * }
+ * </pre>
+ */
+public class DeferredIdTransactionFactory implements TransactionFactory {
+
+    /** トランザクションを生成するファクトリ */
+    private TransactionFactory transactionFactory;
+
+    /**
+     * トランザクションを生成するファクトリを設定する。
+     *
+     * @param transactionFactory トランザクションを生成するファクトリ
+     */
+    public void setTransactionFactory(TransactionFactory transactionFactory) {
+        this.transactionFactory = transactionFactory;
+    }
+
+    @Override
+    public Transaction getTransaction(String resourceName) {
+        if (transactionFactory == null) {
+            throw new IllegalStateException("transactionFactory must be set.");
+        }
+        return new DeferredIdTransaction(transactionFactory.getTransaction(resourceName));
+    }
+}
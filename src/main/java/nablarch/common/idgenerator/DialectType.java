@@ -0,0 +1,296 @@
+package nablarch.common.idgenerator;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import nablarch.core.db.dialect.DB2Dialect;
+import nablarch.core.db.dialect.Dialect;
+import nablarch.core.db.dialect.H2Dialect;
+import nablarch.core.db.dialect.OracleDialect;
+import nablarch.core.db.dialect.PostgreSQLDialect;
+import nablarch.core.db.dialect.SqlServerDialect;
+
+/**
+ * 採番処理で使用するデータベース製品固有のSQLの組み立てと、再試行可能なエラーの判定を行う列挙型。<br>
+ * <br>
+ * {@link Dialect}の実装クラスからデータベース製品を判定する。
+ * 判定できないデータベースの場合は{@link #OTHER}となり、製品固有のSQLは使用しない。
+ */
+enum DialectType {
+
+    /** H2 */
+    H2(states("40001", "HYT00"), codes()) {
+        @Override
+        String buildIncrementReturningSql(String tableName, String idColumnName, String noColumnName,
+                String shardColumnName) {
+            return replace("SELECT $NO$ FROM FINAL TABLE ("
+                    + "UPDATE $TABLE_NAME$ SET $NO$ = $NO$ + ? WHERE $ID$ = ?$SHARD$)",
+                    tableName, idColumnName, noColumnName, shardColumnName);
+        }
+
+        @Override
+        String buildSequenceIncrementSql() {
+            return "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE UPPER(SEQUENCE_NAME) = UPPER(?)";
+        }
+
+        @Override
+        String buildSequenceBulkSql(String sequenceName) {
+            return "SELECT NEXT VALUE FOR " + sequenceName + " FROM SYSTEM_RANGE(1, ?)";
+        }
+    },
+
+    /** PostgreSQL */
+    POSTGRESQL(states("40001", "40P01", "55P03"), codes()) {
+        @Override
+        String buildIncrementReturningSql(String tableName, String idColumnName, String noColumnName,
+                String shardColumnName) {
+            return replace("UPDATE $TABLE_NAME$ SET $NO$ = $NO$ + ? WHERE $ID$ = ?$SHARD$ RETURNING $NO$",
+                    tableName, idColumnName, noColumnName, shardColumnName);
+        }
+
+        @Override
+        String buildSequenceIncrementSql() {
+            return "SELECT increment_by FROM pg_sequences WHERE sequencename = LOWER(?)";
+        }
+
+        @Override
+        String buildSequenceBulkSql(String sequenceName) {
+            return "SELECT nextval('" + sequenceName + "') FROM generate_series(1, ?)";
+        }
+    },
+
+    /** Oracle */
+    ORACLE(states(), codes(60, 54, 30006, 8177)) {
+        @Override
+        String buildIncrementReturningSql(String tableName, String idColumnName, String noColumnName,
+                String shardColumnName) {
+            return replace("BEGIN UPDATE $TABLE_NAME$ SET $NO$ = $NO$ + ? WHERE $ID$ = ?$SHARD$ RETURNING $NO$ INTO ?; END;",
+                    tableName, idColumnName, noColumnName, shardColumnName);
+        }
+
+        @Override
+        boolean isReturningByOutParameter() {
+            return true;
+        }
+
+        @Override
+        String buildSequenceIncrementSql() {
+            return "SELECT INCREMENT_BY FROM USER_SEQUENCES WHERE SEQUENCE_NAME = UPPER(?)";
+        }
+
+        @Override
+        String buildSequenceBulkSql(String sequenceName) {
+            return "SELECT " + sequenceName + ".NEXTVAL FROM DUAL CONNECT BY LEVEL <= ?";
+        }
+    },
+
+    /** SQL Server */
+    SQLSERVER(states("40001"), codes(1205, 1222)) {
+        @Override
+        String buildIncrementReturningSql(String tableName, String idColumnName, String noColumnName,
+                String shardColumnName) {
+            return replace("UPDATE $TABLE_NAME$ SET $NO$ = $NO$ + ? OUTPUT INSERTED.$NO$ WHERE $ID$ = ?$SHARD$",
+                    tableName, idColumnName, noColumnName, shardColumnName);
+        }
+
+        @Override
+        String buildSequenceIncrementSql() {
+            return "SELECT CAST(increment AS BIGINT) FROM sys.sequences WHERE name = ?";
+        }
+
+        @Override
+        String buildSequenceBulkSql(String sequenceName) {
+            return "SELECT NEXT VALUE FOR " + sequenceName
+                    + " FROM (SELECT TOP (?) 1 AS N FROM sys.all_columns A CROSS JOIN sys.all_columns B) T";
+        }
+    },
+
+    /** DB2 */
+    DB2(states("40001", "57033"), codes(-911, -913)) {
+        @Override
+        String buildIncrementReturningSql(String tableName, String idColumnName, String noColumnName,
+                String shardColumnName) {
+            return replace("SELECT $NO$ FROM FINAL TABLE ("
+                    + "UPDATE $TABLE_NAME$ SET $NO$ = $NO$ + ? WHERE $ID$ = ?$SHARD$)",
+                    tableName, idColumnName, noColumnName, shardColumnName);
+        }
+
+        @Override
+        String buildSequenceIncrementSql() {
+            return "SELECT BIGINT(INCREMENT) FROM SYSCAT.SEQUENCES WHERE SEQNAME = UPPER(?)";
+        }
+
+        @Override
+        String buildSequenceBulkSql(String sequenceName) {
+            return "WITH N (I) AS (SELECT 1 FROM SYSIBM.SYSDUMMY1 UNION ALL SELECT I + 1 FROM N WHERE I < ?) "
+                    + "SELECT NEXT VALUE FOR " + sequenceName + " FROM N";
+        }
+    },
+
+    /**
+     * 上記以外のデータベース(SQLSTATEのみで判定する)。<br>
+     * シーケンスから次の値を取得する構文はデータベース製品ごとに異なり({@code NEXTVAL('seq')}、{@code seq.NEXTVAL}、
+     * {@code NEXT VALUE FOR seq}など)、{@link Dialect}からは完結したSQL文としてしか取得できないため、
+     * 再帰共通表式に埋め込んで複数の値を1回で取得するSQLは組み立てない。
+     * また、再帰共通表式の構文({@code RECURSIVE}キーワードの要否)や、共通表式内でのシーケンスの参照可否も製品ごとに異なる。
+     * このため、シーケンスから複数の値を取得する場合は、値ごとに{@link Dialect}のSQLを実行する。
+     */
+    OTHER(states("40001", "40P01", "55P03", "HYT00", "57033"), codes());
+
+    /** 再試行により成功する可能性があるSQLSTATE(デッドロック、ロックタイムアウトなど) */
+    private final Set<String> retryableSqlStates;
+
+    /** 再試行により成功する可能性があるベンダーエラーコード(デッドロック、ロックタイムアウトなど) */
+    private final Set<Integer> retryableErrorCodes;
+
+    /**
+     * コンストラクタ。
+     *
+     * @param retryableSqlStates 再試行により成功する可能性があるSQLSTATE
+     * @param retryableErrorCodes 再試行により成功する可能性があるベンダーエラーコード
+     */
+    DialectType(Set<String> retryableSqlStates, Set<Integer> retryableErrorCodes) {
+        this.retryableSqlStates = retryableSqlStates;
+        this.retryableErrorCodes = retryableErrorCodes;
+    }
+
+    /**
+     * {@link Dialect}に対応するデータベース製品を判定する。
+     *
+     * @param dialect ダイアレクト
+     * @return データベース製品
+     */
+    static DialectType of(Dialect dialect) {
+        if (dialect instanceof H2Dialect) {
+            return H2;
+        }
+        if (dialect instanceof PostgreSQLDialect) {
+            return POSTGRESQL;
+        }
+        if (dialect instanceof OracleDialect) {
+            return ORACLE;
+        }
+        if (dialect instanceof SqlServerDialect) {
+            return SQLSERVER;
+        }
+        if (dialect instanceof DB2Dialect) {
+            return DB2;
+        }
+        return OTHER;
+    }
+
+    /**
+     * 採番テーブルのインクリメントとインクリメント後の値の取得を1回で行うSQLを組み立てる。<br>
+     * SQLのパラメータは、1番目がインクリメントする数、2番目がIDとなる。
+     * {@link #isReturningByOutParameter()}が{@code true}の場合は、3番目の出力パラメータでインクリメント後の値を返却する。
+     * それ以外の場合は、インクリメント後の値を1列目に持つ結果セットを返却する。
+     *
+     * @param tableName 採番テーブル物理名
+     * @param idColumnName IDカラム物理名
+     * @param noColumnName NOカラム物理名
+     * @return SQL。1回で行うことができないデータベースの場合は{@code null}
+     */
+    String buildIncrementReturningSql(String tableName, String idColumnName, String noColumnName) {
+        return buildIncrementReturningSql(tableName, idColumnName, noColumnName, null);
+    }
+
+    /**
+     * 分割された採番テーブルのインクリメントとインクリメント後の値の取得を1回で行うSQLを組み立てる。<br>
+     * 分割番号カラム物理名を指定した場合は、IDの次のパラメータが分割番号となり、以降のパラメータは1つずつ後ろにずれる。
+     *
+     * @param tableName 採番テーブル物理名
+     * @param idColumnName IDカラム物理名
+     * @param noColumnName NOカラム物理名
+     * @param shardColumnName 分割番号カラム物理名(分割しない場合は{@code null})
+     * @return SQL。1回で行うことができないデータベースの場合は{@code null}
+     * @see #buildIncrementReturningSql(String, String, String)
+     */
+    String buildIncrementReturningSql(String tableName, String idColumnName, String noColumnName,
+            String shardColumnName) {
+        return null;
+    }
+
+    /**
+     * シーケンスの増分をデータベースのカタログから取得するSQLを組み立てる。<br>
+     * SQLのパラメータはシーケンス名(スキーマ名を含まない)で、増分を1列目に持つ結果セットを返却する。
+     *
+     * @return SQL。カタログから取得できないデータベースの場合は{@code null}
+     */
+    String buildSequenceIncrementSql() {
+        return null;
+    }
+
+    /**
+     * シーケンスから複数の値を1回で取得するSQLを組み立てる。<br>
+     * SQLのパラメータは取得する値の数で、取得した値を1列目に持つ結果セットを返却する。
+     * 行の生成には、データベース製品ごとの行生成の構文(PostgreSQLの{@code generate_series}、
+     * Oracleの{@code CONNECT BY LEVEL}、H2の{@code SYSTEM_RANGE}、DB2の再帰共通表式など)を使用する。
+     *
+     * @param sequenceName シーケンスオブジェクト名
+     * @return SQL。1回で取得できないデータベース({@link #OTHER})の場合は{@code null}
+     */
+    String buildSequenceBulkSql(String sequenceName) {
+        return null;
+    }
+
+    /**
+     * インクリメント後の値を出力パラメータで返却するか否か。
+     *
+     * @return 出力パラメータで返却する場合は{@code true}
+     */
+    boolean isReturningByOutParameter() {
+        return false;
+    }
+
+    /**
+     * 再試行により成功する可能性がある例外(デッドロック、ロックタイムアウトなど)か否か。
+     *
+     * @param e 例外
+     * @return 再試行により成功する可能性がある場合は{@code true}
+     */
+    boolean isRetryable(SQLException e) {
+        return (e.getSQLState() != null && retryableSqlStates.contains(e.getSQLState()))
+                || retryableErrorCodes.contains(e.getErrorCode());
+    }
+
+    /**
+     * SQLSTATEの集合を生成する。
+     *
+     * @param states SQLSTATE
+     * @return SQLSTATEの集合
+     */
+    private static Set<String> states(String... states) {
+        return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(states)));
+    }
+
+    /**
+     * ベンダーエラーコードの集合を生成する。
+     *
+     * @param codes ベンダーエラーコード
+     * @return ベンダーエラーコードの集合
+     */
+    private static Set<Integer> codes(Integer... codes) {
+        return Collections.unmodifiableSet(new HashSet<Integer>(Arrays.asList(codes)));
+    }
+
+    /**
+     * SQLのテーブル名、カラム名、分割番号の条件を置き換える。
+     *
+     * @param sql SQL
+     * @param tableName 採番テーブル物理名
+     * @param idColumnName IDカラム物理名
+     * @param noColumnName NOカラム物理名
+     * @param shardColumnName 分割番号カラム物理名(分割しない場合は{@code null})
+     * @return 置き換え後のSQL
+     */
+    private static String replace(String sql, String tableName, String idColumnName, String noColumnName,
+            String shardColumnName) {
+        return sql.replace("$TABLE_NAME$", tableName)
+                .replace("$NO$", noColumnName)
+                .replace("$ID$", idColumnName)
+                .replace("$SHARD$", shardColumnName == null ? "" : " AND " + shardColumnName + " = ?");
+    }
+}
@@ -0,0 +1,62 @@
+package nablarch.common.idgenerator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+
+/**
+ * 採番クラスが使用するスレッドの生成・停止を行うユーティリティクラス。
+ */
+final class ExecutorSupport {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(ExecutorSupport.class);
+
+    /** 停止時に実行中の処理の完了を待機する時間(ミリ秒) */
+    private static final long TERMINATION_TIMEOUT_MILLIS = 10000L;
+
+    /**
+     * 隠蔽コンストラクタ。
+     */
+    private ExecutorSupport() {
+    }
+
+    /**
+     * デーモンスレッドを生成するファクトリを生成する。
+     *
+     * @param name スレッド名
+     * @return スレッドを生成するファクトリ
+     */
+    static ThreadFactory daemonThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * スレッドを停止する。実行中の処理がある場合は、その完了を待機する。
+     *
+     * @param executor 停止するスレッド(nullの場合は何もしない)
+     * @param name スレッドの用途
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    static void shutdown(ExecutorService executor, String name) throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(TERMINATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            LOGGER.logWarn(name + " thread did not terminate within "
+                    + TERMINATION_TIMEOUT_MILLIS + "ms.");
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,8 +1,28 @@
 package nablarch.common.idgenerator;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.management.ObjectName;
+
+import nablarch.common.idgenerator.BlockAllocator.BlockHolder;
 import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.connection.ConnectionFactory;
+import nablarch.core.db.connection.DbConnectionContext;
 import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
 import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.repository.disposal.Disposable;
 import nablarch.core.repository.initialization.Initializable;
 import nablarch.core.transaction.TransactionContext;
 
@@ -10,12 +30,20 @@ import nablarch.core.transaction.TransactionContext;
  * 採番用のテーブルを使用して高速に採番を行うクラス。<br>
  * 採番用テーブルを使用して採番処理を行い、トランザクションのコミット処理を行う。<br>
  * <br>
+ * ブロックサイズ({@link #setBlockSize(int)})に2以上を設定した場合は、採番対象のIDごとに値をまとめて予約し、メモリ上から払い出す。
+ * 先読み、ノードごとの分割、同時の採番のまとめ、専用の接続、予約状態の記録などの動作は、各設定項目のsetterを参照。<br>
+ * <br>
  * また、本クラスはリポジトリの機能を用いて初期化することを想定しているので、コンポーネント設定ファイルに初期化の設定を行うこと。
+ * スレッドの停止とMBeanの登録解除を行うため、コンポーネント設定ファイルに廃棄処理の設定も行うこと。
  *
  * @author Hisaaki Sioiri
  * @see nablarch.common.idgenerator.TableIdGenerator
  */
-public class FastTableIdGenerator implements IdGenerator, Initializable {
+public class FastTableIdGenerator
+        implements IdGenerator, LongIdGenerator, IdRangeGenerator, AsyncIdGenerator, Initializable, Disposable {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(FastTableIdGenerator.class);
 
     /** データベースマネージャ */
     private SimpleDbTransactionManager dbTransactionManager;
@@ -32,6 +60,137 @@ public class FastTableIdGenerator implements IdGenerator, Initializable {
     /** 採番テーブルのNOカラム物理名 */
     private String noColumnName;
 
+    /** インクリメントと取得を1回のSQLで行うか否か */
+    private boolean useSingleStatement = false;
+
+    /** 採番テーブルの分割番号カラム物理名(分割しない場合はnull) */
+    private String shardColumnName;
+
+    /** 採番対象IDごとの分割数 */
+    private int shardCount = 1;
+
+    /** ノード番号(ノードごとに分割番号を割り当てない場合は-1) */
+    private int nodeIndex = -1;
+
+    /** クラスタのノード数 */
+    private int clusterSize = 0;
+
+    /** ノード名(nullの場合はホスト名) */
+    private String nodeName;
+
+    /** ノード登録テーブル物理名 */
+    private String nodeRegistryTableName;
+
+    /** ノード登録テーブルのノード番号カラム物理名 */
+    private String nodeIndexColumnName = "NODE_INDEX";
+
+    /** ノード登録テーブルのノード名カラム物理名 */
+    private String nodeNameColumnName = "NODE_NAME";
+
+    /** ノード登録テーブルのクラスタのノード数カラム物理名 */
+    private String clusterSizeColumnName = "CLUSTER_SIZE";
+
+    /** ノード登録(ノードごとに分割番号を割り当てない場合はnull) */
+    private NodeRegistry nodeRegistry;
+
+    /** 再試行方針(nullの場合は再試行しない) */
+    private RetryPolicy retryPolicy;
+
+    /** 採番に使用するデータベース製品(最初の採番時に判定する) */
+    private volatile DialectType dialectType;
+
+    /** 非同期採番用のスレッド数 */
+    private int asyncThreadCount = 4;
+
+    /** 非同期採番の待ち行列の上限 */
+    private int asyncQueueCapacity = 1000;
+
+    /** 非同期の採番 */
+    private AsyncIdExecutor asyncIdExecutor;
+
+    /** MBeanのオブジェクト名(nullの場合はMBeanを登録しない) */
+    private String jmxObjectName;
+
+    /** 登録したMBeanのオブジェクト名 */
+    private ObjectName registeredObjectName;
+
+    /** 統計情報(MBeanを登録しない場合はnull) */
+    private IdGeneratorStatistics statistics;
+
+    /** 同一の採番対象IDに対する同時の採番をまとめるか否か */
+    private boolean coalescing = false;
+
+    /** 同時の採番をまとめる際に、後続の呼び出しを待ち合わせる時間(ミリ秒) */
+    private long coalescingWindowMillis = 0L;
+
+    /** 同時の採番をまとめる採番処理(まとめない場合はnull) */
+    private CoalescingGenerator coalescingGenerator;
+
+    /** 採番テーブルの更新専用の接続を取得するファクトリ */
+    private ConnectionFactory connectionFactory;
+
+    /** 採番テーブルの更新専用の接続数(0の場合は専用の接続を使用しない) */
+    private int dedicatedConnectionCount = 0;
+
+    /** 採番テーブルの更新専用の接続(専用の接続を使用しない場合はnull) */
+    private DedicatedConnectionPool dedicatedConnectionPool;
+
+    /** ウォームアップ対象の採番対象ID */
+    private List<String> warmUpIds;
+
+    /** 採番対象IDを初期化時に読み込むか否か */
+    private boolean preloadIds = false;
+
+    /** 読み込んでいない採番対象IDが指定された場合に、採番対象IDを再読み込みする間隔(ミリ秒) */
+    private long idRefreshIntervalMillis = 1000L;
+
+    /** 廃棄処理で未払い出しの値を採番テーブルに返却するか否か */
+    private boolean releaseUnusedOnDispose = false;
+
+    /** 予約状態の記録ファイルのパス(nullの場合は記録しない) */
+    private String journalPath;
+
+    /** 予約状態の記録ファイルに記録できる採番対象IDの数 */
+    private int journalCapacity = 1024;
+
+    /** 読み込んだ採番対象IDごとの予約状態(採番対象IDを読み込まない場合はnull) */
+    private KeyRegistry<BlockHolder> keyRegistry;
+
+    /** 採番テーブルの値の予約と返却 */
+    private final RangeReserver rangeReserver = new RangeReserver() {
+        @Override
+        public IdRange reserve(String id, int count) {
+            return reserveRange(id, count);
+        }
+
+        @Override
+        public boolean release(final String id, final IdRange unused) {
+            return new SimpleDbTransactionExecutor<Boolean>(dbTransactionManager) {
+                @Override
+                public Boolean execute(AppDbConnection connection) {
+                    return tableIdGenerator.release(id, unused);
+                }
+            }.doTransaction();
+        }
+
+        @Override
+        public Map<String, Boolean> isReserved(final Map<String, IdRange> ranges) {
+            return new SimpleDbTransactionExecutor<Map<String, Boolean>>(dbTransactionManager) {
+                @Override
+                public Map<String, Boolean> execute(AppDbConnection connection) {
+                    final Map<String, Boolean> result = new TreeMap<String, Boolean>();
+                    for (Map.Entry<String, IdRange> entry : ranges.entrySet()) {
+                        result.put(entry.getKey(), tableIdGenerator.isReserved(entry.getKey(), entry.getValue()));
+                    }
+                    return result;
+                }
+            }.doTransaction();
+        }
+    };
+
+    /** ブロック単位の予約と払い出し */
+    private final BlockAllocator blockAllocator = new BlockAllocator(rangeReserver);
+
 
     /** {@inheritDoc} */
     public String generateId(String id) {
@@ -39,23 +198,295 @@ public class FastTableIdGenerator implements IdGenerator, Initializable {
     }
 
     /** {@inheritDoc}* */
-    public String generateId(final String id, final IdFormatter formatter) {
+    public String generateId(String id, IdFormatter formatter) {
+        final String no = String.valueOf(generateLongId(id));
+        if (formatter == null) {
+            return no;
+        }
+        return formatter.format(id, no);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * ブロック単位で予約を行う場合は、予約済みのブロックから払い出す。
+     * この場合、データベースへのアクセスが発生しない限りオブジェクトの生成は行わない。
+     */
+    public long generateLongId(final String id) {
+        final IdGeneratorStatistics stats = statistics;
+        if (stats == null) {
+            return doGenerateLongId(id);
+        }
+        final long start = System.nanoTime();
+        boolean succeeded = false;
         try {
-            return new SimpleDbTransactionExecutor<String>(
-                    dbTransactionManager) {
+            final long no = doGenerateLongId(id);
+            succeeded = true;
+            return no;
+        } finally {
+            stats.recordCall(id, System.nanoTime() - start, succeeded);
+        }
+    }
+
+    /**
+     * 採番を行う。
+     *
+     * @param id 採番対象を識別するID
+     * @return 採番した値
+     */
+    private long doGenerateLongId(final String id) {
+        if (blockAllocator.isBlockMode()) {
+            // 存在しない採番対象IDは、予約状態の取得時にエラーとなる。
+            return blockAllocator.next(id);
+        }
+        validateId(id);
+        final CoalescingGenerator coalescer = coalescingGenerator;
+        if (coalescer != null) {
+            return coalescer.generate(id);
+        }
+        if (dedicatedConnectionPool != null) {
+            return reserveRange(id, 1).getEnd();
+        }
+        return executeInTransaction(id, Collections.singleton(id), new GenerateAction<Long>() {
+            @Override
+            public Long generate() {
+                return tableIdGenerator.generateLongId(id);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<String> generateIdAsync(String id) {
+        return generateIdAsync(id, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<String> generateIdAsync(final String id, final IdFormatter formatter) {
+        return generateLongIdAsync(id).thenApply(new Function<Long, String>() {
+            @Override
+            public String apply(Long no) {
+                return formatter == null ? String.valueOf(no) : formatter.format(id, String.valueOf(no));
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * ブロック単位で予約を行う場合で、予約済みのブロックから払い出せる場合は、呼び出し元のスレッドで払い出し、
+     * 完了済みの{@link CompletableFuture}を返却する。
+     * それ以外の場合は、非同期採番用のスレッドプールで採番する。
+     * 採番対象IDの検証と再読み込みも非同期採番用のスレッドプールで行うため、呼び出し元のスレッドでデータベースにアクセスすることはない。
+     * 非同期採番の待ち行列が上限に達している場合は、例外で完了した{@link CompletableFuture}を返却する。
+     * 払い出し処理のロックには{@code synchronized}を使用していないため、仮想スレッドから呼び出した場合でもキャリアスレッドは固定(pin)されない。
+     */
+    @Override
+    public CompletableFuture<Long> generateLongIdAsync(final String id) {
+        // 採番対象IDの再読み込みはデータベースアクセスとなるため、呼び出し元のスレッドでは読み込み済みの予約状態のみを参照する。
+        // 読み込み済みでない採番対象IDの検証(再読み込み)は、非同期採番用のスレッドプールで行う。
+        final BlockHolder holder = blockAllocator.isBlockMode() ? blockAllocator.findBlockHolder(id) : null;
+        if (holder != null) {
+            final IdGeneratorStatistics stats = statistics;
+            final long start = stats == null ? 0L : System.nanoTime();
+            final long no = blockAllocator.tryNext(id, holder);
+            if (no != IdBlock.EXHAUSTED) {
+                if (stats != null) {
+                    stats.recordCall(id, System.nanoTime() - start, true);
+                }
+                return CompletableFuture.completedFuture(no);
+            }
+        }
+        return asyncIdExecutor.submit(this, id);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * 採番テーブルを1回だけ更新して連続する値をまとめて採番し、コミットする。
+     * ブロック単位で予約を行う場合でも、予約済みのブロックは使用せずに採番テーブルから直接採番する。
+     */
+    public IdRange generateIds(String id, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be greater than 0. count = " + count);
+        }
+        validateId(id);
+        return reserveRange(id, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * 全ての採番対象IDの採番を1つのトランザクションで行い、コミットは1回のみとなる。
+     * ブロック単位で予約を行う場合でも、予約済みのブロックは使用せずに採番テーブルから直接採番する。
+     *
+     * @see TableIdGenerator#generateIds(Map)
+     */
+    public Map<String, IdRange> generateIds(Map<String, Integer> counts) {
+        if (counts == null || counts.isEmpty()) {
+            throw new IllegalArgumentException("counts must not be empty.");
+        }
+        final SortedMap<String, Integer> sorted = new TreeMap<String, Integer>(counts);
+        for (String id : sorted.keySet()) {
+            validateId(id);
+        }
+        return executeInTransaction(sorted.keySet(), sorted.keySet(), new GenerateAction<Map<String, IdRange>>() {
+            @Override
+            public Map<String, IdRange> generate() {
+                return tableIdGenerator.generateIds(sorted);
+            }
+        });
+    }
+
+    /**
+     * 採番テーブルの値を指定された数だけ進め、予約した範囲をコミットする。
+     *
+     * @param id 採番対象を識別するID
+     * @param count 予約する数
+     * @return 予約した範囲
+     */
+    private IdRange reserveRange(final String id, final int count) {
+        final DedicatedConnectionPool pool = dedicatedConnectionPool;
+        if (pool != null) {
+            return execute(id, Collections.singleton(id), new GenerateAction<IdRange>() {
                 @Override
-                public String execute(AppDbConnection connection) {
-                    return tableIdGenerator.generateId(id, formatter);
+                public IdRange generate() {
+                    return tableIdGenerator.reserve(id, count, pool);
                 }
+            }, false);
+        }
+        return executeInTransaction(id, Collections.singleton(id), new GenerateAction<IdRange>() {
+            @Override
+            public IdRange generate() {
+                return tableIdGenerator.reserve(id, count);
             }
-            .doTransaction();
-        } catch (RuntimeException e) {
-            throw new RuntimeException(
-                    "failed in generation of id. id = " + id, e);
-        } catch (Error e) {
-            throw new RuntimeException(
-                    "failed in generation of id. id = " + id, e);
+        });
+    }
+
+    /**
+     * 採番処理を新たなトランザクションで実行し、コミットする。<br>
+     * 再試行方針が設定されている場合、デッドロックやロックタイムアウトにより失敗した採番処理は再試行する。
+     *
+     * @param id 採番対象を識別するID(エラーメッセージ用)
+     * @param keys 採番処理の対象となるID(統計情報の記録用)
+     * @param action 採番処理
+     * @param <T> 採番結果の型
+     * @return 採番結果
+     */
+    private <T> T executeInTransaction(Object id, Collection<String> keys, final GenerateAction<T> action) {
+        return execute(id, keys, action, true);
+    }
+
+    /**
+     * 採番処理を実行する。<br>
+     * 再試行方針が設定されている場合、デッドロックやロックタイムアウトにより失敗した採番処理は再試行する。
+     *
+     * @param id 採番対象を識別するID(エラーメッセージ用)
+     * @param keys 採番処理の対象となるID(統計情報の記録用)
+     * @param action 採番処理
+     * @param inTransaction 新たなトランザクションで実行し、コミットする場合は{@code true}。
+     *                      採番処理が自動コミットの専用の接続を使用する場合は{@code false}
+     * @param <T> 採番結果の型
+     * @return 採番結果
+     */
+    private <T> T execute(Object id, Collection<String> keys, final GenerateAction<T> action, boolean inTransaction) {
+        final long startNanos = System.nanoTime();
+        int retryCount = 0;
+        while (true) {
+            try {
+                final T result = !inTransaction ? action.generate() : new SimpleDbTransactionExecutor<T>(
+                        dbTransactionManager) {
+                    @Override
+                    public T execute(AppDbConnection connection) {
+                        if (dialectType == null) {
+                            dialectType = DialectType.of(DbConnectionContext.getTransactionManagerConnection(
+                                    dbTransactionManager.getDbTransactionName()).getDialect());
+                        }
+                        return action.generate();
+                    }
+                }
+                .doTransaction();
+                if (retryCount > 0) {
+                    LOGGER.logInfo("generated id after " + retryCount + " retries. id = " + id);
+                }
+                final IdGeneratorStatistics stats = statistics;
+                if (stats != null) {
+                    // 採番処理のSQLに加えて、コミットを往復回数に含める(自動コミットの場合はSQLの実行のみ)。
+                    final int roundTrips = !inTransaction ? 1
+                            : (keys.size() > 1 ? 2 : tableIdGenerator.countStatements(dialectType)) + 1;
+                    for (String key : keys) {
+                        stats.recordDatabaseAccess(key, roundTrips, 1);
+                    }
+                }
+                return result;
+            } catch (RuntimeException e) {
+                final long backoffMillis = retryPolicy == null ? -1L : retryPolicy.nextBackoffMillis(
+                        dialectType == null ? DialectType.OTHER : dialectType, e, retryCount,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                if (backoffMillis < 0) {
+                    throw generationFailed(id, retryCount, e);
+                }
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw generationFailed(id, retryCount, e);
+                }
+                retryCount++;
+                final IdGeneratorStatistics stats = statistics;
+                if (stats != null) {
+                    for (String key : keys) {
+                        stats.recordRetry(key);
+                    }
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.logDebug("retry generation of id. id = " + id + ", retry count = " + retryCount, e);
+                }
+            } catch (Error e) {
+                throw generationFailed(id, retryCount, e);
+            }
+        }
+    }
+
+    /**
+     * 採番対象IDが採番テーブルに存在することを検証する。<br>
+     * 採番対象IDを読み込まない場合は何もしない(存在しない場合は採番テーブルの更新時にエラーとなる)。
+     *
+     * @param id 採番対象を識別するID
+     */
+    private void validateId(String id) {
+        final KeyRegistry<BlockHolder> registry = keyRegistry;
+        if (registry != null && registry.get(id) == null) {
+            throw unknownId(id);
+        }
+    }
+
+    /**
+     * 存在しない採番対象IDが指定されたことを表す例外を生成する。<br>
+     * 採番テーブルの更新時に検出した場合と同じ例外とする。
+     *
+     * @param id 採番対象を識別するID
+     * @return 採番処理の失敗を表す例外
+     */
+    static RuntimeException unknownId(String id) {
+        return generationFailed(id, 0, new IllegalStateException(String.format("id was not found. id:%s", id)));
+    }
+
+    /**
+     * 採番処理の失敗を表す例外を生成する。
+     *
+     * @param id 採番対象を識別するID
+     * @param retryCount 再試行回数
+     * @param cause 原因例外
+     * @return 採番処理の失敗を表す例外
+     */
+    private static RuntimeException generationFailed(Object id, int retryCount, Throwable cause) {
+        if (retryCount == 0) {
+            return new RuntimeException("failed in generation of id. id = " + id, cause);
         }
+        return new RuntimeException(
+                "failed in generation of id. id = " + id + ", retry count = " + retryCount, cause);
     }
 
     /**
@@ -95,13 +526,368 @@ public class FastTableIdGenerator implements IdGenerator, Initializable {
         this.noColumnName = noColumnName.toUpperCase();
     }
 
+    /**
+     * インクリメントとインクリメント後の値の取得を1回のSQLで行うか否かを設定する。<br>
+     * デフォルトは{@code false}。
+     *
+     * @param useSingleStatement 1回のSQLで行う場合は{@code true}
+     * @see TableIdGenerator#setUseSingleStatement(boolean)
+     */
+    public void setUseSingleStatement(boolean useSingleStatement) {
+        this.useSingleStatement = useSingleStatement;
+    }
+
+    /**
+     * 採番テーブルの分割番号カラム物理名を設定する。
+     *
+     * @param shardColumnName 分割番号カラム名
+     * @see TableIdGenerator#setShardColumnName(String)
+     */
+    public void setShardColumnName(String shardColumnName) {
+        this.shardColumnName = shardColumnName;
+    }
+
+    /**
+     * 採番対象IDごとの分割数を設定する。<br>
+     * デフォルトは1。
+     *
+     * @param shardCount 分割数
+     * @see TableIdGenerator#setShardCount(int)
+     */
+    public void setShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be greater than 0. shardCount = " + shardCount);
+        }
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * ノード番号を設定する。<br>
+     * 0からクラスタのノード数-1までの、クラスタ内で一意な値を設定すること。
+     * 設定した場合は、分割番号カラム物理名({@link #setShardColumnName(String)})、クラスタのノード数({@link #setClusterSize(int)})、
+     * ノード登録テーブル物理名({@link #setNodeRegistryTableName(String)})も設定すること。
+     * 分割数({@link #setShardCount(int)})の設定値は使用せず、クラスタのノード数を分割数とする。<br>
+     * 各ノードはノード番号の分割番号の行のみを更新し、{@code n * クラスタのノード数 + ノード番号}の値のみを払い出すため、
+     * ノード間で行ロックの競合も値の重複も発生しない。ノード番号の重複は、初期化時にノード登録テーブルで検出する。
+     * 更新の頻度を下げるため、大きなブロックサイズとあわせて使用すること。
+     *
+     * @param nodeIndex ノード番号
+     */
+    public void setNodeIndex(int nodeIndex) {
+        if (nodeIndex < 0) {
+            throw new IllegalArgumentException("nodeIndex must not be negative. nodeIndex = " + nodeIndex);
+        }
+        this.nodeIndex = nodeIndex;
+    }
+
+    /**
+     * クラスタのノード数を設定する。<br>
+     * 全てのノードで同じ値を設定すること。
+     *
+     * @param clusterSize クラスタのノード数
+     */
+    public void setClusterSize(int clusterSize) {
+        if (clusterSize < 1) {
+            throw new IllegalArgumentException("clusterSize must be greater than 0. clusterSize = " + clusterSize);
+        }
+        this.clusterSize = clusterSize;
+    }
+
+    /**
+     * ノード登録テーブルに登録するノード名を設定する。<br>
+     * デフォルトはホスト名。同一のノード番号が同一のノード名で登録済みの場合は、ノードの再起動とみなして登録を引き継ぐ。
+     *
+     * @param nodeName ノード名
+     */
+    public void setNodeName(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    /**
+     * ノード登録テーブル物理名を設定する。<br>
+     * テーブルのレイアウトは{@link NodeRegistry}を参照。
+     *
+     * @param nodeRegistryTableName ノード登録テーブル物理名
+     */
+    public void setNodeRegistryTableName(String nodeRegistryTableName) {
+        this.nodeRegistryTableName = nodeRegistryTableName.toUpperCase();
+    }
+
+    /**
+     * ノード登録テーブルのノード番号カラム物理名を設定する。<br>
+     * デフォルトは{@code NODE_INDEX}。
+     *
+     * @param nodeIndexColumnName ノード番号カラム物理名
+     */
+    public void setNodeIndexColumnName(String nodeIndexColumnName) {
+        this.nodeIndexColumnName = nodeIndexColumnName.toUpperCase();
+    }
+
+    /**
+     * ノード登録テーブルのノード名カラム物理名を設定する。<br>
+     * デフォルトは{@code NODE_NAME}。
+     *
+     * @param nodeNameColumnName ノード名カラム物理名
+     */
+    public void setNodeNameColumnName(String nodeNameColumnName) {
+        this.nodeNameColumnName = nodeNameColumnName.toUpperCase();
+    }
+
+    /**
+     * ノード登録テーブルのクラスタのノード数カラム物理名を設定する。<br>
+     * デフォルトは{@code CLUSTER_SIZE}。
+     *
+     * @param clusterSizeColumnName クラスタのノード数カラム物理名
+     */
+    public void setClusterSizeColumnName(String clusterSizeColumnName) {
+        this.clusterSizeColumnName = clusterSizeColumnName.toUpperCase();
+    }
+
+    /**
+     * 一度に予約する値の数(ブロックサイズ)を設定する。<br>
+     * デフォルトは1で、採番の都度コミットを行う。
+     * 2以上を設定した場合は、採番対象のIDごとにブロックサイズ分の値をまとめて予約(コミット)し、予約した値をメモリ上から払い出す。
+     * 予約済みで未払い出しの値はアプリケーションの停止時に破棄されるため、抜け番が発生する
+     * ({@link #setReleaseUnusedOnDispose(boolean)}、{@link #setJournalPath(String)}を参照)。
+     *
+     * @param blockSize ブロックサイズ
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be greater than 0. blockSize = " + blockSize);
+        }
+        blockAllocator.setBlockSize(blockSize);
+    }
+
+    /**
+     * ブロックサイズの決定方法を設定する。<br>
+     * 設定した場合は、{@link #setBlockSize(int)}の設定値に関わらずブロック単位で予約を行い、
+     * ブロックサイズは予約の都度、本設定値により決定する。
+     * 消費速度に応じて増減させる場合は、{@link AdaptiveBlockSizePolicy}などを設定する。
+     *
+     * @param blockSizePolicy ブロックサイズの決定方法
+     */
+    public void setBlockSizePolicy(BlockSizePolicy blockSizePolicy) {
+        blockAllocator.setBlockSizePolicy(blockSizePolicy);
+    }
+
+    /**
+     * 再試行方針を設定する。<br>
+     * 設定しない場合は、採番処理に失敗しても再試行は行わない。
+     *
+     * @param retryPolicy 再試行方針
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * MBeanのオブジェクト名を設定する。<br>
+     * 設定した場合は、初期化処理でプラットフォームMBeanサーバにMBeanを登録し、廃棄処理で登録を解除する。
+     * 設定しない場合は、MBeanの登録と統計情報の収集は行わない。
+     * 公開する情報と実行中に変更できる設定値は、{@link FastTableIdGeneratorMXBean}を参照。
+     *
+     * @param jmxObjectName MBeanのオブジェクト名(例:{@code nablarch:type=FastTableIdGenerator,name=order})
+     */
+    public void setJmxObjectName(String jmxObjectName) {
+        this.jmxObjectName = jmxObjectName;
+    }
+
+    /**
+     * 次のブロックの先読みを開始する残数の閾値を設定する。<br>
+     * 払い出し中のブロックの残数がこの値以下になった時点で、次のブロックの予約をバックグラウンドで開始する。<br>
+     * デフォルトは0で、先読みは行わない。先読みはブロック単位で予約を行う場合のみ有効となる。
+     *
+     * @param prefetchThreshold 先読みを開始する残数の閾値
+     */
+    public void setPrefetchThreshold(int prefetchThreshold) {
+        if (prefetchThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "prefetchThreshold must not be negative. prefetchThreshold = " + prefetchThreshold);
+        }
+        blockAllocator.setPrefetchThreshold(prefetchThreshold);
+    }
+
+    /**
+     * 同一の採番対象IDに対する同時の採番をまとめるか否かを設定する。<br>
+     * デフォルトは{@code false}。ブロック単位で予約を行う場合は、本設定値は使用しない。<br>
+     * {@code true}を設定した場合は、採番中に同一の採番対象IDで待機している呼び出しを、次の1回の更新とコミットでまとめて採番する。
+     * 値をメモリ上に保持しないため、アプリケーションの停止時にも抜け番は発生しない。
+     *
+     * @param coalescing 同時の採番をまとめる場合は{@code true}
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * 同時の採番をまとめる際に、後続の呼び出しを待ち合わせる時間(ミリ秒)を設定する。<br>
+     * デフォルトは0で、採番中に待機している呼び出しのみをまとめる。
+     * 設定した場合は、まとめて採番する前にこの時間だけ待機し、その間の呼び出しもまとめる。
+     * 1回あたりの採番の待ち時間が増える代わりに、更新とコミットの回数が減少する。
+     *
+     * @param coalescingWindowMillis 待ち合わせる時間(ミリ秒)
+     */
+    public void setCoalescingWindowMillis(long coalescingWindowMillis) {
+        if (coalescingWindowMillis < 0) {
+            throw new IllegalArgumentException(
+                    "coalescingWindowMillis must not be negative. coalescingWindowMillis = " + coalescingWindowMillis);
+        }
+        this.coalescingWindowMillis = coalescingWindowMillis;
+    }
+
+    /**
+     * 非同期採番用のスレッド数を設定する。<br>
+     * デフォルトは4。スレッドは非同期の採番でデータベースアクセスが必要となった時点で開始され、
+     * 一定時間使用されない場合は停止する。
+     *
+     * @param asyncThreadCount 非同期採番用のスレッド数
+     */
+    public void setAsyncThreadCount(int asyncThreadCount) {
+        if (asyncThreadCount < 1) {
+            throw new IllegalArgumentException(
+                    "asyncThreadCount must be greater than 0. asyncThreadCount = " + asyncThreadCount);
+        }
+        this.asyncThreadCount = asyncThreadCount;
+    }
+
+    /**
+     * 採番テーブルの更新専用の接続を取得するファクトリを設定する。<br>
+     * 専用の接続数({@link #setDedicatedConnectionCount(int)})を設定する場合は必須。
+     *
+     * @param connectionFactory 接続を取得するファクトリ
+     */
+    public void setConnectionFactory(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * 採番テーブルの更新専用の接続数を設定する。<br>
+     * デフォルトは0(専用の接続を使用しない)。同時に採番テーブルを更新するスレッド数の上限となる。<br>
+     * 設定した場合は、自動コミットの接続を初期化時に取得して保持し、インクリメントと取得を1回で行うSQLを準備しておく。
+     * 1件(1ブロック)の採番はSQLの1回の実行のみとなり、接続プールからの取得やトランザクションの開始・終了は行わない。
+     * インクリメントと取得を1回で行うことができないデータベースでは使用できない。
+     * 複数の採番対象IDをまとめて採番する場合({@link #generateIds(Map)})は、専用の接続を使用しない。
+     *
+     * @param dedicatedConnectionCount 採番テーブルの更新専用の接続数
+     */
+    public void setDedicatedConnectionCount(int dedicatedConnectionCount) {
+        if (dedicatedConnectionCount < 0) {
+            throw new IllegalArgumentException("dedicatedConnectionCount must not be negative. dedicatedConnectionCount = "
+                    + dedicatedConnectionCount);
+        }
+        this.dedicatedConnectionCount = dedicatedConnectionCount;
+    }
+
+    /**
+     * 廃棄処理で、予約済みで未払い出しの値を採番テーブルに返却するか否かを設定する。<br>
+     * デフォルトは{@code false}(返却しない)。
+     * 返却は、予約後に他のノードが採番していない(採番テーブルの値が予約した範囲の最終値のままの)場合のみ行うため、値が重複することはない。
+     * 返却できなかった値はログに出力する。
+     *
+     * @param releaseUnusedOnDispose 返却する場合は{@code true}
+     */
+    public void setReleaseUnusedOnDispose(boolean releaseUnusedOnDispose) {
+        this.releaseUnusedOnDispose = releaseUnusedOnDispose;
+    }
+
+    /**
+     * 予約状態の記録ファイルのパスを設定する。<br>
+     * ブロック単位で予約を行う場合のみ設定できる。
+     * 設定した場合は、払い出し中のブロックの範囲と払い出し済みの最大値をメモリマップトファイルに記録し({@link ReservationJournal})、
+     * 再起動時は採番テーブルが初期化されていないことを確認したうえで、前回払い出し中だったブロックの未払い出しの値から払い出しを再開する。
+     * これにより、JVMの異常終了時にも払い出し中のブロックの未払い出しの値は破棄されない。<br>
+     * ファイルはインスタンスごとに異なるパスとすること(同一のファイルを複数のプロセスやインスタンスで使用することはできない)。
+     * 採番テーブルを分割して使用する場合は、ノード番号({@link #setNodeIndex(int)})も設定すること。
+     *
+     * @param journalPath 予約状態の記録ファイルのパス
+     */
+    public void setJournalPath(String journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * 予約状態の記録ファイルに記録できる採番対象IDの数を設定する。<br>
+     * デフォルトは1024。記録できる数を超えた採番対象IDのブロックは記録しない。
+     * 変更した場合は、既存の記録ファイルは使用できない。
+     *
+     * @param journalCapacity 記録できる採番対象IDの数
+     */
+    public void setJournalCapacity(int journalCapacity) {
+        if (journalCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "journalCapacity must be greater than 0. journalCapacity = " + journalCapacity);
+        }
+        this.journalCapacity = journalCapacity;
+    }
+
+    /**
+     * 採番対象IDを初期化時に採番テーブルから読み込むか否かを設定する。<br>
+     * デフォルトは{@code false}。{@code true}を設定した場合は、存在しない採番対象IDをデータベースにアクセスせずにエラーとする。
+     * 採番対象IDごとの予約状態は読み込み時に生成しておくため、予約状態の参照時にロックの取得も生成も行わない。
+     *
+     * @param preloadIds 採番対象IDを読み込む場合は{@code true}
+     */
+    public void setPreloadIds(boolean preloadIds) {
+        this.preloadIds = preloadIds;
+    }
+
+    /**
+     * 読み込んでいない採番対象IDが指定された場合に、採番対象IDを再読み込みする間隔(ミリ秒)を設定する。<br>
+     * デフォルトは1000ミリ秒。間隔内に指定された読み込んでいない採番対象IDは、データベースにアクセスせずにエラーとする。
+     *
+     * @param idRefreshIntervalMillis 採番対象IDを再読み込みする間隔(ミリ秒)
+     */
+    public void setIdRefreshIntervalMillis(long idRefreshIntervalMillis) {
+        if (idRefreshIntervalMillis < 0) {
+            throw new IllegalArgumentException("idRefreshIntervalMillis must not be negative. idRefreshIntervalMillis = "
+                    + idRefreshIntervalMillis);
+        }
+        this.idRefreshIntervalMillis = idRefreshIntervalMillis;
+    }
+
+    /**
+     * ウォームアップ対象の採番対象IDを設定する。<br>
+     * 設定した場合は、初期化時に採番テーブルとカラム、採番対象IDの行が存在することを検証する。
+     * ブロック単位で予約を行う場合は、あわせて最初のブロックを並行して予約し、最初の採番でブロックの予約を待たずに払い出す。
+     *
+     * @param warmUpIds ウォームアップ対象の採番対象ID
+     */
+    public void setWarmUpIds(List<String> warmUpIds) {
+        this.warmUpIds = warmUpIds;
+    }
+
+    /**
+     * 非同期採番の待ち行列の上限を設定する。<br>
+     * デフォルトは1000。上限を超えた非同期の採番は、例外で完了する。
+     *
+     * @param asyncQueueCapacity 非同期採番の待ち行列の上限
+     */
+    public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+        if (asyncQueueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "asyncQueueCapacity must be greater than 0. asyncQueueCapacity = " + asyncQueueCapacity);
+        }
+        this.asyncQueueCapacity = asyncQueueCapacity;
+    }
+
     /**
      * 初期化処理。<br>
      * 下記処理を行う。
      * <pre>
      * データベーストランザクション名の設定
      * {@link nablarch.common.idgenerator.TableIdGenerator}の初期化処理
+     * 採番対象IDの読み込み(採番対象IDを読み込む場合のみ)
+     * 採番テーブルの更新専用の接続の取得(専用の接続数が設定されている場合のみ)
+     * 先読み用スレッドの生成(ブロック単位で予約を行う場合のみ)
+     * 非同期採番用スレッドプールの生成
+     * ノードの登録(ノード番号が設定されている場合のみ)
+     * 予約状態の記録ファイルからの払い出しの再開(記録ファイルのパスが設定されている場合のみ)
+     * ウォームアップ(ウォームアップ対象の採番対象IDが設定されている場合のみ)
+     * MBeanの登録(MBeanのオブジェクト名が設定されている場合のみ)
      * </pre>
+     *
+     * @throws IllegalStateException ウォームアップ対象の採番対象IDの行が存在しない場合
      */
     public void initialize() {
 
@@ -117,9 +903,228 @@ public class FastTableIdGenerator implements IdGenerator, Initializable {
         tableIdGenerator.setTableName(this.tableName);
         tableIdGenerator.setIdColumnName(this.idColumnName);
         tableIdGenerator.setNoColumnName(this.noColumnName);
+        tableIdGenerator.setUseSingleStatement(this.useSingleStatement);
+        if (shardColumnName != null) {
+            tableIdGenerator.setShardColumnName(shardColumnName);
+        }
+        tableIdGenerator.setShardCount(shardCount);
+        if (nodeIndex >= 0) {
+            validateNodeSettings();
+            tableIdGenerator.setShardCount(clusterSize);
+            tableIdGenerator.setFixedShard(nodeIndex);
+        }
         tableIdGenerator.setDbTransactionName(
                 dbTransactionManager.getDbTransactionName());
         tableIdGenerator.initialize();
+
+        if (preloadIds) {
+            final KeyRegistry<BlockHolder> registry = new KeyRegistry<BlockHolder>(idRefreshIntervalMillis) {
+                @Override
+                List<String> loadIds() {
+                    return new SimpleDbTransactionExecutor<List<String>>(dbTransactionManager) {
+                        @Override
+                        public List<String> execute(AppDbConnection connection) {
+                            return tableIdGenerator.findIds();
+                        }
+                    }.doTransaction();
+                }
+
+                @Override
+                BlockHolder createState(String id) {
+                    return new BlockHolder();
+                }
+            };
+            registry.load();
+            keyRegistry = registry;
+            blockAllocator.setKeyRegistry(registry);
+        }
+
+        if (dedicatedConnectionCount > 0) {
+            if (connectionFactory == null) {
+                throw new IllegalStateException("connectionFactory must be set when dedicatedConnectionCount is set.");
+            }
+            dedicatedConnectionPool = new DedicatedConnectionPool(connectionFactory,
+                    dbTransactionManager.getDbTransactionName() + "-dedicated", dedicatedConnectionCount, tableIdGenerator);
+            dialectType = dedicatedConnectionPool.getDialectType();
+        }
+
+        if (blockAllocator.isBlockMode()) {
+            blockAllocator.start();
+        } else if (coalescing) {
+            coalescingGenerator = new CoalescingGenerator(rangeReserver, coalescingWindowMillis);
+        }
+
+        asyncIdExecutor = new AsyncIdExecutor(asyncThreadCount, asyncQueueCapacity);
+
+        if (nodeIndex >= 0) {
+            final NodeRegistry registry = new NodeRegistry(nodeRegistryTableName, nodeIndex,
+                    nodeName != null ? nodeName : localHostName(), clusterSize, dbTransactionManager);
+            registry.setColumnNames(nodeIndexColumnName, nodeNameColumnName, clusterSizeColumnName);
+            registry.register();
+            nodeRegistry = registry;
+        }
+
+        if (journalPath != null) {
+            if (!blockAllocator.isBlockMode()) {
+                throw new IllegalStateException("journalPath can be set only when ids are reserved in blocks.");
+            }
+            if (shardCount > 1 && nodeIndex < 0) {
+                throw new IllegalStateException("nodeIndex must be set when journalPath is set with shardCount greater than 1.");
+            }
+            blockAllocator.openJournal(journalPath, journalCapacity);
+        }
+
+        if (warmUpIds != null && !warmUpIds.isEmpty()) {
+            warmUp();
+        }
+
+        if (jmxObjectName != null) {
+            statistics = new IdGeneratorStatistics();
+            registeredObjectName = JmxSupport.register(jmxObjectName, new Monitor());
+        }
     }
-}
 
+    /**
+     * 採番テーブルの検証を行い、ブロック単位で予約を行う場合は最初のブロックを並行して予約する。
+     */
+    private void warmUp() {
+        new SimpleDbTransactionExecutor<Void>(dbTransactionManager) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                tableIdGenerator.warmUp(connection, warmUpIds);
+                return null;
+            }
+        }.doTransaction();
+
+        if (blockAllocator.isBlockMode()) {
+            blockAllocator.warmUp(warmUpIds, asyncThreadCount);
+        }
+    }
+
+    /**
+     * ノードごとに分割番号を割り当てる場合の設定を検証する。
+     */
+    private void validateNodeSettings() {
+        if (clusterSize < 1 || nodeIndex >= clusterSize) {
+            throw new IllegalStateException(String.format(
+                    "nodeIndex must be less than clusterSize. nodeIndex = %d, clusterSize = %d", nodeIndex, clusterSize));
+        }
+        if (shardColumnName == null) {
+            throw new IllegalStateException("shardColumnName must be set when nodeIndex is set.");
+        }
+        if (nodeRegistryTableName == null) {
+            throw new IllegalStateException("nodeRegistryTableName must be set when nodeIndex is set.");
+        }
+    }
+
+    /**
+     * ノード名のデフォルト値として、ホスト名を取得する。
+     *
+     * @return ホスト名
+     */
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("failed to get host name. set nodeName explicitly.", e);
+        }
+    }
+
+    /**
+     * 廃棄処理。<br>
+     * MBeanの登録を解除し、非同期採番用と先読み用のスレッドを停止し、採番テーブルの更新専用の接続を切断する。
+     * 実行中の非同期の採番や先読み中の予約がある場合は、その完了を待機する。
+     * 未払い出しの値を返却する設定の場合は、スレッドの停止後に返却する。予約状態の記録ファイルを使用している場合は、返却の後に書き出して閉じる。
+     * ノード番号を設定している場合は、最後にノードの登録を解除する。
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Override
+    public void dispose() throws InterruptedException {
+        JmxSupport.unregister(registeredObjectName);
+        registeredObjectName = null;
+        if (asyncIdExecutor != null) {
+            asyncIdExecutor.shutdown();
+        }
+        blockAllocator.shutdown();
+        if (releaseUnusedOnDispose && tableIdGenerator != null) {
+            blockAllocator.releaseUnused();
+        }
+        blockAllocator.closeJournal();
+        if (dedicatedConnectionPool != null) {
+            dedicatedConnectionPool.close();
+            dedicatedConnectionPool = null;
+        }
+        if (nodeRegistry != null) {
+            try {
+                nodeRegistry.unregister();
+            } catch (RuntimeException e) {
+                LOGGER.logWarn("failed to unregister node. node index = " + nodeIndex, e);
+            }
+            nodeRegistry = null;
+        }
+    }
+
+    /**
+     * 状態をJMXで公開するためのMBean。
+     */
+    private final class Monitor implements FastTableIdGeneratorMXBean {
+
+        @Override
+        public Map<String, IdGeneratorKeyStatistics> getKeyStatistics() {
+            return statistics.snapshot();
+        }
+
+        @Override
+        public void resetStatistics() {
+            statistics.reset();
+        }
+
+        @Override
+        public Map<String, Long> getRemainingInBlock() {
+            return blockAllocator.getRemainingInBlock();
+        }
+
+        @Override
+        public int getBlockSize() {
+            return blockAllocator.getBlockSize();
+        }
+
+        @Override
+        public void setBlockSize(int blockSize) {
+            // ブロック単位で予約を行うか否かで先読み用のスレッドの有無などが異なるため、実行中に切り替えることはできない。
+            final int current = blockAllocator.getBlockSize();
+            if (!blockAllocator.hasBlockSizePolicy() && blockSize >= 1 && (blockSize > 1) != (current > 1)) {
+                throw new IllegalArgumentException(String.format(
+                        "blockSize cannot be changed between 1 and greater than 1 at runtime. "
+                                + "current blockSize = %d, blockSize = %d", current, blockSize));
+            }
+            FastTableIdGenerator.this.setBlockSize(blockSize);
+        }
+
+        @Override
+        public int getPrefetchThreshold() {
+            return blockAllocator.getPrefetchThreshold();
+        }
+
+        @Override
+        public void setPrefetchThreshold(int prefetchThreshold) {
+            FastTableIdGenerator.this.setPrefetchThreshold(prefetchThreshold);
+        }
+    }
+
+    /**
+     * トランザクション内で実行する採番処理。
+     *
+     * @param <T> 採番結果の型
+     */
+    private interface GenerateAction<T> {
+
+        /**
+         * 採番処理を実行する。
+         *
+         * @return 採番結果
+         */
+        T generate();
+    }
+}
@@ -0,0 +1,49 @@
+package nablarch.common.idgenerator;
+
+import java.util.Map;
+
+/**
+ * {@link FastTableIdGenerator}の状態をJMXで公開し、設定を実行中に変更するためのインタフェース。
+ */
+public interface FastTableIdGeneratorMXBean extends IdGeneratorStatisticsMXBean {
+
+    /**
+     * 採番対象のIDごとの払い出し中のブロックの残数を取得する。
+     *
+     * @return 採番対象のIDごとの払い出し中のブロックの残数(IDの昇順)
+     */
+    Map<String, Long> getRemainingInBlock();
+
+    /**
+     * ブロックサイズを取得する。
+     *
+     * @return ブロックサイズ
+     */
+    int getBlockSize();
+
+    /**
+     * ブロックサイズを変更する。<br>
+     * 変更後のブロックサイズは、次に予約するブロックから適用される。
+     * ブロックサイズの決定方法が設定されている場合は、本設定値は使用されない。<br>
+     * ブロック単位で予約を行うか否かは初期化時に決まるため、ブロックサイズの決定方法が設定されていない場合は、
+     * 1と2以上の間で変更することはできない。
+     *
+     * @param blockSize ブロックサイズ
+     * @throws IllegalArgumentException ブロックサイズを1と2以上の間で変更した場合
+     */
+    void setBlockSize(int blockSize);
+
+    /**
+     * 先読みを開始する残数の閾値を取得する。
+     *
+     * @return 先読みを開始する残数の閾値
+     */
+    int getPrefetchThreshold();
+
+    /**
+     * 先読みを開始する残数の閾値を変更する。
+     *
+     * @param prefetchThreshold 先読みを開始する残数の閾値
+     */
+    void setPrefetchThreshold(int prefetchThreshold);
+}
@@ -0,0 +1,102 @@
+package nablarch.common.idgenerator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 予約済みの採番範囲をメモリ上で払い出すクラス。<br>
+ * <br>
+ * 払い出し位置の更新は{@link AtomicLong}のみで行うため、複数スレッドから同時に呼び出された場合でもロックは発生しない。
+ */
+class IdBlock {
+
+    /** 範囲内の値が全て払い出し済みであることを示す値 */
+    static final long EXHAUSTED = Long.MIN_VALUE;
+
+    /** 範囲の先頭値 */
+    private final long first;
+
+    /** 範囲の最終値 */
+    private final long last;
+
+    /** 増分 */
+    private final long step;
+
+    /** 範囲に含まれる値の数 */
+    private final long size;
+
+    /** 次に払い出す値の位置(先頭値からの増分の数) */
+    private final AtomicLong next;
+
+    /**
+     * 予約済みの範囲を元にブロックを生成する。
+     *
+     * @param range 予約済みの範囲
+     */
+    IdBlock(IdRange range) {
+        this.first = range.getStart();
+        this.last = range.getEnd();
+        this.step = range.getStep();
+        this.size = range.size();
+        this.next = new AtomicLong();
+    }
+
+    /**
+     * 範囲内の次の値を払い出す。
+     *
+     * @return 払い出した値。範囲内の値が全て払い出し済みの場合は{@link #EXHAUSTED}
+     */
+    long next() {
+        final long index = next.getAndIncrement();
+        return index < size ? first + index * step : EXHAUSTED;
+    }
+
+    /**
+     * 未払い出しの値の数を返却する。
+     *
+     * @return 未払い出しの値の数
+     */
+    long remaining() {
+        return Math.max(size - next.get(), 0L);
+    }
+
+    /**
+     * ブロックを閉じ、未払い出しの範囲を返却する。<br>
+     * 閉じた後は、他のスレッドから呼び出された場合も含めて値を払い出さない。
+     *
+     * @return 未払い出しの範囲。全て払い出し済みの場合は{@code null}
+     */
+    IdRange close() {
+        final long index = next.getAndSet(size);
+        if (index >= size) {
+            return null;
+        }
+        return new IdRange(first + index * step, last, step);
+    }
+
+    /**
+     * 範囲の先頭値を返却する。
+     *
+     * @return 範囲の先頭値
+     */
+    long getFirst() {
+        return first;
+    }
+
+    /**
+     * 範囲の増分を返却する。
+     *
+     * @return 増分
+     */
+    long getStep() {
+        return step;
+    }
+
+    /**
+     * 範囲の最終値を返却する。
+     *
+     * @return 範囲の最終値
+     */
+    long getLast() {
+        return last;
+    }
+}
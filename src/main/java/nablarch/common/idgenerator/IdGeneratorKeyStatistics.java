@@ -0,0 +1,150 @@
+package nablarch.common.idgenerator;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * 採番対象のIDごとの採番処理の統計情報。<br>
+ * <br>
+ * JMXでは、{@link IdGeneratorStatisticsMXBean#getKeyStatistics()}の要素として公開される。
+ */
+public final class IdGeneratorKeyStatistics {
+
+    /** 呼び出し回数 */
+    private final long callCount;
+
+    /** 秒間呼び出し回数 */
+    private final double callsPerSecond;
+
+    /** データベースとの往復回数 */
+    private final long roundTripCount;
+
+    /** コミット回数 */
+    private final long commitCount;
+
+    /** 平均処理時間(マイクロ秒) */
+    private final double meanLatencyMicros;
+
+    /** 99パーセンタイル処理時間(マイクロ秒) */
+    private final double p99LatencyMicros;
+
+    /** 再試行回数 */
+    private final long retryCount;
+
+    /** 失敗回数 */
+    private final long failureCount;
+
+    /**
+     * 統計情報を生成する。
+     *
+     * @param callCount 呼び出し回数
+     * @param callsPerSecond 秒間呼び出し回数
+     * @param roundTripCount データベースとの往復回数
+     * @param commitCount コミット回数
+     * @param meanLatencyMicros 平均処理時間(マイクロ秒)
+     * @param p99LatencyMicros 99パーセンタイル処理時間(マイクロ秒)
+     * @param retryCount 再試行回数
+     * @param failureCount 失敗回数
+     */
+    public IdGeneratorKeyStatistics(long callCount, double callsPerSecond, long roundTripCount, long commitCount,
+            double meanLatencyMicros, double p99LatencyMicros, long retryCount, long failureCount) {
+        this.callCount = callCount;
+        this.callsPerSecond = callsPerSecond;
+        this.roundTripCount = roundTripCount;
+        this.commitCount = commitCount;
+        this.meanLatencyMicros = meanLatencyMicros;
+        this.p99LatencyMicros = p99LatencyMicros;
+        this.retryCount = retryCount;
+        this.failureCount = failureCount;
+    }
+
+    /**
+     * JMXの複合データから統計情報を復元する。<br>
+     * MXBeanのプロキシから統計情報を参照する場合に使用される。
+     *
+     * @param data 複合データ
+     * @return 統計情報
+     */
+    public static IdGeneratorKeyStatistics from(CompositeData data) {
+        return new IdGeneratorKeyStatistics(
+                (Long) data.get("callCount"),
+                (Double) data.get("callsPerSecond"),
+                (Long) data.get("roundTripCount"),
+                (Long) data.get("commitCount"),
+                (Double) data.get("meanLatencyMicros"),
+                (Double) data.get("p99LatencyMicros"),
+                (Long) data.get("retryCount"),
+                (Long) data.get("failureCount"));
+    }
+
+    /**
+     * 呼び出し回数を取得する。
+     *
+     * @return 呼び出し回数
+     */
+    public long getCallCount() {
+        return callCount;
+    }
+
+    /**
+     * 秒間呼び出し回数(前回の取得時からの平均)を取得する。
+     *
+     * @return 秒間呼び出し回数
+     */
+    public double getCallsPerSecond() {
+        return callsPerSecond;
+    }
+
+    /**
+     * データベースとの往復回数(コミットを含む)を取得する。
+     *
+     * @return データベースとの往復回数
+     */
+    public long getRoundTripCount() {
+        return roundTripCount;
+    }
+
+    /**
+     * コミット回数を取得する。
+     *
+     * @return コミット回数
+     */
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * 平均処理時間(マイクロ秒)を取得する。
+     *
+     * @return 平均処理時間(マイクロ秒)
+     */
+    public double getMeanLatencyMicros() {
+        return meanLatencyMicros;
+    }
+
+    /**
+     * 99パーセンタイル処理時間(マイクロ秒)を取得する。
+     *
+     * @return 99パーセンタイル処理時間(マイクロ秒)
+     */
+    public double getP99LatencyMicros() {
+        return p99LatencyMicros;
+    }
+
+    /**
+     * 再試行回数を取得する。
+     *
+     * @return 再試行回数
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * 失敗回数を取得する。
+     *
+     * @return 失敗回数
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+}
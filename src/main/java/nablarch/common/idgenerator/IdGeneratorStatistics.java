@@ -0,0 +1,222 @@
+package nablarch.common.idgenerator;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 採番処理の統計情報を採番対象のIDごとに収集するクラス。<br>
+ * <br>
+ * 統計情報の記録はアトミック変数のみで行い、ロックは取得しない。
+ * 処理時間は、2の累乗ごとに4分割した区間の度数分布で保持し、パーセンタイルは区間の上限値で近似する。
+ */
+class IdGeneratorStatistics {
+
+    /** 2の累乗あたりの区間の分割数(2のビット数) */
+    private static final int SUB_BUCKET_BITS = 2;
+
+    /** 度数分布の区間数 */
+    private static final int BUCKET_COUNT = 64 << SUB_BUCKET_BITS;
+
+    /** 採番対象のIDごとの統計情報 */
+    private final ConcurrentMap<String, KeyStatistics> keyStatistics = new ConcurrentHashMap<String, KeyStatistics>();
+
+    /**
+     * 採番処理の呼び出しを記録する。
+     *
+     * @param id 採番対象を識別するID
+     * @param elapsedNanos 処理時間(ナノ秒)
+     * @param succeeded 採番に成功した場合は{@code true}
+     */
+    void recordCall(String id, long elapsedNanos, boolean succeeded) {
+        final KeyStatistics stats = get(id);
+        stats.calls.incrementAndGet();
+        stats.totalNanos.addAndGet(elapsedNanos);
+        stats.latencies.incrementAndGet(bucketOf(elapsedNanos));
+        if (!succeeded) {
+            stats.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * データベースへのアクセスを記録する。
+     *
+     * @param id 採番対象を識別するID
+     * @param roundTrips データベースとの往復回数
+     * @param commits コミット回数
+     */
+    void recordDatabaseAccess(String id, int roundTrips, int commits) {
+        final KeyStatistics stats = get(id);
+        stats.roundTrips.addAndGet(roundTrips);
+        stats.commits.addAndGet(commits);
+    }
+
+    /**
+     * 再試行を記録する。
+     *
+     * @param id 採番対象を識別するID
+     */
+    void recordRetry(String id) {
+        get(id).retries.incrementAndGet();
+    }
+
+    /**
+     * 統計情報の現在値を取得する。<br>
+     * 秒間呼び出し回数は、前回の取得時からの呼び出し回数を元に算出する。
+     *
+     * @return 採番対象のIDごとの統計情報の現在値(IDの昇順)
+     */
+    Map<String, IdGeneratorKeyStatistics> snapshot() {
+        final long now = System.nanoTime();
+        final Map<String, IdGeneratorKeyStatistics> result = new TreeMap<String, IdGeneratorKeyStatistics>();
+        for (Map.Entry<String, KeyStatistics> entry : keyStatistics.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot(now));
+        }
+        return result;
+    }
+
+    /**
+     * 統計情報を初期化する。
+     */
+    void reset() {
+        keyStatistics.clear();
+    }
+
+    /**
+     * 採番対象のIDに対応する統計情報を取得する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 統計情報
+     */
+    private KeyStatistics get(String id) {
+        KeyStatistics stats = keyStatistics.get(id);
+        if (stats == null) {
+            final KeyStatistics newStats = new KeyStatistics();
+            stats = keyStatistics.putIfAbsent(id, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 処理時間に対応する度数分布の区間を求める。
+     *
+     * @param nanos 処理時間(ナノ秒)
+     * @return 区間の番号
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < (1L << SUB_BUCKET_BITS)) {
+            return (int) Math.max(nanos, 0L);
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        final int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * 度数分布の区間の上限値を求める。
+     *
+     * @param bucket 区間の番号
+     * @return 区間の上限値(ナノ秒)
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return bucket;
+        }
+        final int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+
+    /**
+     * 採番対象のIDごとの統計情報。
+     */
+    private static final class KeyStatistics {
+
+        /** 呼び出し回数 */
+        private final AtomicLong calls = new AtomicLong();
+
+        /** 処理時間の合計(ナノ秒) */
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        /** 処理時間の度数分布 */
+        private final AtomicLongArray latencies = new AtomicLongArray(BUCKET_COUNT);
+
+        /** データベースとの往復回数 */
+        private final AtomicLong roundTrips = new AtomicLong();
+
+        /** コミット回数 */
+        private final AtomicLong commits = new AtomicLong();
+
+        /** 再試行回数 */
+        private final AtomicLong retries = new AtomicLong();
+
+        /** 失敗回数 */
+        private final AtomicLong failures = new AtomicLong();
+
+        /** 前回取得時の呼び出し回数 */
+        private long lastCalls;
+
+        /** 前回取得時の時刻(ナノ秒) */
+        private long lastSnapshotNanos = System.nanoTime();
+
+        /**
+         * 統計情報の現在値を取得する。
+         *
+         * @param now 現在時刻(ナノ秒)
+         * @return 統計情報の現在値
+         */
+        private IdGeneratorKeyStatistics snapshot(long now) {
+            final long callCount = calls.get();
+            final double callsPerSecond;
+            synchronized (this) {
+                final long elapsed = now - lastSnapshotNanos;
+                callsPerSecond = elapsed <= 0 ? 0D : (callCount - lastCalls) * 1e9D / elapsed;
+                lastCalls = callCount;
+                lastSnapshotNanos = now;
+            }
+            return new IdGeneratorKeyStatistics(
+                    callCount,
+                    callsPerSecond,
+                    roundTrips.get(),
+                    commits.get(),
+                    callCount == 0 ? 0D : totalNanos.get() / 1000D / callCount,
+                    percentileMicros(0.99D),
+                    retries.get(),
+                    failures.get());
+        }
+
+        /**
+         * 処理時間のパーセンタイル値を度数分布から求める。
+         *
+         * @param percentile パーセンタイル(0より大きく1以下)
+         * @return パーセンタイル値(マイクロ秒)
+         */
+        private double percentileMicros(double percentile) {
+            final long[] counts = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = latencies.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0D;
+            }
+            final long threshold = (long) Math.ceil(total * percentile);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                cumulative += counts[i];
+                if (cumulative >= threshold) {
+                    return upperBoundOf(i) / 1000D;
+                }
+            }
+            return upperBoundOf(BUCKET_COUNT - 1) / 1000D;
+        }
+    }
+}
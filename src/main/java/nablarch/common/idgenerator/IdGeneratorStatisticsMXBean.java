@@ -0,0 +1,21 @@
+package nablarch.common.idgenerator;
+
+import java.util.Map;
+
+/**
+ * 採番クラスの統計情報をJMXで公開するためのインタフェース。
+ */
+public interface IdGeneratorStatisticsMXBean {
+
+    /**
+     * 採番対象のIDごとの統計情報を取得する。
+     *
+     * @return 採番対象のIDごとの統計情報(IDの昇順)
+     */
+    Map<String, IdGeneratorKeyStatistics> getKeyStatistics();
+
+    /**
+     * 統計情報を初期化する。
+     */
+    void resetStatistics();
+}
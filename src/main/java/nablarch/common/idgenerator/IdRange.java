@@ -0,0 +1,124 @@
+package nablarch.common.idgenerator;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 採番した値の範囲を表すクラス。<br>
+ * <br>
+ * 先頭値から最終値までの値(両端を含む)のうち、先頭値から増分ごとの値が採番済みの値となる。
+ * 増分は通常は1で、連続する値となる。採番テーブルを分割して使用する場合は分割数が増分となる。
+ */
+@Published
+public final class IdRange {
+
+    /** 範囲の先頭値 */
+    private final long start;
+
+    /** 範囲の最終値 */
+    private final long end;
+
+    /** 増分 */
+    private final long step;
+
+    /**
+     * 連続する値の範囲を生成する。
+     *
+     * @param start 範囲の先頭値
+     * @param end 範囲の最終値
+     */
+    public IdRange(long start, long end) {
+        this(start, end, 1L);
+    }
+
+    /**
+     * 先頭値から増分ごとの値の範囲を生成する。
+     *
+     * @param start 範囲の先頭値
+     * @param end 範囲の最終値
+     * @param step 増分
+     */
+    public IdRange(long start, long end, long step) {
+        if (start > end) {
+            throw new IllegalArgumentException(
+                    String.format("invalid range. start = %d, end = %d", start, end));
+        }
+        if (step < 1 || (end - start) % step != 0) {
+            throw new IllegalArgumentException(
+                    String.format("invalid step. start = %d, end = %d, step = %d", start, end, step));
+        }
+        this.start = start;
+        this.end = end;
+        this.step = step;
+    }
+
+    /**
+     * 範囲の先頭値を返却する。
+     *
+     * @return 範囲の先頭値
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * 範囲の最終値を返却する。
+     *
+     * @return 範囲の最終値
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * 増分を返却する。
+     *
+     * @return 増分
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * 範囲に含まれる値の数を返却する。
+     *
+     * @return 範囲に含まれる値の数
+     */
+    public long size() {
+        return (end - start) / step + 1;
+    }
+
+    /**
+     * 指定された値が範囲に含まれるか否か。
+     *
+     * @param value 値
+     * @return 範囲に含まれる場合は{@code true}
+     */
+    public boolean contains(long value) {
+        return start <= value && value <= end && (value - start) % step == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IdRange)) {
+            return false;
+        }
+        final IdRange other = (IdRange) o;
+        return start == other.start && end == other.end && step == other.step;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((int) (start ^ (start >>> 32)) * 31 + (int) (end ^ (end >>> 32))) * 31 + (int) (step ^ (step >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        if (step == 1L) {
+            return "IdRange{start=" + start + ", end=" + end + '}';
+        }
+        return "IdRange{start=" + start + ", end=" + end + ", step=" + step + '}';
+    }
+}
@@ -0,0 +1,32 @@
+package nablarch.common.idgenerator;
+
+import java.util.Map;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 連続する複数の値をまとめて採番するインタフェース。
+ */
+@Published
+public interface IdRangeGenerator {
+
+    /**
+     * 引数で指定された採番対象ID内でユニークな連続する値を、指定された数だけまとめて採番する。
+     *
+     * @param id 採番対象を識別するID
+     * @param count 採番する数(1以上)
+     * @return 採番した値の範囲
+     */
+    IdRange generateIds(String id, int count);
+
+    /**
+     * 複数の採番対象IDについて、それぞれ指定された数だけ連続する値をまとめて採番する。<br>
+     * <br>
+     * 全ての採番対象IDの採番を1つのトランザクション内で行う。
+     * デッドロックを防ぐため、採番対象IDの昇順にロックを取得する。
+     *
+     * @param counts 採番対象を識別するIDと採番する数(1以上)
+     * @return 採番対象を識別するIDと採番した値の範囲(IDの昇順)
+     */
+    Map<String, IdRange> generateIds(Map<String, Integer> counts);
+}
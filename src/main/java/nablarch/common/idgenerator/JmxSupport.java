@@ -0,0 +1,62 @@
+package nablarch.common.idgenerator;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+
+/**
+ * 採番クラスの状態を公開するMBeanの登録・登録解除を行うユーティリティクラス。
+ */
+final class JmxSupport {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(JmxSupport.class);
+
+    /**
+     * 隠蔽コンストラクタ。
+     */
+    private JmxSupport() {
+    }
+
+    /**
+     * MBeanをプラットフォームMBeanサーバに登録する。
+     *
+     * @param objectName MBeanのオブジェクト名
+     * @param mbean MBean
+     * @return 登録したオブジェクト名
+     */
+    static ObjectName register(String objectName, Object mbean) {
+        try {
+            final ObjectName name = new ObjectName(objectName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register MBean. object name = " + objectName, e);
+        }
+    }
+
+    /**
+     * MBeanの登録を解除する。<br>
+     * 登録解除に失敗した場合は、ワーニングログを出力する。
+     *
+     * @param name 登録したオブジェクト名({@code null}の場合は何もしない)
+     */
+    static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.logWarn("failed to unregister MBean. object name = " + name, e);
+        }
+    }
+}
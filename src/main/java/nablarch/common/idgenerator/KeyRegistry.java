@@ -0,0 +1,230 @@
+package nablarch.common.idgenerator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 採番テーブルに存在する採番対象IDと、採番対象IDごとの状態を保持するクラス。<br>
+ * <br>
+ * 採番対象IDは{@link #load()}で読み込み、読み込み順に0からの連続した番号を割り当てる。
+ * {@link #load()}の前に参照した場合は、最初の参照時に読み込む。
+ * 採番対象IDごとの状態は番号を添字とする配列で保持するため、参照時はロックの取得も状態の生成も行わない。<br>
+ * <br>
+ * 存在しない採番対象IDを参照した場合は、前回の読み込みから再読み込みの間隔以上経過していれば1スレッドのみが再読み込みを行う。
+ * 間隔内の参照や、他のスレッドが再読み込み中の参照は、データベースにアクセスせずに存在しないものとして扱う。
+ * これにより、存在しない採番対象IDが繰り返し指定された場合でも、データベースへのアクセスは間隔ごとに1回となる。
+ * 再読み込み時は、読み込み済みの採番対象IDの状態を引き継ぐ。
+ * 参照時の読み込みに失敗した場合は、採番処理の失敗として例外を送出する。
+ *
+ * @param <T> 採番対象IDごとの状態の型
+ */
+abstract class KeyRegistry<T> {
+
+    /** 再読み込みの間隔(ナノ秒) */
+    private final long refreshIntervalNanos;
+
+    /** 再読み込みを直列化するためのロック */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /** 読み込み済みの採番対象IDと状態(未読み込みの場合はnull) */
+    private volatile Snapshot<T> snapshot;
+
+    /**
+     * コンストラクタ。
+     *
+     * @param refreshIntervalMillis 存在しない採番対象IDを参照した場合の再読み込みの間隔(ミリ秒)
+     */
+    KeyRegistry(long refreshIntervalMillis) {
+        if (refreshIntervalMillis < 0) {
+            throw new IllegalArgumentException(
+                    "refreshIntervalMillis must not be negative. refreshIntervalMillis = " + refreshIntervalMillis);
+        }
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMillis);
+    }
+
+    /**
+     * 採番対象IDを読み込む。<br>
+     * 読み込み済みの採番対象IDの状態は引き継ぎ、新たな採番対象IDの状態は{@link #createState(String)}で生成する。
+     */
+    void load() {
+        refreshLock.lock();
+        try {
+            reload();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * 採番対象IDの状態を返却する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 状態。存在しない採番対象IDの場合は{@code null}
+     * @throws RuntimeException 採番対象IDの読み込みに失敗した場合
+     */
+    T get(String id) {
+        Snapshot<T> current = snapshot;
+        Integer index = current == null ? null : current.indexes.get(id);
+        if (index == null) {
+            current = refreshOnMiss(id, current);
+            index = current.indexes.get(id);
+            if (index == null) {
+                return null;
+            }
+        }
+        return current.states[index];
+    }
+
+    /**
+     * 読み込み済みの採番対象IDの状態を返却する。<br>
+     * 存在しない採番対象IDを参照した場合でも、再読み込みは行わない。
+     *
+     * @param id 採番対象を識別するID
+     * @return 状態。読み込み済みでない採番対象IDの場合は{@code null}
+     */
+    T peek(String id) {
+        final Snapshot<T> current = snapshot;
+        final Integer index = current == null ? null : current.indexes.get(id);
+        return index == null ? null : current.states[index];
+    }
+
+    /**
+     * 全ての採番対象IDと状態を、番号の順に返却する。
+     *
+     * @return 採番対象IDと状態
+     */
+    Map<String, T> states() {
+        final Snapshot<T> current = snapshot;
+        final Map<String, T> result = new LinkedHashMap<String, T>();
+        if (current == null) {
+            return result;
+        }
+        for (int i = 0; i < current.ids.length; i++) {
+            result.put(current.ids[i], current.states[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 存在しない採番対象IDを参照した場合に、再読み込みの間隔以上経過していれば再読み込みを行う。<br>
+     * 他のスレッドが再読み込み中の場合は、その完了を待たずに現在の採番対象IDを返却する。
+     * 未読み込みの場合は、他のスレッドの読み込みの完了を待機して読み込む。
+     *
+     * @param id 参照した採番対象ID
+     * @param current 参照した採番対象ID(未読み込みの場合は{@code null})
+     * @return 最新の採番対象ID
+     */
+    private Snapshot<T> refreshOnMiss(String id, Snapshot<T> current) {
+        if (current == null) {
+            refreshLock.lock();
+        } else if (System.nanoTime() - current.loadedNanos < refreshIntervalNanos || !refreshLock.tryLock()) {
+            return snapshot;
+        }
+        try {
+            // ロック取得前に他のスレッドが再読み込み済みの場合は、再読み込みしない。
+            if (snapshot == current) {
+                reloadOnMiss(id);
+            }
+            return snapshot;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * 参照時に採番対象IDを読み込む。<br>
+     * 読み込みに失敗した場合は、採番処理の失敗として例外を送出する。
+     *
+     * @param id 参照した採番対象ID
+     */
+    private void reloadOnMiss(String id) {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            throw new RuntimeException("failed in generation of id. id = " + id, e);
+        }
+    }
+
+    /**
+     * 採番対象IDを読み込み、状態を引き継いだ新たな採番対象IDに置き換える。
+     */
+    @SuppressWarnings("unchecked")
+    private void reload() {
+        final List<String> ids = loadIds();
+        final Snapshot<T> previous = snapshot;
+        final Map<String, Integer> indexes = new HashMap<String, Integer>(ids.size() * 2);
+        String[] keys = new String[ids.size()];
+        T[] states = (T[]) new Object[ids.size()];
+        int size = 0;
+        for (String id : ids) {
+            if (indexes.containsKey(id)) {
+                continue;
+            }
+            final Integer previousIndex = previous == null ? null : previous.indexes.get(id);
+            indexes.put(id, size);
+            keys[size] = id;
+            states[size] = previousIndex == null ? createState(id) : previous.states[previousIndex];
+            size++;
+        }
+        if (size < keys.length) {
+            keys = Arrays.copyOf(keys, size);
+            states = Arrays.copyOf(states, size);
+        }
+        snapshot = new Snapshot<T>(indexes, keys, states, System.nanoTime());
+    }
+
+    /**
+     * 採番テーブルに存在する採番対象IDを読み込む。
+     *
+     * @return 採番対象ID
+     */
+    abstract List<String> loadIds();
+
+    /**
+     * 採番対象IDの状態を生成する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 状態
+     */
+    abstract T createState(String id);
+
+    /**
+     * ある時点で読み込んだ採番対象IDと状態。
+     *
+     * @param <T> 採番対象IDごとの状態の型
+     */
+    private static final class Snapshot<T> {
+
+        /** 採番対象IDごとの番号 */
+        private final Map<String, Integer> indexes;
+
+        /** 番号ごとの採番対象ID */
+        private final String[] ids;
+
+        /** 番号ごとの状態 */
+        private final T[] states;
+
+        /** 読み込んだ時刻(ナノ秒) */
+        private final long loadedNanos;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param indexes 採番対象IDごとの番号
+         * @param ids 番号ごとの採番対象ID
+         * @param states 番号ごとの状態
+         * @param loadedNanos 読み込んだ時刻(ナノ秒)
+         */
+        private Snapshot(Map<String, Integer> indexes, String[] ids, T[] states, long loadedNanos) {
+            this.indexes = indexes;
+            this.ids = ids;
+            this.states = states;
+            this.loadedNanos = loadedNanos;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package nablarch.common.idgenerator;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 採番した値を数値({@code long})で返却するインタフェース。<br>
+ * <br>
+ * 採番した値を数値型のカラムに格納する場合など、文字列への変換が不要な場合に使用する。
+ */
+@Published
+public interface LongIdGenerator {
+
+    /**
+     * 引数で指定された採番対象ID内でユニークな値を採番する。
+     *
+     * @param id 採番対象を識別するID
+     * @return 採番対象ID内でユニークな採番結果の値
+     */
+    long generateLongId(String id);
+}
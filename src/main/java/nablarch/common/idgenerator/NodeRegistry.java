@@ -0,0 +1,157 @@
+package nablarch.common.idgenerator;
+
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.statement.SqlPStatement;
+import nablarch.core.db.statement.SqlRow;
+import nablarch.core.db.statement.exception.DuplicateStatementException;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+
+/**
+ * ノード登録テーブルを使用して、クラスタ内でノード番号が重複していないことを保証するクラス。<br>
+ * <br>
+ * ノード登録テーブルは、下記のカラムを持つこと。
+ * (カラム名は{@link #setColumnNames(String, String, String)}で変更できる。)
+ * <pre>
+ * NODE_INDEX   数値型(主キー)  ノード番号
+ * NODE_NAME    文字列型        ノード名
+ * CLUSTER_SIZE 数値型          クラスタのノード数
+ * </pre>
+ * 同一のノード番号が同一のノード名で登録済みの場合は、ノードの再起動とみなして登録を引き継ぐ。
+ */
+class NodeRegistry {
+
+    /** ノード登録テーブル物理名 */
+    private final String tableName;
+
+    /** ノード番号 */
+    private final int nodeIndex;
+
+    /** ノード名 */
+    private final String nodeName;
+
+    /** クラスタのノード数 */
+    private final int clusterSize;
+
+    /** 登録に使用するトランザクションマネージャ */
+    private final SimpleDbTransactionManager transactionManager;
+
+    /** ノード番号カラム物理名 */
+    private String nodeIndexColumnName = "NODE_INDEX";
+
+    /** ノード名カラム物理名 */
+    private String nodeNameColumnName = "NODE_NAME";
+
+    /** クラスタのノード数カラム物理名 */
+    private String clusterSizeColumnName = "CLUSTER_SIZE";
+
+    /**
+     * コンストラクタ。
+     *
+     * @param tableName ノード登録テーブル物理名
+     * @param nodeIndex ノード番号
+     * @param nodeName ノード名
+     * @param clusterSize クラスタのノード数
+     * @param transactionManager 登録に使用するトランザクションマネージャ
+     */
+    NodeRegistry(String tableName, int nodeIndex, String nodeName, int clusterSize,
+            SimpleDbTransactionManager transactionManager) {
+        this.tableName = tableName;
+        this.nodeIndex = nodeIndex;
+        this.nodeName = nodeName;
+        this.clusterSize = clusterSize;
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * カラム物理名を設定する。
+     *
+     * @param nodeIndexColumnName ノード番号カラム物理名
+     * @param nodeNameColumnName ノード名カラム物理名
+     * @param clusterSizeColumnName クラスタのノード数カラム物理名
+     */
+    void setColumnNames(String nodeIndexColumnName, String nodeNameColumnName, String clusterSizeColumnName) {
+        this.nodeIndexColumnName = nodeIndexColumnName;
+        this.nodeNameColumnName = nodeNameColumnName;
+        this.clusterSizeColumnName = clusterSizeColumnName;
+    }
+
+    /**
+     * ノードを登録する。
+     *
+     * @throws IllegalStateException ノード番号が他のノードで使用されている場合、登録済みのノードとクラスタのノード数が異なる場合
+     */
+    void register() {
+        new SimpleDbTransactionExecutor<Void>(transactionManager) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                boolean registered = false;
+                final SqlPStatement select = connection.prepareStatement(
+                        "SELECT " + nodeIndexColumnName + ", " + nodeNameColumnName + ", " + clusterSizeColumnName
+                                + " FROM " + tableName);
+                for (SqlRow row : select.retrieve()) {
+                    final int index = row.getInteger(nodeIndexColumnName);
+                    final String name = row.getString(nodeNameColumnName).trim();
+                    if (row.getInteger(clusterSizeColumnName) != clusterSize) {
+                        throw new IllegalStateException(String.format(
+                                "cluster size does not match the registered node. "
+                                        + "cluster size = %d, registered node index = %d, registered cluster size = %d",
+                                clusterSize, index, row.getInteger(clusterSizeColumnName)));
+                    }
+                    if (index == nodeIndex) {
+                        if (!name.equals(nodeName)) {
+                            throw alreadyInUse(name);
+                        }
+                        registered = true;
+                    }
+                }
+                if (registered) {
+                    return null;
+                }
+                final SqlPStatement insert = connection.prepareStatement(
+                        "INSERT INTO " + tableName + " (" + nodeIndexColumnName + ", " + nodeNameColumnName + ", "
+                                + clusterSizeColumnName + ") VALUES (?, ?, ?)");
+                insert.setInt(1, nodeIndex);
+                insert.setString(2, nodeName);
+                insert.setInt(3, clusterSize);
+                try {
+                    insert.executeUpdate();
+                } catch (DuplicateStatementException e) {
+                    // 他のノードが同時に同一のノード番号を登録した場合
+                    throw alreadyInUse(null);
+                }
+                return null;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * ノードの登録を解除する。
+     */
+    void unregister() {
+        new SimpleDbTransactionExecutor<Void>(transactionManager) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                final SqlPStatement delete = connection.prepareStatement(
+                        "DELETE FROM " + tableName + " WHERE " + nodeIndexColumnName + " = ? AND "
+                                + nodeNameColumnName + " = ?");
+                delete.setInt(1, nodeIndex);
+                delete.setString(2, nodeName);
+                delete.executeUpdate();
+                return null;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * ノード番号が他のノードで使用されていることを表す例外を生成する。
+     *
+     * @param registeredName 登録済みのノード名(不明な場合は{@code null})
+     * @return 例外
+     */
+    private IllegalStateException alreadyInUse(String registeredName) {
+        return new IllegalStateException(String.format(
+                "node index is already in use. node index = %d, node name = %s, registered node name = %s",
+                nodeIndex, nodeName, registeredName));
+    }
+}
@@ -0,0 +1,36 @@
+package nablarch.common.idgenerator;
+
+import java.util.Map;
+
+/**
+ * 採番テーブルの値の予約と返却を行うインタフェース。<br>
+ * 予約した値をメモリ上から払い出すクラスが、採番テーブルへのアクセスを委譲するために使用する。
+ */
+interface RangeReserver {
+
+    /**
+     * 採番テーブルの値を指定された数だけ進め、予約した範囲をコミットする。
+     *
+     * @param id 採番対象を識別するID
+     * @param count 予約する数
+     * @return 予約した範囲
+     */
+    IdRange reserve(String id, int count);
+
+    /**
+     * 未払い出しの範囲を採番テーブルに返却する。
+     *
+     * @param id 採番対象を識別するID
+     * @param unused 未払い出しの範囲
+     * @return 返却した場合は{@code true}。予約後に採番テーブルが更新されていた場合は{@code false}
+     */
+    boolean release(String id, IdRange unused);
+
+    /**
+     * 範囲が予約済み(採番テーブルが範囲の最終値以上)であるかを、採番対象IDごとに判定する。
+     *
+     * @param ranges 採番対象IDごとの範囲
+     * @return 採番対象IDごとの判定結果。予約済みの場合は{@code true}
+     */
+    Map<String, Boolean> isReserved(Map<String, IdRange> ranges);
+}
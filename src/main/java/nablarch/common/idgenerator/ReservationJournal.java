@@ -0,0 +1,316 @@
+package nablarch.common.idgenerator;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 採番対象IDごとに、払い出し中のブロックの範囲と払い出し済みの最大値をメモリマップトファイルに記録するクラス。<br>
+ * <br>
+ * ファイルは採番対象IDごとの固定長の領域(スロット)で構成し、ブロックの切り替え時に範囲を、払い出しの度に払い出し済みの最大値を書き込む。
+ * 書き込みはメモリへの書き込みのみで、払い出しごとのファイルへの同期(fsync)は行わない。
+ * このため、JVMが異常終了した場合でも書き込んだ内容はOSのページキャッシュに残るが、OSの異常終了では失われる可能性がある。<br>
+ * <br>
+ * 範囲の書き込みは、払い出し済みの最大値を無効値にしてから範囲を書き込み、最後に払い出し済みの最大値を書き込む順序とする。
+ * 払い出し済みの最大値の書き込みはリリースセマンティクスで行うため、書き込み途中で異常終了した場合でも、
+ * 有効な払い出し済みの最大値が記録されているスロットの範囲は完全に書き込まれている。<br>
+ * <br>
+ * 1つのファイルを複数のプロセスやインスタンスで同時に使用すると値が重複するため、ファイルは排他ロックを取得して使用する。
+ */
+class ReservationJournal {
+
+    /** ファイルの識別子 */
+    private static final int MAGIC = 0x4E424A31;
+
+    /** ファイル形式のバージョン */
+    private static final int VERSION = 1;
+
+    /** ヘッダの長さ */
+    private static final int HEADER_SIZE = 64;
+
+    /** ヘッダ内のスロット数の位置 */
+    private static final int HEADER_CAPACITY = 8;
+
+    /** スロットの長さ */
+    private static final int SLOT_SIZE = 128;
+
+    /** スロット内の採番対象IDの長さの位置(0の場合は未使用のスロット) */
+    private static final int KEY_LENGTH = 0;
+
+    /** スロット内の採番対象IDの位置 */
+    private static final int KEY = 8;
+
+    /** 採番対象IDの最大長(バイト) */
+    static final int MAX_KEY_BYTES = 64;
+
+    /** スロット内の範囲の先頭値の位置 */
+    private static final int START = 72;
+
+    /** スロット内の範囲の最終値の位置 */
+    private static final int END = 80;
+
+    /** スロット内の範囲の増分の位置 */
+    private static final int STEP = 88;
+
+    /** スロット内の払い出し済みの最大値の位置 */
+    private static final int HIGH_WATER = 96;
+
+    /** 範囲の書き込み中であることを示す払い出し済みの最大値 */
+    private static final long WRITING = Long.MIN_VALUE;
+
+    /** {@code long}値の読み書きに使用するハンドル */
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    /** {@code int}値の読み書きに使用するハンドル */
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    /** ファイルのパス */
+    private final Path path;
+
+    /** スロット数 */
+    private final int capacity;
+
+    /** ファイルのチャネル */
+    private final FileChannel channel;
+
+    /** ファイルの排他ロック */
+    private final FileLock fileLock;
+
+    /** マップしたファイルの内容 */
+    private final MappedByteBuffer buffer;
+
+    /** スロットの割り当てを直列化するためのロック */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** 採番対象IDごとのスロット番号 */
+    private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+    /** 次に割り当てるスロット番号 */
+    private int nextSlot;
+
+    /**
+     * ファイルを開き、排他ロックを取得してメモリにマップする。<br>
+     * ファイルが存在しない場合は作成する。
+     *
+     * @param path ファイルのパス
+     * @param capacity スロット数(記録できる採番対象IDの数)
+     * @throws IllegalStateException ファイルを開くことができない場合、他で使用中の場合、形式が異なる場合
+     */
+    ReservationJournal(String path, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than 0. capacity = " + capacity);
+        }
+        this.path = Paths.get(path);
+        this.capacity = capacity;
+        FileChannel openedChannel = null;
+        FileLock acquiredLock = null;
+        MappedByteBuffer mapped;
+        try {
+            openedChannel = FileChannel.open(this.path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            acquiredLock = openedChannel.tryLock();
+            if (acquiredLock == null) {
+                throw new IllegalStateException("journal file is used by another process. path = " + path);
+            }
+            final boolean created = openedChannel.size() == 0;
+            mapped = openedChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) SLOT_SIZE * capacity);
+            if (created) {
+                INT.set(mapped, HEADER_CAPACITY, capacity);
+                INT.set(mapped, 4, VERSION);
+                INT.setRelease(mapped, 0, MAGIC);
+            } else if ((int) INT.get(mapped, 0) != MAGIC || (int) INT.get(mapped, 4) != VERSION
+                    || (int) INT.get(mapped, HEADER_CAPACITY) != capacity) {
+                throw new IllegalStateException(String.format(
+                        "journal file is incompatible. path = %s, capacity = %d", path, capacity));
+            }
+        } catch (IOException e) {
+            closeQuietly(openedChannel);
+            throw new IllegalStateException("failed to open journal file. path = " + path, e);
+        } catch (OverlappingFileLockException e) {
+            closeQuietly(openedChannel);
+            throw new IllegalStateException("journal file is used by another process. path = " + path, e);
+        } catch (RuntimeException e) {
+            closeQuietly(openedChannel);
+            throw e;
+        }
+        channel = openedChannel;
+        fileLock = acquiredLock;
+        buffer = mapped;
+        loadSlots();
+    }
+
+    /**
+     * 使用中のスロットを読み込む。
+     */
+    private void loadSlots() {
+        for (int slot = 0; slot < capacity; slot++) {
+            final int keyLength = (int) INT.getAcquire(buffer, offset(slot) + KEY_LENGTH);
+            if (keyLength == 0) {
+                break;
+            }
+            final byte[] key = new byte[keyLength];
+            for (int i = 0; i < keyLength; i++) {
+                key[i] = buffer.get(offset(slot) + KEY + i);
+            }
+            slots.put(new String(key, StandardCharsets.UTF_8), slot);
+            nextSlot = slot + 1;
+        }
+    }
+
+    /**
+     * 記録されている範囲のうち、未払い出しの範囲を採番対象IDごとに返却する。
+     *
+     * @return 採番対象IDごとの未払い出しの範囲
+     */
+    Map<String, IdRange> unusedRanges() {
+        lock.lock();
+        try {
+            final Map<String, IdRange> result = new LinkedHashMap<String, IdRange>();
+            for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+                final int offset = offset(entry.getValue());
+                final long highWater = (long) LONG.getAcquire(buffer, offset + HIGH_WATER);
+                if (highWater == WRITING) {
+                    continue;
+                }
+                final long end = (long) LONG.get(buffer, offset + END);
+                final long step = (long) LONG.get(buffer, offset + STEP);
+                if (highWater < end) {
+                    result.put(entry.getKey(), new IdRange(highWater + step, end, step));
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 採番対象IDのスロット番号を返却する。<br>
+     * スロットが割り当てられていない場合は割り当てる。
+     *
+     * @param id 採番対象を識別するID
+     * @return スロット番号。空きスロットが無い場合、採番対象IDが長すぎる場合は-1
+     */
+    int slotOf(String id) {
+        lock.lock();
+        try {
+            final Integer existing = slots.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            final byte[] key = id.getBytes(StandardCharsets.UTF_8);
+            if (nextSlot >= capacity || key.length == 0 || key.length > MAX_KEY_BYTES) {
+                return -1;
+            }
+            final int slot = nextSlot++;
+            final int offset = offset(slot);
+            LONG.set(buffer, offset + HIGH_WATER, WRITING);
+            for (int i = 0; i < key.length; i++) {
+                buffer.put(offset + KEY + i, key[i]);
+            }
+            INT.setRelease(buffer, offset + KEY_LENGTH, key.length);
+            slots.put(id, slot);
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 払い出しを開始するブロックの範囲を記録する。<br>
+     * 払い出し済みの最大値は、範囲の先頭値の直前とする。
+     *
+     * @param slot スロット番号
+     * @param range ブロックの範囲
+     */
+    void record(int slot, IdRange range) {
+        final int offset = offset(slot);
+        LONG.setRelease(buffer, offset + HIGH_WATER, WRITING);
+        LONG.set(buffer, offset + START, range.getStart());
+        LONG.set(buffer, offset + END, range.getEnd());
+        LONG.set(buffer, offset + STEP, range.getStep());
+        LONG.setRelease(buffer, offset + HIGH_WATER, range.getStart() - range.getStep());
+    }
+
+    /**
+     * 払い出した値を記録する。<br>
+     * 記録済みの払い出し済みの最大値より大きい場合のみ更新する。
+     *
+     * @param slot スロット番号
+     * @param value 払い出した値
+     */
+    void issued(int slot, long value) {
+        final int offset = offset(slot) + HIGH_WATER;
+        long current = (long) LONG.getAcquire(buffer, offset);
+        while (current < value && current != WRITING) {
+            final long witness = (long) LONG.compareAndExchangeRelease(buffer, offset, current, value);
+            if (witness == current) {
+                return;
+            }
+            current = witness;
+        }
+    }
+
+    /**
+     * スロットの範囲を全て払い出し済みとする。
+     *
+     * @param slot スロット番号
+     */
+    void clear(int slot) {
+        final int offset = offset(slot);
+        LONG.setRelease(buffer, offset + HIGH_WATER, (long) LONG.get(buffer, offset + END));
+    }
+
+    /**
+     * 内容をファイルに書き出し、排他ロックを解放してファイルを閉じる。
+     */
+    void close() {
+        try {
+            buffer.force();
+            fileLock.release();
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to close journal file. path = " + path, e);
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * スロットの位置を返却する。
+     *
+     * @param slot スロット番号
+     * @return スロットの位置
+     */
+    private static int offset(int slot) {
+        return HEADER_SIZE + SLOT_SIZE * slot;
+    }
+
+    /**
+     * チャネルを閉じる。閉じる際の例外は無視する。
+     *
+     * @param channel チャネル(nullの場合は何もしない)
+     */
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 既に失敗しているため、閉じる際の例外は無視する。
+        }
+    }
+}
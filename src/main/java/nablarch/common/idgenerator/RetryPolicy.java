@@ -0,0 +1,117 @@
+package nablarch.common.idgenerator;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 採番処理でデッドロックやロックタイムアウトが発生した場合の再試行方針を定義するクラス。<br>
+ * <br>
+ * 再試行の対象となる例外は、データベース製品ごとに定義されたSQLSTATE・ベンダーエラーコードで判定する。
+ * 再試行の前には、再試行回数に応じて指数関数的に増加する待機時間の範囲内でランダムに待機する(ジッター付き指数バックオフ)。
+ * これにより、同じ行で競合した複数の呼び出しが同時に再試行して再度競合することを防ぐ。<br>
+ * 最初の試行からの経過時間が再試行の制限時間({@link #setMaxRetryTimeMillis(long)})を超える場合は、再試行を行わない。
+ */
+public class RetryPolicy {
+
+    /** 再試行の制限時間(ミリ秒) */
+    private long maxRetryTimeMillis = 5000L;
+
+    /** 初回の再試行前の最大待機時間(ミリ秒) */
+    private long initialBackoffMillis = 10L;
+
+    /** 再試行前の最大待機時間の上限(ミリ秒) */
+    private long maxBackoffMillis = 1000L;
+
+    /** データベース製品ごとの定義に加えて再試行の対象とするSQLSTATE */
+    private Set<String> additionalSqlStates = Collections.emptySet();
+
+    /**
+     * 再試行前に待機する時間を決定する。
+     *
+     * @param dialectType データベース製品
+     * @param e 発生した例外
+     * @param retryCount これまでの再試行回数
+     * @param elapsedMillis 最初の試行からの経過時間(ミリ秒)
+     * @return 待機する時間(ミリ秒)。再試行を行わない場合は-1
+     */
+    long nextBackoffMillis(DialectType dialectType, Throwable e, int retryCount, long elapsedMillis) {
+        if (!isRetryable(dialectType, e)) {
+            return -1L;
+        }
+        final long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(retryCount, 30));
+        final long backoff = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (elapsedMillis + backoff > maxRetryTimeMillis) {
+            return -1L;
+        }
+        return backoff;
+    }
+
+    /**
+     * 再試行により成功する可能性がある例外か否か。<br>
+     * 例外の原因を辿り、{@link SQLException}(連鎖した例外を含む)のSQLSTATE・ベンダーエラーコードで判定する。
+     *
+     * @param dialectType データベース製品
+     * @param e 発生した例外
+     * @return 再試行により成功する可能性がある場合は{@code true}
+     */
+    boolean isRetryable(DialectType dialectType, Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof SQLException) {
+                for (SQLException sqle = (SQLException) cause; sqle != null; sqle = sqle.getNextException()) {
+                    if (dialectType.isRetryable(sqle)
+                            || (sqle.getSQLState() != null && additionalSqlStates.contains(sqle.getSQLState()))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 再試行の制限時間(ミリ秒)を設定する。<br>
+     * デフォルトは5000ミリ秒。
+     *
+     * @param maxRetryTimeMillis 再試行の制限時間(ミリ秒)
+     */
+    public void setMaxRetryTimeMillis(long maxRetryTimeMillis) {
+        this.maxRetryTimeMillis = maxRetryTimeMillis;
+    }
+
+    /**
+     * 初回の再試行前の最大待機時間(ミリ秒)を設定する。<br>
+     * 再試行のたびに倍になる。デフォルトは10ミリ秒。
+     *
+     * @param initialBackoffMillis 初回の再試行前の最大待機時間(ミリ秒)
+     */
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        if (initialBackoffMillis < 1) {
+            throw new IllegalArgumentException(
+                    "initialBackoffMillis must be greater than 0. initialBackoffMillis = " + initialBackoffMillis);
+        }
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * 再試行前の最大待機時間の上限(ミリ秒)を設定する。<br>
+     * デフォルトは1000ミリ秒。
+     *
+     * @param maxBackoffMillis 再試行前の最大待機時間の上限(ミリ秒)
+     */
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * データベース製品ごとの定義に加えて再試行の対象とするSQLSTATEを設定する。
+     *
+     * @param additionalSqlStates 再試行の対象とするSQLSTATE
+     */
+    public void setAdditionalSqlStates(List<String> additionalSqlStates) {
+        this.additionalSqlStates = new HashSet<String>(additionalSqlStates);
+    }
+}
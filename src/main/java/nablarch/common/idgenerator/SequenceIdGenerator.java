@@ -1,19 +1,50 @@
 package nablarch.common.idgenerator;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.ObjectName;
+
 import nablarch.core.db.connection.DbConnectionContext;
 import nablarch.core.db.connection.TransactionManagerConnection;
+import nablarch.core.db.dialect.Dialect;
 import nablarch.core.db.statement.ResultSetIterator;
 import nablarch.core.db.statement.SqlPStatement;
 import nablarch.core.log.Logger;
 import nablarch.core.log.LoggerManager;
+import nablarch.core.repository.disposal.Disposable;
+import nablarch.core.repository.initialization.Initializable;
 import nablarch.core.transaction.TransactionContext;
 
 /**
- * データベースのシーケンスオブジェクトを用いて一意の値を採番するクラス。
+ * データベースのシーケンスオブジェクトを用いて一意の値を採番するクラス。<br>
+ * <br>
+ * 増分({@code INCREMENT BY})に2以上を指定したシーケンスをプール対象({@link #setPooledSequenceNames(List)})に設定した場合は、
+ * 1回のシーケンス取得で得た値から増分の数だけの値({@code 取得した値}～{@code 取得した値 + 増分 - 1})をメモリ上に保持し、
+ * 使い切るまでデータベースにアクセスせずに払い出す。
+ * 払い出しはロックを取得せずに行い、次の値の取得時のみシーケンスごとのロックを取得する。
+ * 増分は設定値ではなく、シーケンスの初回の取得時にデータベースのカタログから読み込むため、
+ * シーケンスの定義と異なる増分で払い出して値が重複することはない。
+ * ただし、同一のシーケンスを使用する全てのアプリケーションで、プール対象として採番すること。
+ * また、払い出していない値はアプリケーションの停止時に破棄されるため、抜け番が発生する。<br>
+ * <br>
+ * シーケンス取得用のSQLは、ダイアレクトとシーケンスオブジェクト名ごとに上限件数({@link #setSqlCacheSize(int)})までキャッシュする。
+ * キャッシュしたSQLは同一の文字列となるため、コネクションファクトリでステートメントの再利用(statementReuse)を有効にすると、
+ * コネクションごとに準備済みのステートメントが再利用される。<br>
+ * <br>
+ * MBeanのオブジェクト名({@link #setJmxObjectName(String)})を設定した場合は、シーケンスごとの統計情報をJMXで公開する。
+ * この場合は、リポジトリの機能を用いて初期化・廃棄を行うよう、コンポーネント設定ファイルに設定を行うこと。
  *
  * @author hisaaki sioiri
  */
-public class SequenceIdGenerator implements IdGenerator {
+public class SequenceIdGenerator implements IdGenerator, LongIdGenerator, Initializable, Disposable {
 
     /** データベースリソース名 */
     private String dbTransactionName = TransactionContext.DEFAULT_TRANSACTION_CONTEXT_KEY;
@@ -21,6 +52,27 @@ public class SequenceIdGenerator implements IdGenerator {
     /** ロガー */
     private static final Logger LOGGER = LoggerManager.get(SequenceIdGenerator.class);
 
+    /** MBeanのオブジェクト名(nullの場合はMBeanを登録しない) */
+    private String jmxObjectName;
+
+    /** 登録したMBeanのオブジェクト名 */
+    private ObjectName registeredObjectName;
+
+    /** 統計情報(MBeanを登録しない場合はnull) */
+    private IdGeneratorStatistics statistics;
+
+    /** プール対象のシーケンスオブジェクト名 */
+    private Set<String> pooledSequenceNames = Collections.emptySet();
+
+    /** シーケンスオブジェクト名ごとのプール */
+    private final ConcurrentMap<String, SequencePool> pools = new ConcurrentHashMap<String, SequencePool>();
+
+    /** ダイアレクトごとのシーケンス取得用SQLのキャッシュ件数の上限 */
+    private int sqlCacheSize = 1000;
+
+    /** ダイアレクトごとのシーケンス取得用SQLのキャッシュ */
+    private final ConcurrentMap<Dialect, SqlCache> sqlCaches = new ConcurrentHashMap<Dialect, SqlCache>();
+
     /**
      * シーケンスオブジェクトを用いて一意の値を採番する。
      *
@@ -40,23 +92,233 @@ public class SequenceIdGenerator implements IdGenerator {
      */
     @Override
     public String generateId(String sequenceName, IdFormatter formatter) {
+        final String id = String.valueOf(generateLongId(sequenceName));
+        if (formatter == null) {
+            return id;
+        }
+        return formatter.format(sequenceName, id);
+    }
+
+    /**
+     * シーケンスオブジェクトを用いて一意の値を採番する。
+     *
+     * @param sequenceName 採番対象を識別するID(シーケンスオブジェクト名)
+     * @return シーケンスを元に採番した一意の値
+     */
+    @Override
+    public long generateLongId(String sequenceName) {
+        final IdGeneratorStatistics stats = statistics;
+        if (stats == null) {
+            return pooledSequenceNames.contains(sequenceName) ? nextPooledValue(sequenceName) : nextValue(sequenceName);
+        }
+        final long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            final long no;
+            if (pooledSequenceNames.contains(sequenceName)) {
+                no = nextPooledValue(sequenceName);
+            } else {
+                no = nextValue(sequenceName);
+                stats.recordDatabaseAccess(sequenceName, 1, 0);
+            }
+            succeeded = true;
+            return no;
+        } finally {
+            stats.recordCall(sequenceName, System.nanoTime() - start, succeeded);
+        }
+    }
+
+    /**
+     * シーケンスオブジェクトを用いて、指定された数の一意の値をまとめて採番する。<br>
+     * データベース製品ごとの行生成の構文を使用して、1回のSQLでシーケンスから値を取得する。
+     * 1回で取得できないデータベースの場合は、1件ずつシーケンスから取得する。
+     * プール対象のシーケンスの場合は、プールから払い出す。
+     *
+     * @param sequenceName 採番対象を識別するID(シーケンスオブジェクト名)
+     * @param count 採番する数
+     * @return 昇順に並べた採番結果の値
+     * @throws IllegalArgumentException 採番する数が1未満の場合
+     */
+    public long[] generateLongIds(String sequenceName, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be greater than 0. count = " + count);
+        }
+        final IdGeneratorStatistics stats = statistics;
+        final long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            final long[] values = new long[count];
+            if (pooledSequenceNames.contains(sequenceName)) {
+                for (int i = 0; i < count; i++) {
+                    values[i] = nextPooledValue(sequenceName);
+                }
+            } else {
+                final int roundTrips = nextValues(sequenceName, values);
+                if (stats != null) {
+                    stats.recordDatabaseAccess(sequenceName, roundTrips, 0);
+                }
+            }
+            Arrays.sort(values);
+            succeeded = true;
+            return values;
+        } finally {
+            if (stats != null) {
+                stats.recordCall(sequenceName, System.nanoTime() - start, succeeded);
+            }
+        }
+    }
+
+    /**
+     * シーケンスオブジェクトから配列の要素数分の値を取得する。
+     *
+     * @param sequenceName シーケンスオブジェクト名
+     * @param values 取得した値を格納する配列
+     * @return データベースとの往復回数
+     */
+    private int nextValues(String sequenceName, long[] values) {
+        final TransactionManagerConnection connection =
+                DbConnectionContext.getTransactionManagerConnection(dbTransactionName);
+        final String sql = DialectType.of(connection.getDialect()).buildSequenceBulkSql(sequenceName);
+        if (sql == null) {
+            // シーケンスの構文が不明なデータベースでは1回で取得できないため、値ごとに取得する。(DialectType#OTHERを参照)
+            for (int i = 0; i < values.length; i++) {
+                values[i] = nextValue(sequenceName);
+            }
+            return values.length;
+        }
+
+        final SqlPStatement statement = connection.prepareStatement(sql);
+        statement.setInt(1, values.length);
+        final ResultSetIterator rs = statement.executeQuery();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                if (!rs.next()) {
+                    throw new SequenceGeneratorFailedException(sequenceName);
+                }
+                values[i] = rs.getLong(1);
+            }
+        } finally {
+            try {
+                rs.close();
+            } catch (RuntimeException e) {
+                LOGGER.logWarn("failed to ResultSetIterator#close", e);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * プール対象のシーケンスオブジェクトの値を払い出す。<br>
+     * プールに値が残っていない場合は、シーケンスから次の値を取得してプールを入れ替える。
+     *
+     * @param sequenceName シーケンスオブジェクト名
+     * @return 払い出した値
+     */
+    private long nextPooledValue(String sequenceName) {
+        SequencePool pool = pools.get(sequenceName);
+        if (pool == null) {
+            final SequencePool created = new SequencePool();
+            pool = pools.putIfAbsent(sequenceName, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        final IdBlock block = pool.block;
+        if (block != null) {
+            final long value = block.next();
+            if (value != IdBlock.EXHAUSTED) {
+                return value;
+            }
+        }
+
+        pool.lock.lock();
+        try {
+            // ロック待ちの間に他のスレッドがプールを入れ替えている場合は、入れ替え後のプールから払い出す。
+            final IdBlock current = pool.block;
+            if (current != null && current != block) {
+                final long value = current.next();
+                if (value != IdBlock.EXHAUSTED) {
+                    return value;
+                }
+            }
+            final IdGeneratorStatistics stats = statistics;
+            if (pool.increment == 0L) {
+                pool.increment = readIncrement(sequenceName);
+                if (stats != null) {
+                    stats.recordDatabaseAccess(sequenceName, 1, 0);
+                }
+            }
+            final long start = nextValue(sequenceName);
+            if (stats != null) {
+                stats.recordDatabaseAccess(sequenceName, 1, 0);
+            }
+            final IdBlock next = new IdBlock(new IdRange(start, start + pool.increment - 1L));
+            final long value = next.next();
+            pool.block = next;
+            return value;
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    /**
+     * シーケンスオブジェクトの増分をデータベースのカタログから読み込む。
+     *
+     * @param sequenceName シーケンスオブジェクト名
+     * @return 増分
+     * @throws IllegalStateException 増分を読み込めない場合、増分が1未満の場合
+     */
+    private long readIncrement(String sequenceName) {
+        final TransactionManagerConnection connection =
+                DbConnectionContext.getTransactionManagerConnection(dbTransactionName);
+        final String sql = DialectType.of(connection.getDialect()).buildSequenceIncrementSql();
+        if (sql == null) {
+            throw new IllegalStateException("sequence pooling is not supported by the dialect. dialect = "
+                    + connection.getDialect().getClass().getName());
+        }
+        final SqlPStatement statement = connection.prepareStatement(sql);
+        statement.setString(1, sequenceName.substring(sequenceName.lastIndexOf('.') + 1));
+        final ResultSetIterator rs = statement.executeQuery();
+        final long increment;
+        try {
+            if (!rs.next()) {
+                throw new IllegalStateException("sequence was not found in the catalog. sequence name = " + sequenceName);
+            }
+            increment = rs.getLong(1);
+        } finally {
+            try {
+                rs.close();
+            } catch (RuntimeException e) {
+                LOGGER.logWarn("failed to ResultSetIterator#close", e);
+            }
+        }
+        if (increment < 1L) {
+            throw new IllegalStateException(String.format(
+                    "increment of the pooled sequence must be greater than 0. sequence name = %s, increment = %d",
+                    sequenceName, increment));
+        }
+        return increment;
+    }
+
+    /**
+     * シーケンスオブジェクトから次の値を取得する。
+     *
+     * @param sequenceName シーケンスオブジェクト名
+     * @return シーケンスの次の値
+     */
+    private long nextValue(String sequenceName) {
         final TransactionManagerConnection connection =
         		DbConnectionContext.getTransactionManagerConnection(dbTransactionName);
 
         final SqlPStatement statement = connection.prepareStatement(
-                connection.getDialect()
-                        .buildSequenceGeneratorSql(sequenceName));
+                sequenceGeneratorSql(connection.getDialect(), sequenceName));
 
         final ResultSetIterator rs = statement.executeQuery();
         if (!rs.next()) {
             throw new SequenceGeneratorFailedException(sequenceName);
         }
         try {
-            final String id = String.valueOf(rs.getLong(1));
-            if (formatter == null) {
-                return id;
-            }
-            return formatter.format(sequenceName, id);
+            return rs.getLong(1);
         } finally {
             try {
                 rs.close();
@@ -66,6 +328,31 @@ public class SequenceIdGenerator implements IdGenerator {
         }
     }
 
+    /**
+     * シーケンス取得用のSQLをキャッシュから取得する。<br>
+     * キャッシュに存在しない場合は、ダイアレクトで生成してキャッシュする。
+     *
+     * @param dialect ダイアレクト
+     * @param sequenceName シーケンスオブジェクト名
+     * @return シーケンス取得用のSQL
+     */
+    private String sequenceGeneratorSql(final Dialect dialect, String sequenceName) {
+        SqlCache cache = sqlCaches.get(dialect);
+        if (cache == null) {
+            final SqlCache created = new SqlCache(sqlCacheSize) {
+                @Override
+                String createSql(String name) {
+                    return dialect.buildSequenceGeneratorSql(name);
+                }
+            };
+            cache = sqlCaches.putIfAbsent(dialect, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache.get(sequenceName);
+    }
+
     /**
      * トランザクション名を設定する。
      *
@@ -75,6 +362,95 @@ public class SequenceIdGenerator implements IdGenerator {
         this.dbTransactionName = dbTransactionName;
     }
 
+    /**
+     * シーケンス取得用のSQLのキャッシュ件数の上限を設定する。<br>
+     * デフォルトは1000。上限を超えた場合は、最近使用されていないSQLから破棄する。
+     * テナントごとにシーケンスを作成する場合など、シーケンスの数が多い場合は大きくすること。
+     *
+     * @param sqlCacheSize キャッシュ件数の上限
+     */
+    public void setSqlCacheSize(int sqlCacheSize) {
+        if (sqlCacheSize < 1) {
+            throw new IllegalArgumentException("sqlCacheSize must be greater than 0. sqlCacheSize = " + sqlCacheSize);
+        }
+        this.sqlCacheSize = sqlCacheSize;
+    }
+
+    /**
+     * プール対象のシーケンスオブジェクト名を設定する。<br>
+     * 設定したシーケンスは、1回のシーケンス取得で増分の数だけの値を払い出す。
+     * シーケンスは増分に2以上を指定して作成すること(例:{@code CREATE SEQUENCE SEQ1 INCREMENT BY 100})。
+     *
+     * @param pooledSequenceNames プール対象のシーケンスオブジェクト名
+     */
+    public void setPooledSequenceNames(List<String> pooledSequenceNames) {
+        this.pooledSequenceNames = new HashSet<String>(pooledSequenceNames);
+    }
+
+    /**
+     * MBeanのオブジェクト名を設定する。<br>
+     * 設定した場合は、初期化処理でプラットフォームMBeanサーバにMBeanを登録し、廃棄処理で登録を解除する。
+     * 設定しない場合は、MBeanの登録と統計情報の収集は行わない。
+     *
+     * @param jmxObjectName MBeanのオブジェクト名(例:{@code nablarch:type=SequenceIdGenerator,name=default})
+     */
+    public void setJmxObjectName(String jmxObjectName) {
+        this.jmxObjectName = jmxObjectName;
+    }
+
+    /**
+     * 初期化処理を行う。<br>
+     * MBeanのオブジェクト名が設定されている場合は、MBeanを登録する。
+     */
+    @Override
+    public void initialize() {
+        if (jmxObjectName != null) {
+            statistics = new IdGeneratorStatistics();
+            registeredObjectName = JmxSupport.register(jmxObjectName, new Monitor());
+        }
+    }
+
+    /**
+     * 廃棄処理を行う。<br>
+     * 登録したMBeanの登録を解除する。
+     */
+    @Override
+    public void dispose() {
+        JmxSupport.unregister(registeredObjectName);
+        registeredObjectName = null;
+    }
+
+    /**
+     * プール対象のシーケンスオブジェクトごとの払い出し状態。
+     */
+    private static final class SequencePool {
+
+        /** シーケンスから次の値を取得する際のロック */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** 払い出し中の値(未取得の場合はnull) */
+        private volatile IdBlock block;
+
+        /** 増分(未読み込みの場合は0。ロックを取得して参照・更新する) */
+        private long increment;
+    }
+
+    /**
+     * 状態をJMXで公開するためのMBean。
+     */
+    private final class Monitor implements IdGeneratorStatisticsMXBean {
+
+        @Override
+        public Map<String, IdGeneratorKeyStatistics> getKeyStatistics() {
+            return statistics.snapshot();
+        }
+
+        @Override
+        public void resetStatistics() {
+            statistics.reset();
+        }
+    }
+
     /**
      * シーケンス採番に失敗したことを示す例外クラス。
      */
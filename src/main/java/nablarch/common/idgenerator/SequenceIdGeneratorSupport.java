@@ -1,7 +1,6 @@
 package nablarch.common.idgenerator;
 
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import nablarch.core.db.connection.AppDbConnection;
 import nablarch.core.db.connection.DbConnectionContext;
@@ -27,8 +26,15 @@ public abstract class SequenceIdGeneratorSupport implements IdGenerator {
     private Map<String, String> idTable;
     /** データベースリソース名 */
     private String dbTransactionName = TransactionContext.DEFAULT_TRANSACTION_CONTEXT_KEY;
+    /** SQLキャッシュ件数の上限 */
+    private static final int SQL_CACHE_SIZE = 1000;
     /** SQLキャッシュ */
-    private final Map<String, String> sqlCache = new ConcurrentHashMap<String, String>();
+    private final SqlCache sqlCache = new SqlCache(SQL_CACHE_SIZE) {
+        @Override
+        String createSql(String sequenceName) {
+            return SequenceIdGeneratorSupport.this.createSql(sequenceName);
+        }
+    };
 
     /**
      * コンストラクタ。
@@ -116,25 +122,13 @@ public abstract class SequenceIdGeneratorSupport implements IdGenerator {
      * SQL文を取得する。<br>
      * パラメータで指定されたシーケンス名に対応するSQLがキャッシュに存在する場合は、
      * キャッシュからSQL文を取得し、存在しない場合はSQL文を生成して返却する。
+     * キャッシュは上限件数を超えた場合に、最近使用されていないSQL文から破棄する。
      *
      * @param sequenceName シーケンス名
      * @return シーケンス名に対応するSQL文
      */
     private String getSql(String sequenceName) {
-        String sql = sqlCache.get(sequenceName);
-        if (sql != null) {
-            return sql;
-        }
-
-        synchronized (sqlCache) {
-            sql = sqlCache.get(sequenceName);
-            if (sql != null) {
-                return sql;
-            }
-            sql = createSql(sequenceName);
-            sqlCache.put(sequenceName, sql);
-        }
-        return sql;
+        return sqlCache.get(sequenceName);
     }
 
     /**
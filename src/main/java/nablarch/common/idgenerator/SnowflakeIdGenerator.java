@@ -0,0 +1,501 @@
+package nablarch.common.idgenerator;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.repository.disposal.Disposable;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.transaction.TransactionContext;
+
+/**
+ * 時刻、ワーカーID、シーケンス番号からIDを生成するクラス。<br>
+ * <br>
+ * 生成する値は、下記のビットを連結した64ビットの正の数値となる。
+ * <pre>
+ * 時刻       41ビット  基準時刻({@link #setEpochMillis(long)})からの経過ミリ秒
+ * ワーカーID 10ビット  0～1023
+ * シーケンス 12ビット  同一ミリ秒内の連番(0～4095)
+ * </pre>
+ * 採番時にデータベースへアクセスしないため、採番テーブルやシーケンスを使用する採番と比べて高速に採番できる。
+ * 採番対象を識別するIDは使用せず、全ての採番対象で一意な値を払い出す。
+ * 同一インスタンスから払い出した値は単調増加するが、連番とはならない。<br>
+ * <br>
+ * ワーカーIDは、初期化時にワーカーID貸出テーブル({@link #setLeaseTableName(String)})から借り、
+ * 貸出の有効期限({@link #setLeaseDurationMillis(long)})を延長間隔({@link #setHeartbeatIntervalMillis(long)})ごとに延長する。
+ * 貸出テーブルの構成は{@link WorkerIdLeaseTable}を参照。
+ * 延長できないまま有効期限を過ぎた場合は、他のノードにワーカーIDが引き継がれる可能性があるため、採番時に例外を送出する。
+ * 他のノードに引き継がれていた場合は、新たなワーカーIDを借り直す。
+ * 廃棄処理ではワーカーIDの貸出テーブルに最後に払い出した時刻を記録し、ワーカーIDを引き継いだインスタンスは
+ * その時刻を過ぎるまで払い出さない。これにより、再起動をまたいで時刻が戻った場合にも値は重複しない。<br>
+ * <br>
+ * システム時刻が戻った場合は、戻った幅が許容値({@link #setMaxClockBackwardMillis(long)})以内であれば、
+ * 最後に払い出した時刻のままシーケンスを進め、シーケンスを使い切った場合はシステム時刻が追いつくまで待機する。
+ * 許容値を超えて戻った場合は、値が重複する可能性があるため例外を送出する。
+ * 有効期限の判定は各ノードの時刻で行うため、ノード間の時刻のずれもこの許容値以内となるよう時刻を同期しておくこと。<br>
+ * <br>
+ * 最後に払い出した時刻とシーケンスは1つの{@link AtomicLong}にまとめて保持し、CASで更新する。
+ * このため、採番処理ではロックの取得もオブジェクトの生成も行わない({@link #generateLongId(String)}の場合)。<br>
+ * <br>
+ * また、本クラスはリポジトリの機能を用いて初期化することを想定しているので、コンポーネント設定ファイルに初期化の設定を行うこと。
+ * 延長用のスレッドの停止とワーカーIDの返却を行うため、コンポーネント設定ファイルに廃棄処理の設定も行うこと。
+ */
+public class SnowflakeIdGenerator implements IdGenerator, LongIdGenerator, Initializable, Disposable {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(SnowflakeIdGenerator.class);
+
+    /** ワーカーIDのビット数 */
+    static final int WORKER_ID_BITS = 10;
+
+    /** シーケンスのビット数 */
+    static final int SEQUENCE_BITS = 12;
+
+    /** 時刻のビット数 */
+    static final int TIMESTAMP_BITS = Long.SIZE - 1 - WORKER_ID_BITS - SEQUENCE_BITS;
+
+    /** ワーカーIDの最大値 */
+    static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+
+    /** シーケンスの最大値 */
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    /** 基準時刻からの経過ミリ秒の上限 */
+    private static final long MAX_TIMESTAMP = (1L << TIMESTAMP_BITS) - 1;
+
+    /** シーケンスを使い切った場合に、システム時刻が進むのを待機する間隔(ナノ秒) */
+    private static final long WAIT_NANOS = 100000L;
+
+    /** 延長用スレッドの停止を待機する時間(ミリ秒) */
+    private static final long TERMINATION_TIMEOUT_MILLIS = 10000L;
+
+    /** 基準時刻(エポックミリ秒)。デフォルトは2020-01-01T00:00:00Z */
+    private long epochMillis = 1577836800000L;
+
+    /** ワーカーID貸出テーブル物理名 */
+    private String leaseTableName;
+
+    /** ワーカーID貸出テーブルのワーカーIDカラム物理名 */
+    private String workerIdColumnName = "WORKER_ID";
+
+    /** ワーカーID貸出テーブルの貸出先カラム物理名 */
+    private String ownerColumnName = "OWNER";
+
+    /** ワーカーID貸出テーブルの有効期限カラム物理名 */
+    private String expiresAtColumnName = "EXPIRES_AT";
+
+    /** 貸出の有効期間(ミリ秒) */
+    private long leaseDurationMillis = 30000L;
+
+    /** 貸出の延長間隔(ミリ秒) */
+    private long heartbeatIntervalMillis = 10000L;
+
+    /** システム時刻が戻った場合の許容値(ミリ秒) */
+    private long maxClockBackwardMillis = 1000L;
+
+    /** ノード名 */
+    private String nodeName;
+
+    /** トランザクションマネージャ */
+    private SimpleDbTransactionManager dbTransactionManager;
+
+    /** 最後に払い出した時刻(基準時刻からの経過ミリ秒)とシーケンス */
+    private final AtomicLong state = new AtomicLong();
+
+    /** 借りているワーカーID(借りていない場合はnull) */
+    private volatile Lease lease;
+
+    /** ワーカーID貸出テーブル */
+    private WorkerIdLeaseTable leaseTable;
+
+    /** 延長用スレッド */
+    private ScheduledExecutorService heartbeatExecutor;
+
+    /**
+     * {@inheritDoc}<br>
+     * 採番対象を識別するIDは使用しない。
+     */
+    @Override
+    public String generateId(String id) {
+        return generateId(id, null);
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 採番対象を識別するIDは使用しない。
+     */
+    @Override
+    public String generateId(String id, IdFormatter formatter) {
+        final long value = generateLongId(id);
+        if (formatter == null) {
+            return String.valueOf(value);
+        }
+        return formatter.format(id, String.valueOf(value));
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * 採番対象を識別するIDは使用しない。
+     *
+     * @throws IllegalStateException ワーカーIDの貸出の有効期限を過ぎている場合、許容値を超えてシステム時刻が戻った場合
+     */
+    @Override
+    public long generateLongId(String id) {
+        while (true) {
+            final Lease current = lease;
+            final long now = currentTimeMillis();
+            if (current == null || now >= current.validUntil) {
+                throw new IllegalStateException("worker id lease has expired. lease table = " + leaseTableName
+                        + (current == null ? "" : ", worker id = " + current.workerId));
+            }
+            final long timestamp = now - epochMillis;
+            if (timestamp < 0L || timestamp > MAX_TIMESTAMP) {
+                throw new IllegalStateException("current time is out of range. epochMillis = " + epochMillis
+                        + ", current time = " + now);
+            }
+
+            final long last = state.get();
+            final long lastTimestamp = last >>> SEQUENCE_BITS;
+            final long next;
+            if (timestamp > lastTimestamp) {
+                next = timestamp << SEQUENCE_BITS;
+            } else if (lastTimestamp - timestamp > maxClockBackwardMillis) {
+                throw new IllegalStateException("clock moved backwards. last timestamp = " + (lastTimestamp + epochMillis)
+                        + ", current time = " + now + ", maxClockBackwardMillis = " + maxClockBackwardMillis);
+            } else if ((last & MAX_SEQUENCE) < MAX_SEQUENCE) {
+                // 同一ミリ秒内、または許容値以内で時刻が戻っている場合は、最後に払い出した時刻のままシーケンスを進める。
+                next = last + 1L;
+            } else {
+                // シーケンスを使い切った場合は、システム時刻が最後に払い出した時刻を超えるまで待機する。
+                LockSupport.parkNanos(WAIT_NANOS);
+                continue;
+            }
+            if (state.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << (WORKER_ID_BITS + SEQUENCE_BITS))
+                        | ((long) current.workerId << SEQUENCE_BITS)
+                        | (next & MAX_SEQUENCE);
+            }
+        }
+    }
+
+    /**
+     * 現在のワーカーIDを返却する。
+     *
+     * @return ワーカーID(借りていない場合は-1)
+     */
+    public int getWorkerId() {
+        final Lease current = lease;
+        return current == null ? -1 : current.workerId;
+    }
+
+    /**
+     * 現在時刻を返却する。
+     *
+     * @return 現在時刻(エポックミリ秒)
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 初期化処理。<br>
+     * 下記処理を行う。
+     * <pre>
+     * データベーストランザクション名の設定
+     * ワーカーIDの貸出
+     * 延長用スレッドの開始
+     * </pre>
+     *
+     * @throws IllegalStateException 設定が不正な場合、借りることができるワーカーIDが存在しない場合
+     */
+    @Override
+    public void initialize() {
+        if (leaseTableName == null) {
+            throw new IllegalStateException("leaseTableName must be set.");
+        }
+        if (heartbeatIntervalMillis >= leaseDurationMillis - maxClockBackwardMillis) {
+            throw new IllegalStateException(String.format(
+                    "heartbeatIntervalMillis must be less than leaseDurationMillis - maxClockBackwardMillis. "
+                            + "heartbeatIntervalMillis = %d, leaseDurationMillis = %d, maxClockBackwardMillis = %d",
+                    heartbeatIntervalMillis, leaseDurationMillis, maxClockBackwardMillis));
+        }
+        if (TransactionContext.DEFAULT_TRANSACTION_CONTEXT_KEY.equals(
+                dbTransactionManager.getDbTransactionName())) {
+            // トランザクション名が、既定の名前の場合には、デフォルトのトランザクション名を設定する。
+            dbTransactionManager.setDbTransactionName(this.getClass().getName());
+        }
+
+        leaseTable = new WorkerIdLeaseTable(leaseTableName,
+                (nodeName != null ? nodeName : localHostName()) + ':' + UUID.randomUUID(),
+                MAX_WORKER_ID, dbTransactionManager);
+        leaseTable.setColumnNames(workerIdColumnName, ownerColumnName, expiresAtColumnName);
+        acquire();
+
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, SnowflakeIdGenerator.class.getSimpleName() + "-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                heartbeat();
+            }
+        }, heartbeatIntervalMillis, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * ワーカーIDを借りる。
+     */
+    private void acquire() {
+        final long now = currentTimeMillis();
+        final WorkerIdLeaseTable.Acquired acquired = leaseTable.acquire(now, now + leaseDurationMillis);
+        final int workerId = acquired.getWorkerId();
+        advanceState(acquired.getLastIssuedMillis());
+        lease = new Lease(workerId, validUntil(now));
+        LOGGER.logInfo("acquired worker id. worker id = " + workerId + ", owner = " + leaseTable.getOwner());
+    }
+
+    /**
+     * 指定された時刻以前の時刻では払い出さないよう、最後に払い出した時刻とシーケンスを進める。<br>
+     * シーケンスを使い切った状態とするため、採番はシステム時刻が指定された時刻を過ぎるまで待機する。
+     *
+     * @param lastIssuedMillis 前の貸出先が払い出した値の時刻の上限(エポックミリ秒)
+     */
+    private void advanceState(long lastIssuedMillis) {
+        if (lastIssuedMillis < epochMillis) {
+            return;
+        }
+        final long floor = ((lastIssuedMillis - epochMillis) << SEQUENCE_BITS) | MAX_SEQUENCE;
+        while (true) {
+            final long last = state.get();
+            if (last >= floor || state.compareAndSet(last, floor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * ワーカーIDの貸出を延長する。<br>
+     * 他のノードに引き継がれていた場合は、新たなワーカーIDを借り直す。
+     * 延長と借り直しに失敗した場合は警告ログを出力し、次回の延長で再試行する。
+     */
+    void heartbeat() {
+        final Lease current = lease;
+        try {
+            final long now = currentTimeMillis();
+            if (current != null && leaseTable.renew(current.workerId, now + leaseDurationMillis)) {
+                lease = new Lease(current.workerId, validUntil(now));
+                return;
+            }
+            if (current != null) {
+                lease = null;
+                LOGGER.logWarn("worker id lease was lost. worker id = " + current.workerId
+                        + ", owner = " + leaseTable.getOwner());
+            }
+            acquire();
+        } catch (RuntimeException e) {
+            LOGGER.logWarn("failed to renew worker id lease. worker id = "
+                    + (current == null ? -1 : current.workerId), e);
+        }
+    }
+
+    /**
+     * 自ノードで採番してよい期限を返却する。<br>
+     * 他のノードは各ノードの時刻で有効期限を判定するため、ノード間の時刻のずれの許容値分だけ早く期限とする。
+     *
+     * @param now 貸出テーブルを更新する前の時刻(エポックミリ秒)
+     * @return 採番してよい期限(エポックミリ秒)
+     */
+    private long validUntil(long now) {
+        return now + leaseDurationMillis - maxClockBackwardMillis;
+    }
+
+    /**
+     * ノード名のデフォルト値として、ホスト名を取得する。
+     *
+     * @return ホスト名
+     */
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("failed to get host name. set nodeName explicitly.", e);
+        }
+    }
+
+    /**
+     * 廃棄処理。<br>
+     * 延長用のスレッドを停止し、最後に払い出した時刻を記録してワーカーIDを返却する。
+     * 返却に失敗した場合は警告ログを出力する(ワーカーIDは有効期限の経過後に他のノードから再利用される)。
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    @Override
+    public void dispose() throws InterruptedException {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdown();
+            if (!heartbeatExecutor.awaitTermination(TERMINATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.logWarn("heartbeat thread did not terminate within " + TERMINATION_TIMEOUT_MILLIS + "ms.");
+                heartbeatExecutor.shutdownNow();
+            }
+            heartbeatExecutor = null;
+        }
+        final Lease current = lease;
+        lease = null;
+        if (current != null) {
+            try {
+                leaseTable.release(current.workerId, epochMillis + (state.get() >>> SEQUENCE_BITS));
+            } catch (RuntimeException e) {
+                LOGGER.logWarn("failed to release worker id. worker id = " + current.workerId, e);
+            }
+        }
+    }
+
+    /**
+     * 基準時刻を設定する。<br>
+     * デフォルトは2020-01-01T00:00:00Z。基準時刻から約69年間採番できる。
+     * 運用開始後に変更すると値が重複する可能性があるため、変更しないこと。
+     *
+     * @param epochMillis 基準時刻(エポックミリ秒)
+     */
+    public void setEpochMillis(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    /**
+     * ワーカーID貸出テーブル物理名を設定する。
+     *
+     * @param leaseTableName ワーカーID貸出テーブル物理名
+     */
+    public void setLeaseTableName(String leaseTableName) {
+        this.leaseTableName = leaseTableName;
+    }
+
+    /**
+     * ワーカーID貸出テーブルのワーカーIDカラム物理名を設定する。<br>
+     * デフォルトは{@code WORKER_ID}。
+     *
+     * @param workerIdColumnName ワーカーIDカラム物理名
+     */
+    public void setWorkerIdColumnName(String workerIdColumnName) {
+        this.workerIdColumnName = workerIdColumnName;
+    }
+
+    /**
+     * ワーカーID貸出テーブルの貸出先カラム物理名を設定する。<br>
+     * デフォルトは{@code OWNER}。
+     *
+     * @param ownerColumnName 貸出先カラム物理名
+     */
+    public void setOwnerColumnName(String ownerColumnName) {
+        this.ownerColumnName = ownerColumnName;
+    }
+
+    /**
+     * ワーカーID貸出テーブルの有効期限カラム物理名を設定する。<br>
+     * デフォルトは{@code EXPIRES_AT}。
+     *
+     * @param expiresAtColumnName 有効期限カラム物理名
+     */
+    public void setExpiresAtColumnName(String expiresAtColumnName) {
+        this.expiresAtColumnName = expiresAtColumnName;
+    }
+
+    /**
+     * 貸出の有効期間を設定する。<br>
+     * デフォルトは30000ミリ秒。
+     *
+     * @param leaseDurationMillis 貸出の有効期間(ミリ秒)
+     */
+    public void setLeaseDurationMillis(long leaseDurationMillis) {
+        if (leaseDurationMillis < 1L) {
+            throw new IllegalArgumentException(
+                    "leaseDurationMillis must be greater than 0. leaseDurationMillis = " + leaseDurationMillis);
+        }
+        this.leaseDurationMillis = leaseDurationMillis;
+    }
+
+    /**
+     * 貸出の延長間隔を設定する。<br>
+     * デフォルトは10000ミリ秒。有効期間からシステム時刻が戻った場合の許容値を引いた値より小さくすること。
+     *
+     * @param heartbeatIntervalMillis 貸出の延長間隔(ミリ秒)
+     */
+    public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        if (heartbeatIntervalMillis < 1L) {
+            throw new IllegalArgumentException(
+                    "heartbeatIntervalMillis must be greater than 0. heartbeatIntervalMillis = " + heartbeatIntervalMillis);
+        }
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    /**
+     * システム時刻が戻った場合の許容値を設定する。<br>
+     * デフォルトは1000ミリ秒。ノード間の時刻のずれの許容値としても使用する。
+     *
+     * @param maxClockBackwardMillis システム時刻が戻った場合の許容値(ミリ秒)
+     */
+    public void setMaxClockBackwardMillis(long maxClockBackwardMillis) {
+        if (maxClockBackwardMillis < 0L) {
+            throw new IllegalArgumentException(
+                    "maxClockBackwardMillis must not be negative. maxClockBackwardMillis = " + maxClockBackwardMillis);
+        }
+        this.maxClockBackwardMillis = maxClockBackwardMillis;
+    }
+
+    /**
+     * ノード名を設定する。<br>
+     * 貸出先の識別に使用する。設定しない場合は、ホスト名を使用する。
+     *
+     * @param nodeName ノード名
+     */
+    public void setNodeName(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    /**
+     * トランザクションマネージャを設定する。<br>
+     * ワーカーIDの貸出と延長に使用する。
+     *
+     * @param dbTransactionManager トランザクションマネージャ
+     */
+    public void setDbTransactionManager(SimpleDbTransactionManager dbTransactionManager) {
+        this.dbTransactionManager = dbTransactionManager;
+    }
+
+    /**
+     * 借りているワーカーIDと採番してよい期限。
+     */
+    private static final class Lease {
+
+        /** ワーカーID */
+        private final int workerId;
+
+        /** 採番してよい期限(エポックミリ秒) */
+        private final long validUntil;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param workerId ワーカーID
+         * @param validUntil 採番してよい期限(エポックミリ秒)
+         */
+        private Lease(int workerId, long validUntil) {
+            this.workerId = workerId;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package nablarch.common.idgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * シーケンス名などの名前ごとに生成したSQLを、上限件数までキャッシュするクラス。<br>
+ * <br>
+ * 参照と登録はロックを取得せずに行う。上限件数を超えた場合は、最近参照されていないSQLから上限件数の1割を破棄する(LRU)。
+ * 最近参照されたか否かは、キャッシュミスの度に進む論理時刻で判定するため、キャッシュヒット時に共有のカウンタは更新しない。
+ * 破棄は上限件数を超えた登録を行ったスレッドのうち1スレッドのみが行い、他のスレッドは破棄の完了を待機しない。
+ * このため、複数スレッドから同時に登録した場合は、破棄が完了するまで一時的に上限件数を超えることがある。
+ */
+abstract class SqlCache {
+
+    /** 上限件数 */
+    private final int capacity;
+
+    /** 名前ごとのSQL */
+    private final ConcurrentMap<String, Entry> entries;
+
+    /** 論理時刻(キャッシュミスの度に進める) */
+    private final AtomicLong clock = new AtomicLong();
+
+    /** 破棄中か否か */
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * コンストラクタ。
+     *
+     * @param capacity 上限件数
+     */
+    SqlCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than 0. capacity = " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<String, Entry>(Math.min(capacity, 1024));
+    }
+
+    /**
+     * 名前に対応するSQLを返却する。<br>
+     * キャッシュに存在しない場合は、{@link #createSql(String)}で生成してキャッシュする。
+     *
+     * @param name 名前
+     * @return SQL
+     */
+    String get(String name) {
+        final Entry entry = entries.get(name);
+        if (entry != null) {
+            final long now = clock.get();
+            if (entry.lastAccess != now) {
+                entry.lastAccess = now;
+            }
+            return entry.sql;
+        }
+
+        // 同時に同一の名前で生成した場合は、先に登録されたSQLを使用する。
+        final Entry created = new Entry(createSql(name), clock.incrementAndGet());
+        final Entry registered = entries.putIfAbsent(name, created);
+        if (registered != null) {
+            return registered.sql;
+        }
+        evict();
+        return created.sql;
+    }
+
+    /**
+     * キャッシュしている件数を返却する。
+     *
+     * @return キャッシュしている件数
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * 上限件数以内になるまで、最近参照されていないSQLを破棄する。<br>
+     * 他のスレッドが破棄中の場合は何もしない。
+     * 破棄中に他のスレッドが登録した分は、破棄を終えたスレッドが改めて件数を確認して破棄する。
+     */
+    private void evict() {
+        while (entries.size() > capacity && evicting.compareAndSet(false, true)) {
+            try {
+                evictLeastRecentlyUsed();
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * 最近参照されていないSQLを破棄し、上限件数の9割まで減らす。
+     */
+    private void evictLeastRecentlyUsed() {
+        final List<Map.Entry<String, Entry>> snapshot = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+        final int removeCount = snapshot.size() - capacity + capacity / 10;
+        if (removeCount <= 0) {
+            return;
+        }
+        final long[] lastAccesses = new long[snapshot.size()];
+        for (int i = 0; i < lastAccesses.length; i++) {
+            lastAccesses[i] = snapshot.get(i).getValue().lastAccess;
+        }
+        Arrays.sort(lastAccesses);
+        final long threshold = lastAccesses[Math.min(removeCount, lastAccesses.length) - 1];
+        int removed = 0;
+        for (Map.Entry<String, Entry> e : snapshot) {
+            if (removed >= removeCount) {
+                break;
+            }
+            if (e.getValue().lastAccess <= threshold && entries.remove(e.getKey(), e.getValue())) {
+                removed++;
+            }
+        }
+    }
+
+    /**
+     * 名前に対応するSQLを生成する。
+     *
+     * @param name 名前
+     * @return SQL
+     */
+    abstract String createSql(String name);
+
+    /**
+     * キャッシュしているSQLと最後に参照された論理時刻。
+     */
+    private static final class Entry {
+
+        /** SQL */
+        private final String sql;
+
+        /** 最後に参照された論理時刻 */
+        private volatile long lastAccess;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param sql SQL
+         * @param lastAccess 最後に参照された論理時刻
+         */
+        private Entry(String sql, long lastAccess) {
+            this.sql = sql;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -1,9 +1,28 @@
 package nablarch.common.idgenerator;
 
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
 import nablarch.core.db.connection.AppDbConnection;
 import nablarch.core.db.connection.DbConnectionContext;
+import nablarch.core.db.connection.TransactionManagerConnection;
+import nablarch.core.db.statement.ResultSetIterator;
+import nablarch.core.db.statement.SqlCStatement;
 import nablarch.core.db.statement.SqlPStatement;
 import nablarch.core.db.statement.SqlResultSet;
+import nablarch.core.db.statement.SqlRow;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
 import nablarch.core.repository.initialization.Initializable;
 import nablarch.core.transaction.TransactionContext;
 
@@ -14,11 +33,14 @@ import nablarch.core.transaction.TransactionContext;
  * このため、業務アプリケーションの処理が確定されるまでコミットは行われないため、抜け番を発生させずに採番を行うことができる。<br>
  * ただし、業務アプリケーションが確定されるまではロックが保有されるため、その他の業務処理でロック待機が発生し著しく性能を劣化させる可能性があるため注意が必要である。<br>
  * <br>
+ * 複数の値の採番({@link #generateIds(String, int)}、{@link #generateIds(Map)})、採番の保留({@link #generateDeferredId(String)})、
+ * 行の分割、ウォームアップなどの動作は、各メソッドと設定項目のsetterを参照。<br>
+ * <br>
  * また、本クラスはリポジトリの機能を用いて初期化することを想定しているので、コンポーネント設定ファイルに初期化の設定を行うこと。
  *
  * @author Hisaaki Sioiri
  */
-public class TableIdGenerator implements IdGenerator, Initializable {
+public class TableIdGenerator implements IdGenerator, LongIdGenerator, IdRangeGenerator, Initializable {
 
     /** 採番テーブル物理名 */
     private String tableName;
@@ -38,6 +60,39 @@ public class TableIdGenerator implements IdGenerator, Initializable {
     /** 取得用SQL */
     private String selectSql;
 
+    /** 未払い出しの値の返却用SQL */
+    private String releaseSql;
+
+    /** インクリメントと取得を1回のSQLで行うか否か */
+    private boolean useSingleStatement = false;
+
+    /** データベース製品ごとのインクリメントと取得を1回で行うSQL */
+    private Map<DialectType, String> incrementReturningSqls;
+
+    /** 採番テーブルの分割番号カラム物理名(分割しない場合はnull) */
+    private String shardColumnName;
+
+    /** 採番対象IDごとの分割数 */
+    private int shardCount = 1;
+
+    /** 全てのスレッドで使用する分割番号(スレッドごとに分散する場合は-1) */
+    private int fixedShard = -1;
+
+    /** ウォームアップ対象の採番対象ID */
+    private List<String> warmUpIds;
+
+    /** ウォームアップで使用するトランザクションマネージャ */
+    private SimpleDbTransactionManager warmUpDbTransactionManager;
+
+    /** 採番対象IDを読み込むか否か */
+    private boolean preloadIds = false;
+
+    /** 読み込んでいない採番対象IDが指定された場合に、採番対象IDを再読み込みする間隔(ミリ秒) */
+    private long idRefreshIntervalMillis = 1000L;
+
+    /** 読み込んだ採番対象ID(採番対象IDを読み込まない場合はnull) */
+    private KeyRegistry<String> keyRegistry;
+
     /**
      * 採番テーブル物理名を設定する。
      *
@@ -74,53 +129,669 @@ public class TableIdGenerator implements IdGenerator, Initializable {
         this.dbTransactionName = dbTransactionName;
     }
 
+    /**
+     * インクリメントとインクリメント後の値の取得を1回のSQLで行うか否かを設定する。<br>
+     * デフォルトは{@code false}で、更新と取得の2回のSQLで採番を行う。<br>
+     * {@code true}を設定した場合は、データベース製品固有の構文
+     * (PostgreSQLの{@code RETURNING}、Oracleの{@code RETURNING INTO}、H2・DB2の{@code FINAL TABLE}、SQL Serverの{@code OUTPUT})を使用し、
+     * ロックを保有した状態でのデータベースとの往復を1回とする。
+     * これらの構文を持たないデータベースの場合は、更新と取得の2回のSQLで採番を行う。
+     *
+     * @param useSingleStatement 1回のSQLで行う場合は{@code true}
+     */
+    public void setUseSingleStatement(boolean useSingleStatement) {
+        this.useSingleStatement = useSingleStatement;
+    }
+
+    /**
+     * 採番テーブルの分割番号カラム物理名を設定する。<br>
+     * 設定した場合は、採番テーブルをIDと分割番号(0から分割数-1)の組み合わせで使用する。
+     *
+     * @param shardColumnName 分割番号カラム名
+     */
+    public void setShardColumnName(String shardColumnName) {
+        this.shardColumnName = shardColumnName.toUpperCase();
+    }
+
+    /**
+     * 採番対象IDごとの分割数を設定する。<br>
+     * デフォルトは1。2以上を設定する場合は、分割番号カラム物理名({@link #setShardColumnName(String)})も設定すること。<br>
+     * 2以上を設定した場合は、採番対象IDごとに分割数分の行を使用し、呼び出し元のスレッドごとに異なる行を更新することで、
+     * 同一の採番対象IDに対する行ロックの競合を分散する。
+     * 分割番号{@code s}の行のNOが{@code n}の場合の採番結果は{@code n * 分割数 + s}となるため、行をまたいでも値は重複しない。
+     * ただし、採番結果は採番順には並ばない。分割した行は{@link #provisionShards(String)}で作成する。
+     *
+     * @param shardCount 分割数
+     */
+    public void setShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be greater than 0. shardCount = " + shardCount);
+        }
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * ウォームアップ対象の採番対象IDを設定する。<br>
+     * 設定した場合は、初期化時に採番テーブルとカラム、採番対象IDの行が存在することを検証し、設定誤りを起動時に検出する。
+     * あわせて、ウォームアップで使用するトランザクションマネージャ({@link #setWarmUpDbTransactionManager(SimpleDbTransactionManager)})も設定すること。
+     *
+     * @param warmUpIds ウォームアップ対象の採番対象ID
+     */
+    public void setWarmUpIds(List<String> warmUpIds) {
+        this.warmUpIds = warmUpIds;
+    }
+
+    /**
+     * ウォームアップで使用するトランザクションマネージャを設定する。<br>
+     * 初期化時は業務トランザクションが存在しないため、このトランザクションマネージャで採番テーブルの検証を行う。
+     *
+     * @param warmUpDbTransactionManager ウォームアップで使用するトランザクションマネージャ
+     */
+    public void setWarmUpDbTransactionManager(SimpleDbTransactionManager warmUpDbTransactionManager) {
+        this.warmUpDbTransactionManager = warmUpDbTransactionManager;
+    }
+
+    /**
+     * 採番対象IDを採番テーブルから読み込むか否かを設定する。<br>
+     * デフォルトは{@code false}。{@code true}を設定した場合は、最初の採番時に業務トランザクションで採番対象IDを読み込み、
+     * 存在しない採番対象IDを採番テーブルを更新せずにエラーとする。
+     * 読み込んでいない採番対象IDが指定された場合は、再読み込みの間隔({@link #setIdRefreshIntervalMillis(long)})ごとに1回だけ再読み込みを行う。
+     *
+     * @param preloadIds 採番対象IDを読み込む場合は{@code true}
+     */
+    public void setPreloadIds(boolean preloadIds) {
+        this.preloadIds = preloadIds;
+    }
+
+    /**
+     * 読み込んでいない採番対象IDが指定された場合に、採番対象IDを再読み込みする間隔(ミリ秒)を設定する。<br>
+     * デフォルトは1000ミリ秒。間隔内に指定された読み込んでいない採番対象IDは、採番テーブルを更新せずにエラーとする。
+     *
+     * @param idRefreshIntervalMillis 採番対象IDを再読み込みする間隔(ミリ秒)
+     */
+    public void setIdRefreshIntervalMillis(long idRefreshIntervalMillis) {
+        if (idRefreshIntervalMillis < 0) {
+            throw new IllegalArgumentException("idRefreshIntervalMillis must not be negative. idRefreshIntervalMillis = "
+                    + idRefreshIntervalMillis);
+        }
+        this.idRefreshIntervalMillis = idRefreshIntervalMillis;
+    }
+
+    /**
+     * 全てのスレッドで使用する分割番号を設定する。<br>
+     * 分割番号をノードに割り当てる場合({@link FastTableIdGenerator#setNodeIndex(int)})に使用する。
+     *
+     * @param fixedShard 分割番号
+     */
+    void setFixedShard(int fixedShard) {
+        this.fixedShard = fixedShard;
+    }
+
     /**
      * 初期化処理を行う。
      *
      * 採番テーブル更新用、取得用のSQL文を組み立てる。
+     * ウォームアップ対象の採番対象IDが設定されている場合は、採番テーブルの検証を行う。
+     *
+     * @throws IllegalStateException 採番対象IDの行が存在しない場合
      */
     public void initialize() {
+        if (shardCount > 1 && shardColumnName == null) {
+            throw new IllegalStateException("shardColumnName must be set when shardCount is greater than 1.");
+        }
+        final String shardCondition = shardColumnName == null ? "" : " AND " + shardColumnName + " = ?";
+
         String tmpUpdateSql = "  UPDATE $TABLE_NAME$ "
-                + "   SET $NO$ = $NO$ + 1 "
+                + "   SET $NO$ = $NO$ + ? "
                 + " WHERE $ID$ = ?";
 
         updateSql = tmpUpdateSql.replace("$TABLE_NAME$", tableName)
                 .replace("$NO$", noColumnName)
-                .replace("$ID$", idColumnName);
+                .replace("$ID$", idColumnName) + shardCondition;
 
         String tmpSelectSql = "  SELECT $NO$ "
                 + "  FROM $TABLE_NAME$ "
                 + " WHERE $ID$ = ?";
         selectSql = tmpSelectSql.replace("$TABLE_NAME$", tableName)
                 .replace("$NO$", noColumnName)
-                .replace("$ID$", idColumnName);
+                .replace("$ID$", idColumnName) + shardCondition;
+
+        releaseSql = "UPDATE " + tableName + " SET " + noColumnName + " = ?"
+                + " WHERE " + idColumnName + " = ? AND " + noColumnName + " = ?" + shardCondition;
+
+        incrementReturningSqls = new EnumMap<DialectType, String>(DialectType.class);
+        for (DialectType type : DialectType.values()) {
+            final String sql = type.buildIncrementReturningSql(tableName, idColumnName, noColumnName, shardColumnName);
+            if (sql != null) {
+                incrementReturningSqls.put(type, sql);
+            }
+        }
+
+        keyRegistry = !preloadIds ? null : new KeyRegistry<String>(idRefreshIntervalMillis) {
+            @Override
+            List<String> loadIds() {
+                return findIds();
+            }
+
+            @Override
+            String createState(String id) {
+                return id;
+            }
+        };
+
+        if (warmUpIds != null && !warmUpIds.isEmpty()) {
+            if (warmUpDbTransactionManager == null) {
+                throw new IllegalStateException("warmUpDbTransactionManager must be set when warmUpIds is set.");
+            }
+            new SimpleDbTransactionExecutor<Void>(warmUpDbTransactionManager) {
+                @Override
+                public Void execute(AppDbConnection connection) {
+                    warmUp(connection, warmUpIds);
+                    return null;
+                }
+            }.doTransaction();
+        }
     }
 
     /** {@inheritDoc} */
     public String generateId(String id) {
-        return generate(id);
+        return String.valueOf(generateLongId(id));
     }
 
     /** {@inheritDoc} */
     public String generateId(String id, IdFormatter formatter) {
-        String no = generate(id);
+        String no = String.valueOf(generateLongId(id));
         if (formatter == null) {
             return no;
         }
         return formatter.format(id, no);
     }
 
+    /** {@inheritDoc} */
+    public long generateLongId(String id) {
+        validateId(id);
+        final int shard = currentShard();
+        return toValue(increment(id, 1, shard), shard);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * 業務トランザクション内で採番テーブルを1回だけ更新し、連続する値をまとめて採番する。
+     * コミットは行わないため、抜け番は発生しない。
+     */
+    public IdRange generateIds(String id, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be greater than 0. count = " + count);
+        }
+        return reserve(id, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * 業務トランザクション内で、採番テーブルの更新をIDの昇順にバッチ実行し、更新後の値を1回の取得で読み込む。
+     * コミットは行わないため、抜け番は発生しない。
+     */
+    public Map<String, IdRange> generateIds(Map<String, Integer> counts) {
+        if (counts == null || counts.isEmpty()) {
+            throw new IllegalArgumentException("counts must not be empty.");
+        }
+        final SortedMap<String, Integer> sorted = new TreeMap<String, Integer>(counts);
+        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() < 1) {
+                throw new IllegalArgumentException(String.format(
+                        "count must be greater than 0. id = %s, count = %s", entry.getKey(), entry.getValue()));
+            }
+        }
+        return reserve(sorted);
+    }
+
+    /**
+     * 採番を業務トランザクションのコミットの直前まで保留し、コミット時に採番される値を返却する。<br>
+     * <br>
+     * 採番テーブルの更新はコミットの直前に行うため、行ロックを保有する時間はコミットまでの僅かな時間となる。
+     * 採番はコミットと同一のトランザクションで行うため、抜け番は発生しない。
+     * 採番した値は、コミット後に{@link DeferredId#getValue()}で取得できる。
+     * 業務トランザクションのトランザクションファクトリには、{@link DeferredIdTransactionFactory}を設定すること。
+     *
+     * @param id 採番対象を識別するID
+     * @return コミット時に採番される値
+     * @throws IllegalStateException 業務トランザクションが{@link DeferredIdTransactionFactory}で生成されていない場合
+     */
+    public DeferredId generateDeferredId(String id) {
+        return generateDeferredId(id, null);
+    }
+
+    /**
+     * 採番を業務トランザクションのコミットの直前まで保留し、コミット時に採番される値を返却する。<br>
+     * <br>
+     * 採番後、コミットの前にコールバックを呼び出す。
+     * コールバックは採番と同一のトランザクションで呼び出されるため、採番した値を業務データに反映することができる。
+     *
+     * @param id 採番対象を識別するID
+     * @param callback 採番時に呼び出すコールバック(nullの場合は呼び出さない)
+     * @return コミット時に採番される値
+     * @throws IllegalStateException 業務トランザクションが{@link DeferredIdTransactionFactory}で生成されていない場合
+     * @see #generateDeferredId(String)
+     */
+    public DeferredId generateDeferredId(String id, DeferredIdCallback callback) {
+        if (id == null) {
+            throw new IllegalArgumentException("id must not be null.");
+        }
+        if (!TransactionContext.containTransaction(dbTransactionName)
+                || !(TransactionContext.getTransaction(dbTransactionName) instanceof DeferredIdTransaction)) {
+            throw new IllegalStateException(
+                    "deferred numbering requires DeferredIdTransactionFactory. transaction name = " + dbTransactionName);
+        }
+        validateId(id);
+        final DeferredId deferredId = new DeferredId(id, callback);
+        ((DeferredIdTransaction) TransactionContext.getTransaction(dbTransactionName)).defer(this, deferredId);
+        return deferredId;
+    }
+
+    /**
+     * 複数のIDに紐付くデータをそれぞれ指定された数だけインクリメントし、予約した範囲を返却する。
+     *
+     * @param counts IDとインクリメントする数(IDの昇順)
+     * @return IDと予約した範囲(IDの昇順)
+     */
+    Map<String, IdRange> reserve(SortedMap<String, Integer> counts) {
+        for (String id : counts.keySet()) {
+            validateId(id);
+        }
+        AppDbConnection connection = DbConnectionContext.getConnection(dbTransactionName);
+        final int shard = currentShard();
+
+        // IDの昇順にインクリメント、ロック
+        SqlPStatement update = connection.prepareStatement(updateSql);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            update.setInt(1, entry.getValue());
+            update.setString(2, entry.getKey());
+            if (shardColumnName != null) {
+                update.setInt(3, shard);
+            }
+            update.addBatch();
+        }
+        final int[] updated = update.executeBatch();
+        int index = 0;
+        for (String id : counts.keySet()) {
+            // 更新件数を返却しないドライバの場合は、取得結果で存在チェックを行う。
+            if (updated[index] != 1 && updated[index] != Statement.SUCCESS_NO_INFO) {
+                throw new IllegalStateException(String.format("id was not found. id:%s", id));
+            }
+            index++;
+        }
+
+        // インクリメントした値をまとめて取得する。
+        SqlPStatement select = connection.prepareStatement(buildMultiSelectSql(counts.size()));
+        index = 1;
+        for (String id : counts.keySet()) {
+            select.setString(index++, id);
+        }
+        if (shardColumnName != null) {
+            select.setInt(index, shard);
+        }
+        // 固定長文字列型のIDカラムに対応するため、末尾の空白を除去した値で突き合わせる。
+        final Map<String, Long> lastNumbers = new HashMap<String, Long>();
+        for (SqlRow row : select.retrieve()) {
+            lastNumbers.put(trimTrailingSpaces(row.getString(idColumnName)), row.getLong(noColumnName));
+        }
+
+        final Map<String, IdRange> result = new LinkedHashMap<String, IdRange>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            final Long last = lastNumbers.get(trimTrailingSpaces(entry.getKey()));
+            if (last == null) {
+                throw new IllegalStateException(String.format("id was not found. id:%s", entry.getKey()));
+            }
+            result.put(entry.getKey(), toRange(last, entry.getValue(), shard));
+        }
+        return result;
+    }
+
+    /**
+     * 採番対象IDが採番テーブルに存在することを検証する。<br>
+     * 採番対象IDを読み込まない場合は何もしない(存在しない場合は採番テーブルの更新時にエラーとなる)。
+     *
+     * @param id 採番対象を識別するID
+     * @throws IllegalStateException 採番対象IDが存在しない場合
+     */
+    private void validateId(String id) {
+        final KeyRegistry<String> registry = keyRegistry;
+        if (registry != null && registry.get(id) == null) {
+            throw new IllegalStateException(String.format("id was not found. id:%s", id));
+        }
+    }
+
+    /**
+     * 文字列の末尾の空白を除去する。
+     *
+     * @param value 文字列
+     * @return 末尾の空白を除去した文字列
+     */
+    private static String trimTrailingSpaces(String value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+
+    /**
+     * 複数のIDに紐付く値をまとめて取得するSQLを組み立てる。
+     *
+     * @param idCount IDの数
+     * @return 取得用SQL
+     */
+    private String buildMultiSelectSql(int idCount) {
+        final StringBuilder sql = new StringBuilder(64 + idCount * 2);
+        sql.append("SELECT ").append(idColumnName).append(", ").append(noColumnName)
+           .append(" FROM ").append(tableName)
+           .append(" WHERE ").append(idColumnName).append(" IN (");
+        for (int i = 0; i < idCount; i++) {
+            if (i != 0) {
+                sql.append(',');
+            }
+            sql.append('?');
+        }
+        sql.append(')');
+        if (shardColumnName != null) {
+            sql.append(" AND ").append(shardColumnName).append(" = ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * IDに紐付くデータを指定された数だけまとめてインクリメントし、予約した範囲を返却する。
+     *
+     * @param id 採番対象を識別するためのID
+     * @param count 予約する数
+     * @return 予約した範囲
+     */
+    IdRange reserve(String id, int count) {
+        validateId(id);
+        final int shard = currentShard();
+        return toRange(increment(id, count, shard), count, shard);
+    }
+
+    /**
+     * 採番テーブルの更新専用の接続を使用して、IDに紐付くデータを指定された数だけまとめてインクリメントし、予約した範囲を返却する。<br>
+     * 接続は自動コミットのため、インクリメントは即時にコミットされる。
+     *
+     * @param id 採番対象を識別するためのID
+     * @param count 予約する数
+     * @param pool 採番テーブルの更新専用の接続
+     * @return 予約した範囲
+     */
+    IdRange reserve(String id, int count, DedicatedConnectionPool pool) {
+        final int shard = currentShard();
+        return toRange(pool.increment(id, count, shard), count, shard);
+    }
+
+    /**
+     * 予約した範囲のうち、未払い出しの末尾の範囲を採番テーブルに返却する。<br>
+     * 業務トランザクション内で実行し、コミットは行わない。<br>
+     * <br>
+     * 予約後に他のノードやスレッドが採番していない場合(NOが予約した範囲の最終値のままの場合)のみ、
+     * NOを未払い出しの範囲の先頭値の直前に戻す。採番済みの場合は何もしない。
+     *
+     * @param id 採番対象を識別するためのID
+     * @param unused 未払い出しの範囲(予約した範囲の末尾であること)
+     * @return 返却した場合は{@code true}
+     */
+    boolean release(String id, IdRange unused) {
+        final int shard = (int) (unused.getEnd() % shardCount);
+        final AppDbConnection connection = DbConnectionContext.getConnection(dbTransactionName);
+        final SqlPStatement update = connection.prepareStatement(releaseSql);
+        update.setLong(1, unused.getStart() / shardCount - 1);
+        update.setString(2, id);
+        update.setLong(3, unused.getEnd() / shardCount);
+        if (shardColumnName != null) {
+            update.setInt(4, shard);
+        }
+        return update.executeUpdate() == 1;
+    }
+
+    /**
+     * 範囲が採番テーブルで予約済みのままであるか否かを返却する。<br>
+     * 業務トランザクション内で実行する。
+     * 範囲の最終値に対応する行のNOが最終値以上であれば、範囲内の値は他から採番されることはない。
+     * NOが最終値より小さい場合は、予約後に採番テーブルが初期化されたものとみなす。
+     *
+     * @param id 採番対象を識別するためのID
+     * @param range 範囲
+     * @return 予約済みのままの場合は{@code true}。採番対象IDの行が存在しない場合は{@code false}
+     */
+    boolean isReserved(String id, IdRange range) {
+        final int shard = (int) (range.getEnd() % shardCount);
+        final AppDbConnection connection = DbConnectionContext.getConnection(dbTransactionName);
+        final SqlPStatement select = connection.prepareStatement(selectSql);
+        select.setString(1, id);
+        if (shardColumnName != null) {
+            select.setInt(2, shard);
+        }
+        final SqlResultSet rs = select.retrieve(1, 1);
+        return !rs.isEmpty() && rs.get(0).getLong(noColumnName) >= range.getEnd() / shardCount;
+    }
+
+    /**
+     * データベース製品のインクリメントと取得を1回で行うSQLを返却する。
+     *
+     * @param type データベース製品
+     * @return SQL。1回で行うことができないデータベースの場合は{@code null}
+     */
+    String getIncrementReturningSql(DialectType type) {
+        return incrementReturningSqls.get(type);
+    }
+
+    /**
+     * 採番テーブル物理名を返却する。
+     *
+     * @return 採番テーブル物理名
+     */
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * 採番テーブルを分割して使用するか否か。
+     *
+     * @return 分割番号カラムが設定されている場合は{@code true}
+     */
+    boolean isSharded() {
+        return shardColumnName != null;
+    }
+
+    /**
+     * 呼び出し元のスレッドが使用する分割番号を返却する。<br>
+     * 同一スレッドでは常に同じ分割番号となるため、1つのトランザクション内で同一の採番対象IDの複数の行をロックすることはない。
+     * 分割番号が固定されている場合は、その分割番号を返却する。
+     *
+     * @return 分割番号
+     */
+    private int currentShard() {
+        if (fixedShard >= 0) {
+            return fixedShard;
+        }
+        if (shardCount == 1) {
+            return 0;
+        }
+        final long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 33) % shardCount);
+    }
+
     /**
-     * IDに紐付くデータのインクリメント処理と対象IDのロック処理を行う。
+     * 分割された行のNOを採番結果の値に変換する。
+     *
+     * @param no NO
+     * @param shard 分割番号
+     * @return 採番結果の値
+     */
+    private long toValue(long no, int shard) {
+        return no * shardCount + shard;
+    }
+
+    /**
+     * インクリメント後のNOとインクリメントした数から、予約した範囲を生成する。
+     *
+     * @param last インクリメント後のNO
+     * @param count インクリメントした数
+     * @param shard 分割番号
+     * @return 予約した範囲
+     */
+    private IdRange toRange(long last, int count, int shard) {
+        return new IdRange(toValue(last - count + 1, shard), toValue(last, shard), shardCount);
+    }
+
+    /**
+     * 採番対象IDの分割された行を作成する。<br>
+     * 業務トランザクション内で実行し、コミットは行わない。<br>
+     * <br>
+     * 採番対象IDの行が存在しない場合は、全ての分割番号の行をNO=0で作成する。
+     * 分割番号0の行のみが存在する場合(分割番号カラムを追加した既存の採番テーブルなど)は、その行のNOを払い出し済みの最大値とみなし、
+     * 以降の採番結果がその値より大きくなるように、全ての分割番号の行のNOを最大値÷分割数(切り捨て)とする。
+     * 全ての分割番号の行が既に存在する場合は何もしない。
+     *
+     * @param id 採番対象を識別するID
+     * @throws IllegalStateException 分割番号カラムが設定されていない場合、分割された行の一部のみが存在する場合
+     */
+    public void provisionShards(String id) {
+        if (shardColumnName == null) {
+            throw new IllegalStateException("shardColumnName must be set to provision shards.");
+        }
+        final AppDbConnection connection = DbConnectionContext.getConnection(dbTransactionName);
+        final SqlPStatement select = connection.prepareStatement("SELECT " + shardColumnName + ", " + noColumnName
+                + " FROM " + tableName + " WHERE " + idColumnName + " = ?");
+        select.setString(1, id);
+        final Map<Integer, Long> existing = new HashMap<Integer, Long>();
+        for (SqlRow row : select.retrieve()) {
+            existing.put(row.getInteger(shardColumnName), row.getLong(noColumnName));
+        }
+        if (existing.size() == shardCount) {
+            return;
+        }
+
+        final long no;
+        if (existing.isEmpty()) {
+            no = 0L;
+        } else if (existing.size() == 1 && existing.containsKey(0)) {
+            no = existing.get(0) / shardCount;
+            final SqlPStatement update = connection.prepareStatement("UPDATE " + tableName + " SET " + noColumnName
+                    + " = ? WHERE " + idColumnName + " = ? AND " + shardColumnName + " = ?");
+            update.setLong(1, no);
+            update.setString(2, id);
+            update.setInt(3, 0);
+            update.executeUpdate();
+        } else {
+            throw new IllegalStateException(String.format(
+                    "shards were partially provisioned. id:%s, existing shards:%s", id, existing.keySet()));
+        }
+
+        final SqlPStatement insert = connection.prepareStatement("INSERT INTO " + tableName + " (" + idColumnName
+                + ", " + shardColumnName + ", " + noColumnName + ") VALUES (?, ?, ?)");
+        for (int shard = existing.isEmpty() ? 0 : 1; shard < shardCount; shard++) {
+            insert.setString(1, id);
+            insert.setInt(2, shard);
+            insert.setLong(3, no);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+    }
+
+    /**
+     * 採番テーブルとカラム、採番対象IDの行が存在することを検証する。<br>
+     * 採番テーブルの更新は行わない。
+     *
+     * @param connection データベース接続
+     * @param ids 採番対象を識別するID
+     * @throws IllegalStateException 採番対象IDの行が存在しない場合
+     */
+    void warmUp(AppDbConnection connection, Collection<String> ids) {
+        // 取得用SQLを実行することで、採番テーブルとカラムが存在することを検証する。
+        final SqlPStatement select = connection.prepareStatement(selectSql);
+        for (String id : ids) {
+            final int first = fixedShard >= 0 ? fixedShard : 0;
+            final int last = fixedShard >= 0 ? fixedShard : shardCount - 1;
+            for (int shard = first; shard <= last; shard++) {
+                select.setString(1, id);
+                if (shardColumnName != null) {
+                    select.setInt(2, shard);
+                }
+                if (select.retrieve(1, 1).isEmpty()) {
+                    throw new IllegalStateException(shardColumnName == null
+                            ? String.format("id was not found. id:%s", id)
+                            : String.format("id was not found. id:%s, shard:%d", id, shard));
+                }
+            }
+        }
+    }
+
+    /**
+     * 採番テーブルに存在する採番対象IDを、昇順に返却する。<br>
+     * 業務トランザクション内で実行する。
+     *
+     * @return 採番対象ID
+     */
+    List<String> findIds() {
+        final AppDbConnection connection = DbConnectionContext.getConnection(dbTransactionName);
+        final SqlPStatement select = connection.prepareStatement("SELECT DISTINCT " + idColumnName
+                + " FROM " + tableName + " ORDER BY " + idColumnName);
+        final List<String> ids = new ArrayList<String>();
+        for (SqlRow row : select.retrieve()) {
+            // 固定長文字列型のIDカラムに対応するため、末尾の空白を除去する。
+            ids.add(trimTrailingSpaces(row.getString(idColumnName)));
+        }
+        return ids;
+    }
+
+    /**
+     * 1回の採番で実行するSQLの数を返却する。
+     *
+     * @param type データベース製品({@code null}の場合は未判定)
+     * @return 1回の採番で実行するSQLの数
+     */
+    int countStatements(DialectType type) {
+        return useSingleStatement && type != null && incrementReturningSqls.containsKey(type) ? 1 : 2;
+    }
+
+    /**
+     * IDに紐付くデータのインクリメント処理と対象IDのロック処理を行い、インクリメント後の値を返却する。
      *
      * @param id 採番対象を識別するためのID
-     * @return 採番したID
+     * @param count インクリメントする数
+     * @param shard 分割番号
+     * @return インクリメント後の値
      */
-    private String generate(String id) {
+    private long increment(String id, int count, int shard) {
+        if (useSingleStatement) {
+            final TransactionManagerConnection connection =
+                    DbConnectionContext.getTransactionManagerConnection(dbTransactionName);
+            final DialectType type = DialectType.of(connection.getDialect());
+            final String sql = incrementReturningSqls.get(type);
+            if (sql != null) {
+                return incrementReturning(connection, type, sql, id, count, shard);
+            }
+        }
+        return incrementAndSelect(id, count, shard);
+    }
+
+    /**
+     * 更新と取得の2回のSQLで、IDに紐付くデータのインクリメント処理と対象IDのロック処理を行う。
+     *
+     * @param id 採番対象を識別するためのID
+     * @param count インクリメントする数
+     * @param shard 分割番号
+     * @return インクリメント後の値
+     */
+    private long incrementAndSelect(String id, int count, int shard) {
         AppDbConnection connection = DbConnectionContext.getConnection(dbTransactionName);
         // インクリメント、ロック
         SqlPStatement update = connection.prepareStatement(updateSql);
-        update.setString(1, id);
+        update.setInt(1, count);
+        update.setString(2, id);
+        if (shardColumnName != null) {
+            update.setInt(3, shard);
+        }
         if (update.executeUpdate() != 1) {
             // 更新対象が存在しない場合は、エラー
             throw new IllegalStateException(String.format("id was not found. id:%s", id));
@@ -129,8 +800,60 @@ public class TableIdGenerator implements IdGenerator, Initializable {
         // インクリメントしたIDを取得し返却する。
         SqlPStatement select = connection.prepareStatement(selectSql);
         select.setString(1, id);
+        if (shardColumnName != null) {
+            select.setInt(2, shard);
+        }
         SqlResultSet rs = select.retrieve(1, 1);
-        return rs.get(0).getString(noColumnName);
+        return rs.get(0).getLong(noColumnName);
+    }
+
+    /**
+     * データベース製品固有の構文を使用して、1回のSQLでIDに紐付くデータのインクリメント処理と対象IDのロック処理を行う。
+     *
+     * @param connection データベース接続
+     * @param type データベース製品
+     * @param sql インクリメントと取得を1回で行うSQL
+     * @param id 採番対象を識別するためのID
+     * @param count インクリメントする数
+     * @param shard 分割番号
+     * @return インクリメント後の値
+     */
+    private long incrementReturning(TransactionManagerConnection connection, DialectType type, String sql,
+            String id, int count, int shard) {
+        if (type.isReturningByOutParameter()) {
+            final int outIndex = shardColumnName == null ? 3 : 4;
+            final SqlCStatement statement = connection.prepareCall(sql);
+            statement.setInt(1, count);
+            statement.setString(2, id);
+            if (shardColumnName != null) {
+                statement.setInt(3, shard);
+            }
+            statement.registerOutParameter(outIndex, Types.NUMERIC);
+            statement.execute();
+            final BigDecimal no = statement.getBigDecimal(outIndex);
+            if (no == null) {
+                // 更新対象が存在しない場合は、エラー
+                throw new IllegalStateException(String.format("id was not found. id:%s", id));
+            }
+            return no.longValue();
+        }
+
+        final SqlPStatement statement = connection.prepareStatement(sql);
+        statement.setInt(1, count);
+        statement.setString(2, id);
+        if (shardColumnName != null) {
+            statement.setInt(3, shard);
+        }
+        final ResultSetIterator rs = statement.executeQuery();
+        try {
+            if (!rs.next()) {
+                // 更新対象が存在しない場合は、エラー
+                throw new IllegalStateException(String.format("id was not found. id:%s", id));
+            }
+            return rs.getLong(1);
+        } finally {
+            rs.close();
+        }
     }
 }
 
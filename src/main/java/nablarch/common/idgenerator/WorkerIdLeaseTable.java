@@ -0,0 +1,287 @@
+package nablarch.common.idgenerator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.statement.SqlPStatement;
+import nablarch.core.db.statement.SqlRow;
+import nablarch.core.db.statement.exception.DuplicateStatementException;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+
+/**
+ * ワーカーIDの貸出テーブルを操作するクラス。<br>
+ * <br>
+ * 貸出テーブルは、下記のカラムを持つこと。
+ * (カラム名は{@link #setColumnNames(String, String, String)}で変更できる。)
+ * <pre>
+ * WORKER_ID  数値型(主キー)  ワーカーID
+ * OWNER      文字列型        貸出先(ノード名とインスタンスごとの識別子)
+ * EXPIRES_AT 数値型          貸出の有効期限(エポックミリ秒)
+ * </pre>
+ * 有効期限の判定は各ノードの時刻で行うため、ノード間の時刻は同期しておくこと。<br>
+ * <br>
+ * ワーカーIDの返却時は行を削除せず、有効期限に最後に払い出した時刻を設定する。
+ * このため、有効期限は前の貸出先が払い出した値の時刻の上限となり、ワーカーIDを引き継いだ貸出先はその時刻以前の時刻で払い出さない。
+ */
+class WorkerIdLeaseTable {
+
+    /** 前の貸出先が存在しない(値を払い出していない)ことを示す時刻 */
+    static final long NEVER_ISSUED = -1L;
+
+    /** 貸出テーブル物理名 */
+    private final String tableName;
+
+    /** 貸出先 */
+    private final String owner;
+
+    /** 貸出可能なワーカーIDの最大値 */
+    private final int maxWorkerId;
+
+    /** 貸出テーブルの操作に使用するトランザクションマネージャ */
+    private final SimpleDbTransactionManager transactionManager;
+
+    /** ワーカーIDカラム物理名 */
+    private String workerIdColumnName = "WORKER_ID";
+
+    /** 貸出先カラム物理名 */
+    private String ownerColumnName = "OWNER";
+
+    /** 有効期限カラム物理名 */
+    private String expiresAtColumnName = "EXPIRES_AT";
+
+    /**
+     * コンストラクタ。
+     *
+     * @param tableName 貸出テーブル物理名
+     * @param owner 貸出先
+     * @param maxWorkerId 貸出可能なワーカーIDの最大値
+     * @param transactionManager 貸出テーブルの操作に使用するトランザクションマネージャ
+     */
+    WorkerIdLeaseTable(String tableName, String owner, int maxWorkerId,
+            SimpleDbTransactionManager transactionManager) {
+        this.tableName = tableName;
+        this.owner = owner;
+        this.maxWorkerId = maxWorkerId;
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * カラム物理名を設定する。
+     *
+     * @param workerIdColumnName ワーカーIDカラム物理名
+     * @param ownerColumnName 貸出先カラム物理名
+     * @param expiresAtColumnName 有効期限カラム物理名
+     */
+    void setColumnNames(String workerIdColumnName, String ownerColumnName, String expiresAtColumnName) {
+        this.workerIdColumnName = workerIdColumnName;
+        this.ownerColumnName = ownerColumnName;
+        this.expiresAtColumnName = expiresAtColumnName;
+    }
+
+    /**
+     * 貸出先を返却する。
+     *
+     * @return 貸出先
+     */
+    String getOwner() {
+        return owner;
+    }
+
+    /**
+     * 未使用または有効期限切れのワーカーIDを借りる。<br>
+     * 未使用のワーカーIDを小さい順に探し、存在しない場合は有効期限切れのワーカーIDを引き継ぐ。
+     * 一意制約違反でトランザクションが中断されるデータベース(PostgreSQLなど)でも次のワーカーIDを試せるよう、
+     * 貸出状況の取得と、ワーカーIDごとの借りる処理は、それぞれ個別のトランザクションで行う。
+     *
+     * @param now 現在時刻(エポックミリ秒)
+     * @param expiresAt 貸出の有効期限(エポックミリ秒)
+     * @return 借りたワーカーID
+     * @throws IllegalStateException 借りることができるワーカーIDが存在しない場合
+     */
+    Acquired acquire(long now, long expiresAt) {
+        final Map<Integer, Long> leased = findLeases();
+        for (int workerId = 0; workerId <= maxWorkerId; workerId++) {
+            if (leased.containsKey(workerId)) {
+                continue;
+            }
+            if (insert(workerId, expiresAt)) {
+                return new Acquired(workerId, NEVER_ISSUED);
+            }
+            // 他のノードが同時に同一のワーカーIDを借りた場合は、次のワーカーIDを試す。
+            leased.put(workerId, Long.MAX_VALUE);
+        }
+        for (Map.Entry<Integer, Long> entry : leased.entrySet()) {
+            if (entry.getKey() > maxWorkerId || entry.getValue() >= now) {
+                continue;
+            }
+            if (takeOver(entry.getKey(), entry.getValue(), expiresAt)) {
+                return new Acquired(entry.getKey(), entry.getValue());
+            }
+        }
+        throw new IllegalStateException(String.format(
+                "no worker id is available. table = %s, max worker id = %d", tableName, maxWorkerId));
+    }
+
+    /**
+     * 貸出テーブルから、ワーカーIDごとの有効期限を取得する。
+     *
+     * @return ワーカーIDごとの有効期限(エポックミリ秒)
+     */
+    Map<Integer, Long> findLeases() {
+        return new SimpleDbTransactionExecutor<Map<Integer, Long>>(transactionManager) {
+            @Override
+            public Map<Integer, Long> execute(AppDbConnection connection) {
+                final Map<Integer, Long> leased = new HashMap<Integer, Long>();
+                final SqlPStatement select = connection.prepareStatement(
+                        "SELECT " + workerIdColumnName + ", " + expiresAtColumnName + " FROM " + tableName);
+                for (SqlRow row : select.retrieve()) {
+                    leased.put(row.getInteger(workerIdColumnName), row.getLong(expiresAtColumnName));
+                }
+                return leased;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * 未使用のワーカーIDを新たなトランザクションで登録する。
+     *
+     * @param workerId ワーカーID
+     * @param expiresAt 貸出の有効期限(エポックミリ秒)
+     * @return 登録できた場合は{@code true}。他のノードが先に登録していた場合は{@code false}
+     */
+    private boolean insert(final int workerId, final long expiresAt) {
+        try {
+            new SimpleDbTransactionExecutor<Void>(transactionManager) {
+                @Override
+                public Void execute(AppDbConnection connection) {
+                    final SqlPStatement insert = connection.prepareStatement(
+                            "INSERT INTO " + tableName + " (" + workerIdColumnName + ", " + ownerColumnName + ", "
+                                    + expiresAtColumnName + ") VALUES (?, ?, ?)");
+                    insert.setInt(1, workerId);
+                    insert.setString(2, owner);
+                    insert.setLong(3, expiresAt);
+                    insert.executeUpdate();
+                    return null;
+                }
+            }.doTransaction();
+            return true;
+        } catch (DuplicateStatementException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 有効期限切れのワーカーIDを新たなトランザクションで引き継ぐ。<br>
+     * 有効期限が読み込んだ時点から変わっていない場合のみ引き継ぐ。
+     *
+     * @param workerId ワーカーID
+     * @param lastExpiresAt 読み込んだ時点の有効期限(エポックミリ秒)
+     * @param expiresAt 貸出の有効期限(エポックミリ秒)
+     * @return 引き継いだ場合は{@code true}
+     */
+    private boolean takeOver(final int workerId, final long lastExpiresAt, final long expiresAt) {
+        return new SimpleDbTransactionExecutor<Boolean>(transactionManager) {
+            @Override
+            public Boolean execute(AppDbConnection connection) {
+                final SqlPStatement takeOver = connection.prepareStatement(
+                        "UPDATE " + tableName + " SET " + ownerColumnName + " = ?, " + expiresAtColumnName + " = ?"
+                                + " WHERE " + workerIdColumnName + " = ? AND " + expiresAtColumnName + " = ?");
+                takeOver.setString(1, owner);
+                takeOver.setLong(2, expiresAt);
+                takeOver.setInt(3, workerId);
+                takeOver.setLong(4, lastExpiresAt);
+                return takeOver.executeUpdate() == 1;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * ワーカーIDの貸出を延長する。
+     *
+     * @param workerId ワーカーID
+     * @param expiresAt 延長後の有効期限(エポックミリ秒)
+     * @return 延長できた場合は{@code true}。他のノードに引き継がれていた場合は{@code false}
+     */
+    boolean renew(final int workerId, final long expiresAt) {
+        return new SimpleDbTransactionExecutor<Boolean>(transactionManager) {
+            @Override
+            public Boolean execute(AppDbConnection connection) {
+                final SqlPStatement update = connection.prepareStatement(
+                        "UPDATE " + tableName + " SET " + expiresAtColumnName + " = ?"
+                                + " WHERE " + workerIdColumnName + " = ? AND " + ownerColumnName + " = ?");
+                update.setLong(1, expiresAt);
+                update.setInt(2, workerId);
+                update.setString(3, owner);
+                return update.executeUpdate() == 1;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * ワーカーIDを返却する。<br>
+     * 行は削除せず、有効期限に最後に払い出した時刻を設定する。
+     * これにより、ワーカーIDは直ちに有効期限切れとなり、引き継いだ貸出先は最後に払い出した時刻を知ることができる。
+     *
+     * @param workerId ワーカーID
+     * @param lastIssuedMillis 最後に払い出した時刻(エポックミリ秒)
+     */
+    void release(final int workerId, final long lastIssuedMillis) {
+        new SimpleDbTransactionExecutor<Void>(transactionManager) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                final SqlPStatement update = connection.prepareStatement(
+                        "UPDATE " + tableName + " SET " + expiresAtColumnName + " = ?"
+                                + " WHERE " + workerIdColumnName + " = ? AND " + ownerColumnName + " = ?");
+                update.setLong(1, lastIssuedMillis);
+                update.setInt(2, workerId);
+                update.setString(3, owner);
+                update.executeUpdate();
+                return null;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * 借りたワーカーIDと、前の貸出先が払い出した値の時刻の上限。
+     */
+    static final class Acquired {
+
+        /** ワーカーID */
+        private final int workerId;
+
+        /** 前の貸出先が払い出した値の時刻の上限(エポックミリ秒)。前の貸出先が存在しない場合は{@link #NEVER_ISSUED} */
+        private final long lastIssuedMillis;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param workerId ワーカーID
+         * @param lastIssuedMillis 前の貸出先が払い出した値の時刻の上限(エポックミリ秒)
+         */
+        private Acquired(int workerId, long lastIssuedMillis) {
+            this.workerId = workerId;
+            this.lastIssuedMillis = lastIssuedMillis;
+        }
+
+        /**
+         * ワーカーIDを返却する。
+         *
+         * @return ワーカーID
+         */
+        int getWorkerId() {
+            return workerId;
+        }
+
+        /**
+         * 前の貸出先が払い出した値の時刻の上限を返却する。<br>
+         * 引き継いだワーカーIDの場合は、引き継ぐ前の有効期限となる。
+         *
+         * @return 時刻の上限(エポックミリ秒)。前の貸出先が存在しない場合は{@link #NEVER_ISSUED}
+         */
+        long getLastIssuedMillis() {
+            return lastIssuedMillis;
+        }
+    }
+}
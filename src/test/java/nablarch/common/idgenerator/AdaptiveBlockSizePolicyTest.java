@@ -0,0 +1,86 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link AdaptiveBlockSizePolicy}のテストクラス。
+ */
+public class AdaptiveBlockSizePolicyTest {
+
+    /** テスト対象 */
+    private AdaptiveBlockSizePolicy sut = new AdaptiveBlockSizePolicy();
+
+    @Before
+    public void setUp() {
+        sut.setMinBlockSize(10);
+        sut.setMaxBlockSize(100);
+        sut.setTargetIntervalMillis(1000L);
+    }
+
+    /**
+     * 初回の予約時は最小値が返却されること。
+     */
+    @Test
+    public void firstReservation() {
+        assertThat(sut.nextBlockSize("01", 0, -1L), is(10));
+    }
+
+    /**
+     * 目標間隔の半分未満で消費された場合は倍になり、最大値を超えないこと。
+     */
+    @Test
+    public void grow() {
+        assertThat(sut.nextBlockSize("01", 10, 100L), is(20));
+        assertThat(sut.nextBlockSize("01", 40, 499L), is(80));
+        assertThat(sut.nextBlockSize("01", 80, 0L), is(100));
+    }
+
+    /**
+     * 目標間隔の前後で消費された場合は変わらないこと。
+     */
+    @Test
+    public void keep() {
+        assertThat(sut.nextBlockSize("01", 40, 500L), is(40));
+        assertThat(sut.nextBlockSize("01", 40, 1000L), is(40));
+        assertThat(sut.nextBlockSize("01", 40, 2000L), is(40));
+    }
+
+    /**
+     * 目標間隔の2倍を超えて消費された場合は経過時間に反比例して縮小し、最小値を下回らないこと。
+     */
+    @Test
+    public void shrink() {
+        assertThat(sut.nextBlockSize("01", 100, 4000L), is(25));
+        assertThat(sut.nextBlockSize("01", 100, 60000L), is(10));
+    }
+
+    /**
+     * 不正な設定値は指定できないこと。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMinBlockSize() {
+        sut.setMinBlockSize(0);
+    }
+
+    /**
+     * 最小値に最大値より大きい値が設定された場合は、ブロックサイズの決定時に例外が送出されること。
+     */
+    @Test
+    public void minGreaterThanMax() {
+        sut.setMinBlockSize(101);
+        try {
+            sut.nextBlockSize("01", 0, -1L);
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is(
+                    "minBlockSize must be less than or equal to maxBlockSize. minBlockSize = 101, maxBlockSize = 100"));
+        }
+        sut.setMaxBlockSize(101);
+        assertThat(sut.nextBlockSize("01", 0, -1L), is(101));
+    }
+}
@@ -0,0 +1,260 @@
+package nablarch.common.idgenerator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 複数スレッド、複数ノードから同時に採番し、払い出されたIDの一意性を検証するための負荷ハーネス。<br>
+ * <br>
+ * ノードは採番処理({@link Generation})で表す。ノードごとに別のトランザクションマネージャを使用した採番処理を渡すことで、
+ * 複数のAPサーバから同一の採番テーブルを使用する構成を模擬できる。
+ * スレッドはノードに順に割り当てる。<br>
+ * <br>
+ * 払い出されたIDは{@link IssuedIdBitmap}に記録し、重複、欠番、スレッド内での単調増加の違反を検出する。
+ * あわせて、スループット、採番処理の所要時間、ロック待ち時間を集計する。
+ * ロック待ち時間はJVMのスレッド競合監視(ブロック時間と待機時間の合計)で計測するため、
+ * 組み込みデータベースの行ロック待ちも含まれる。
+ */
+class ConcurrentGenerationHarness {
+
+    /**
+     * ノード上での採番処理。
+     */
+    interface Generation {
+
+        /**
+         * 採番する。
+         *
+         * @return 採番結果
+         */
+        long generate();
+    }
+
+    /** スレッド数 */
+    private final int threadCount;
+
+    /** スレッドごとの採番回数 */
+    private final int idsPerThread;
+
+    /**
+     * コンストラクタ。
+     *
+     * @param threadCount スレッド数
+     * @param idsPerThread スレッドごとの採番回数
+     */
+    ConcurrentGenerationHarness(int threadCount, int idsPerThread) {
+        this.threadCount = threadCount;
+        this.idsPerThread = idsPerThread;
+    }
+
+    /**
+     * 負荷をかける。
+     *
+     * @param nodes ノードごとの採番処理
+     * @param base 払い出されるIDの最小値
+     * @param capacity 記録するIDの数(欠番を含めて払い出される可能性がある数)
+     * @return 結果
+     * @throws InterruptedException 割り込まれた場合
+     */
+    Result run(List<Generation> nodes, long base, long capacity) throws InterruptedException {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final boolean contentionMonitoring = threadMXBean.isThreadContentionMonitoringSupported();
+        if (contentionMonitoring) {
+            threadMXBean.setThreadContentionMonitoringEnabled(true);
+        }
+
+        final IssuedIdBitmap bitmap = new IssuedIdBitmap(base, capacity);
+        final AtomicLong generated = new AtomicLong();
+        final AtomicLong nonMonotonic = new AtomicLong();
+        final AtomicLong generationNanos = new AtomicLong();
+        final AtomicLong maxLatencyNanos = new AtomicLong();
+        final AtomicLong lockWaitMillis = new AtomicLong();
+        final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threadCount);
+
+        final List<Thread> threads = new ArrayList<Thread>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final Generation generation = nodes.get(i % nodes.size());
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        final long waitedBefore = lockWaitMillis(threadMXBean, contentionMonitoring);
+                        long last = Long.MIN_VALUE;
+                        long elapsed = 0L;
+                        long maxLatency = 0L;
+                        for (int j = 0; j < idsPerThread; j++) {
+                            final long startNanos = System.nanoTime();
+                            final long id = generation.generate();
+                            final long latency = System.nanoTime() - startNanos;
+                            elapsed += latency;
+                            maxLatency = Math.max(maxLatency, latency);
+                            bitmap.add(id);
+                            if (id <= last) {
+                                nonMonotonic.incrementAndGet();
+                            }
+                            last = id;
+                        }
+                        generated.addAndGet(idsPerThread);
+                        generationNanos.addAndGet(elapsed);
+                        updateMax(maxLatencyNanos, maxLatency);
+                        lockWaitMillis.addAndGet(lockWaitMillis(threadMXBean, contentionMonitoring) - waitedBefore);
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    } finally {
+                        end.countDown();
+                    }
+                }
+            }, "generation-harness-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        end.await();
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return new Result(bitmap, generated.get(), nonMonotonic.get(), new ArrayList<Throwable>(failures), elapsedNanos,
+                generationNanos.get(), maxLatencyNanos.get(), contentionMonitoring ? lockWaitMillis.get() : -1L);
+    }
+
+    /**
+     * 現在のスレッドのブロック時間と待機時間の合計を返却する。
+     *
+     * @param threadMXBean スレッドのMXBean
+     * @param contentionMonitoring スレッド競合監視が有効か否か
+     * @return ブロック時間と待機時間の合計(ミリ秒)
+     */
+    private static long lockWaitMillis(ThreadMXBean threadMXBean, boolean contentionMonitoring) {
+        if (!contentionMonitoring) {
+            return 0L;
+        }
+        final ThreadInfo info = threadMXBean.getThreadInfo(Thread.currentThread().getId());
+        return Math.max(info.getBlockedTime(), 0L) + Math.max(info.getWaitedTime(), 0L);
+    }
+
+    /**
+     * 最大値を更新する。
+     *
+     * @param max 最大値
+     * @param value 値
+     */
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * 負荷をかけた結果。
+     */
+    static final class Result {
+
+        /** 払い出されたID */
+        private final IssuedIdBitmap bitmap;
+
+        /** 採番できた回数(全ての採番が完了したスレッドのみ) */
+        private final long generatedCount;
+
+        /** スレッド内で単調増加しなかった回数 */
+        private final long nonMonotonicCount;
+
+        /** 採番処理で発生した例外 */
+        private final List<Throwable> failures;
+
+        /** 全体の所要時間(ナノ秒) */
+        private final long elapsedNanos;
+
+        /** 採番処理の所要時間の合計(ナノ秒) */
+        private final long generationNanos;
+
+        /** 採番処理1回の最大所要時間(ナノ秒) */
+        private final long maxLatencyNanos;
+
+        /** ロック待ち時間の合計(ミリ秒) */
+        private final long lockWaitMillis;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param bitmap 払い出されたID
+         * @param generatedCount 採番できた回数
+         * @param nonMonotonicCount スレッド内で単調増加しなかった回数
+         * @param failures 採番処理で発生した例外
+         * @param elapsedNanos 全体の所要時間(ナノ秒)
+         * @param generationNanos 採番処理の所要時間の合計(ナノ秒)
+         * @param maxLatencyNanos 採番処理1回の最大所要時間(ナノ秒)
+         * @param lockWaitMillis ロック待ち時間の合計(ミリ秒)。計測できない場合は-1
+         */
+        Result(IssuedIdBitmap bitmap, long generatedCount, long nonMonotonicCount, List<Throwable> failures, long elapsedNanos,
+                long generationNanos, long maxLatencyNanos, long lockWaitMillis) {
+            this.bitmap = bitmap;
+            this.generatedCount = generatedCount;
+            this.nonMonotonicCount = nonMonotonicCount;
+            this.failures = Collections.unmodifiableList(failures);
+            this.elapsedNanos = elapsedNanos;
+            this.generationNanos = generationNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.lockWaitMillis = lockWaitMillis;
+        }
+
+        long getGeneratedCount() {
+            return generatedCount;
+        }
+
+        long getDuplicateCount() {
+            return bitmap.getDuplicateCount();
+        }
+
+        long getGapCount() {
+            return bitmap.getGapCount();
+        }
+
+        long getOutOfRangeCount() {
+            return bitmap.getOutOfRangeCount();
+        }
+
+        long getMaxId() {
+            return bitmap.getMax();
+        }
+
+        long getNonMonotonicCount() {
+            return nonMonotonicCount;
+        }
+
+        List<Throwable> getFailures() {
+            return failures;
+        }
+
+        double getThroughput() {
+            return elapsedNanos == 0L ? 0.0 : generatedCount * 1000000000.0 / elapsedNanos;
+        }
+
+        long getLockWaitMillis() {
+            return lockWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("generated=%d, duplicates=%d, gaps=%d, outOfRange=%d, nonMonotonic=%d, failures=%d, "
+                            + "throughput=%.1f ids/s, meanLatency=%.1f us, maxLatency=%.1f us, lockWait=%d ms",
+                    generatedCount, getDuplicateCount(), getGapCount(), getOutOfRangeCount(), nonMonotonicCount, failures.size(),
+                    getThroughput(), generatedCount == 0L ? 0.0 : generationNanos / 1000.0 / generatedCount,
+                    maxLatencyNanos / 1000.0, lockWaitMillis);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.test.support.SystemRepositoryResource;
+import nablarch.test.support.db.helper.DatabaseTestRunner;
+import nablarch.test.support.db.helper.VariousDbTestHelper;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 複数スレッド、複数ノードから同時に採番した場合に、IDが一意かつスレッド内で単調増加することのテスト。
+ */
+@RunWith(DatabaseTestRunner.class)
+public class ConcurrentGenerationTest {
+
+    @Rule
+    public SystemRepositoryResource repositoryResource = new SystemRepositoryResource(
+            "nablarch/common/idgenerator/ConcurrentGenerationTest.xml");
+
+    @BeforeClass
+    public static void classSetup() throws SQLException {
+        VariousDbTestHelper.createTable(SbnTbl.class);
+    }
+
+    /**
+     * {@link TableIdGenerator}のテスト。
+     * ノードごとの業務トランザクション内で採番した場合に、重複も欠番もないこと。
+     */
+    @Test
+    public void tableIdGenerator() throws Exception {
+        VariousDbTestHelper.setUpTable(new SbnTbl("01", new BigDecimal(100L)));
+
+        final TableIdGenerator generator = repositoryResource.getComponent("table");
+        final List<ConcurrentGenerationHarness.Generation> nodes = new ArrayList<ConcurrentGenerationHarness.Generation>();
+        for (String name : new String[] {"node1-business", "node2-business"}) {
+            final SimpleDbTransactionManager transactionManager = repositoryResource.getComponent(name);
+            nodes.add(new ConcurrentGenerationHarness.Generation() {
+                @Override
+                public long generate() {
+                    return new SimpleDbTransactionExecutor<Long>(transactionManager) {
+                        @Override
+                        public Long execute(AppDbConnection connection) {
+                            return generator.generateLongId("01");
+                        }
+                    }.doTransaction();
+                }
+            });
+        }
+
+        final ConcurrentGenerationHarness.Result result = new ConcurrentGenerationHarness(4, 200).run(nodes, 101L, 800L);
+
+        assertUnique(result, 800L);
+        assertThat(result.toString(), result.getGapCount(), is(0L));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(900L)));
+    }
+
+    /**
+     * {@link FastTableIdGenerator}のテスト。
+     * 1件ごとに採番テーブルを更新するノードから採番した場合に、重複も欠番もないこと。
+     */
+    @Test
+    public void fastTableIdGenerator() throws Exception {
+        VariousDbTestHelper.setUpTable(new SbnTbl("01", new BigDecimal(0L)));
+
+        final List<ConcurrentGenerationHarness.Generation> nodes = new ArrayList<ConcurrentGenerationHarness.Generation>();
+        nodes.add(generation((LongIdGenerator) repositoryResource.getComponent("node1-fast"), "01"));
+        nodes.add(generation((LongIdGenerator) repositoryResource.getComponent("node2-fast"), "01"));
+
+        final ConcurrentGenerationHarness.Result result = new ConcurrentGenerationHarness(8, 500).run(nodes, 1L, 4000L);
+
+        assertUnique(result, 4000L);
+        assertThat(result.toString(), result.getGapCount(), is(0L));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(4000L)));
+    }
+
+    /**
+     * {@link FastTableIdGenerator}のテスト。
+     * ブロック単位で予約し、先読みするノードから採番した場合に、重複がなく、
+     * 欠番がノードごとに未払い出しのブロック(使用中と先読み済み)の範囲内であること。
+     */
+    @Test
+    public void fastTableIdGeneratorWithBlock() throws Exception {
+        VariousDbTestHelper.setUpTable(new SbnTbl("01", new BigDecimal(0L)));
+
+        final List<ConcurrentGenerationHarness.Generation> nodes = new ArrayList<ConcurrentGenerationHarness.Generation>();
+        nodes.add(generation((LongIdGenerator) repositoryResource.getComponent("node1-block"), "01"));
+        nodes.add(generation((LongIdGenerator) repositoryResource.getComponent("node2-block"), "01"));
+
+        final ConcurrentGenerationHarness.Result result = new ConcurrentGenerationHarness(8, 1000).run(nodes, 1L, 8200L);
+
+        assertUnique(result, 8000L);
+        assertThat(result.toString(), result.getGapCount() <= 2L * 2L * 20L, is(true));
+    }
+
+    /**
+     * {@link FastTableIdGenerator}のテスト。
+     * 同時の採番をまとめるノードから採番した場合に、重複も欠番もないこと。
+     */
+    @Test
+    public void fastTableIdGeneratorWithCoalescing() throws Exception {
+        VariousDbTestHelper.setUpTable(new SbnTbl("01", new BigDecimal(0L)));
+
+        final List<ConcurrentGenerationHarness.Generation> nodes = new ArrayList<ConcurrentGenerationHarness.Generation>();
+        nodes.add(generation((LongIdGenerator) repositoryResource.getComponent("node1-coalescing"), "01"));
+        nodes.add(generation((LongIdGenerator) repositoryResource.getComponent("node2-coalescing"), "01"));
+
+        final ConcurrentGenerationHarness.Result result = new ConcurrentGenerationHarness(16, 200).run(nodes, 1L, 3200L);
+
+        assertUnique(result, 3200L);
+        assertThat(result.toString(), result.getGapCount(), is(0L));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(3200L)));
+    }
+
+    /**
+     * 採番処理を生成する。
+     *
+     * @param generator 採番クラス
+     * @param id 採番対象ID
+     * @return 採番処理
+     */
+    private static ConcurrentGenerationHarness.Generation generation(final LongIdGenerator generator, final String id) {
+        return new ConcurrentGenerationHarness.Generation() {
+            @Override
+            public long generate() {
+                return generator.generateLongId(id);
+            }
+        };
+    }
+
+    /**
+     * 全ての採番が成功し、IDが一意かつスレッド内で単調増加していることを検証する。
+     *
+     * @param result 結果
+     * @param expectedCount 採番回数
+     */
+    private static void assertUnique(ConcurrentGenerationHarness.Result result, long expectedCount) {
+        assertThat(result.toString(), result.getFailures().isEmpty(), is(true));
+        assertThat(result.toString(), result.getGeneratedCount(), is(expectedCount));
+        assertThat(result.toString(), result.getDuplicateCount(), is(0L));
+        assertThat(result.toString(), result.getOutOfRangeCount(), is(0L));
+        assertThat(result.toString(), result.getNonMonotonicCount(), is(0L));
+    }
+}
@@ -0,0 +1,33 @@
+package nablarch.common.idgenerator;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * カラム名を変更したノード登録テーブル
+ */
+@Entity
+@Table(name = "CUSTOM_NODE_REGISTRY")
+public class CustomNodeRegistryTbl {
+
+    public CustomNodeRegistryTbl() {
+    }
+
+    public CustomNodeRegistryTbl(Integer nodeNo, String hostName, Integer nodeCount) {
+        this.nodeNo = nodeNo;
+        this.hostName = hostName;
+        this.nodeCount = nodeCount;
+    }
+
+    @Id
+    @Column(name = "NODE_NO", length = 3, nullable = false)
+    public Integer nodeNo;
+
+    @Column(name = "HOST_NAME", length = 64, nullable = false)
+    public String hostName;
+
+    @Column(name = "NODE_COUNT", length = 3, nullable = false)
+    public Integer nodeCount;
+}
@@ -0,0 +1,33 @@
+package nablarch.common.idgenerator;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * カラム名を変更したワーカーID貸出テーブル
+ */
+@Entity
+@Table(name = "CUSTOM_WORKER_ID_LEASE")
+public class CustomWorkerIdLeaseTbl {
+
+    public CustomWorkerIdLeaseTbl() {
+    }
+
+    public CustomWorkerIdLeaseTbl(Integer workerNo, String leasedBy, Long leaseUntil) {
+        this.workerNo = workerNo;
+        this.leasedBy = leasedBy;
+        this.leaseUntil = leaseUntil;
+    }
+
+    @Id
+    @Column(name = "WORKER_NO", length = 4, nullable = false)
+    public Integer workerNo;
+
+    @Column(name = "LEASED_BY", length = 128, nullable = false)
+    public String leasedBy;
+
+    @Column(name = "LEASE_UNTIL", length = 19, nullable = false)
+    public Long leaseUntil;
+}
@@ -0,0 +1,201 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.test.support.SystemRepositoryResource;
+import nablarch.test.support.db.helper.DatabaseTestRunner;
+import nablarch.test.support.db.helper.VariousDbTestHelper;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * {@link DeferredIdTransactionFactory}と{@link TableIdGenerator#generateDeferredId(String)}のテストクラス。
+ */
+@RunWith(DatabaseTestRunner.class)
+public class DeferredIdTransactionFactoryTest {
+
+    @Rule
+    public SystemRepositoryResource repositoryResource = new SystemRepositoryResource(
+            "nablarch/common/idgenerator/DeferredIdTransactionFactoryTest.xml");
+
+    @BeforeClass
+    public static void classSetup() {
+        VariousDbTestHelper.createTable(SbnTbl.class);
+    }
+
+    /**
+     * コミット時に採番されること。
+     * コミット前は採番テーブルは更新されず、値も取得できないこと。
+     * 同一の採番対象IDは保留した順に値が割り当てられ、コールバックがコミット前に呼び出されること。
+     */
+    @Test
+    public void generateAtCommit() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final List<String> called = new ArrayList<String>();
+        final TableIdGenerator generator = repositoryResource.getComponent("idgenerator-deferred");
+        generator.initialize();
+        final SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-deferred");
+        db.beginTransaction();
+        final DeferredId first;
+        final DeferredId second;
+        final DeferredId other;
+        try {
+            other = generator.generateDeferredId("02");
+            first = generator.generateDeferredId("01");
+            second = generator.generateDeferredId("01", new DeferredIdCallback() {
+                @Override
+                public void generated(String id, long value) {
+                    called.add(id + ":" + value);
+                }
+            });
+
+            // コミット前は採番されていないこと
+            assertThat(first.isGenerated(), is(false));
+            try {
+                first.getValue();
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is(
+                        "id has not been generated yet. it is generated when the transaction is committed. id = 01"));
+            }
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(100L)));
+
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        assertThat(first.getValue(), is(101L));
+        assertThat(second.getValue(), is(102L));
+        assertThat(other.getValue(), is(1L));
+        assertThat(called.toString(), is("[01:102]"));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(102L)));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(BigDecimal.ONE));
+    }
+
+    /**
+     * ロールバックした場合は採番されず、次のトランザクションで抜け番なく採番されること。
+     */
+    @Test
+    public void rollback() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)));
+
+        final TableIdGenerator generator = repositoryResource.getComponent("idgenerator-deferred");
+        generator.initialize();
+        final SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-deferred");
+        db.beginTransaction();
+        final DeferredId rolledBack;
+        try {
+            rolledBack = generator.generateDeferredId("01");
+            db.rollbackTransaction();
+        } finally {
+            db.endTransaction();
+        }
+        assertThat(rolledBack.isGenerated(), is(false));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(100L)));
+
+        db.beginTransaction();
+        final DeferredId committed;
+        try {
+            committed = generator.generateDeferredId("01");
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+        assertThat(committed.getValue(), is(101L));
+    }
+
+    /**
+     * コールバックで例外が発生した場合は、コミットされず、値も設定されないこと。
+     */
+    @Test
+    public void callbackFailed() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)));
+
+        final TableIdGenerator generator = repositoryResource.getComponent("idgenerator-deferred");
+        generator.initialize();
+        final SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-deferred");
+        db.beginTransaction();
+        DeferredId deferredId = null;
+        try {
+            deferredId = generator.generateDeferredId("01", new DeferredIdCallback() {
+                @Override
+                public void generated(String id, long value) {
+                    throw new IllegalStateException("callback failed.");
+                }
+            });
+            db.commitTransaction();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("callback failed."));
+        } finally {
+            db.endTransaction();
+        }
+        assertThat(deferredId.isGenerated(), is(false));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(100L)));
+    }
+
+    /**
+     * 一部の採番対象IDの採番に失敗した場合は、コミットされず、採番済みの採番対象IDも含めて値が設定されないこと。
+     */
+    @Test
+    public void generateFailed() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)));
+
+        final TableIdGenerator generator = repositoryResource.getComponent("idgenerator-deferred");
+        generator.initialize();
+        final SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-deferred");
+        db.beginTransaction();
+        DeferredId generated = null;
+        DeferredId notFound = null;
+        try {
+            generated = generator.generateDeferredId("01");
+            notFound = generator.generateDeferredId("99");
+            db.commitTransaction();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("id was not found. id:99"));
+        } finally {
+            db.endTransaction();
+        }
+        assertThat(generated.isGenerated(), is(false));
+        assertThat(notFound.isGenerated(), is(false));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(100L)));
+    }
+
+    /**
+     * 業務トランザクションが{@link DeferredIdTransactionFactory}で生成されていない場合、例外が送出されること。
+     */
+    @Test
+    public void withoutDeferredIdTransactionFactory() throws Exception {
+        final TableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        generator.initialize();
+        final SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        try {
+            generator.generateDeferredId("01");
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is(
+                    "deferred numbering requires DeferredIdTransactionFactory. transaction name = transaction"));
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
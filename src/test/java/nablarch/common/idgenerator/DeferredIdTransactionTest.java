@@ -0,0 +1,165 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nablarch.core.transaction.Transaction;
+
+import org.junit.Test;
+
+/**
+ * {@link DeferredIdTransaction}のテストクラス。
+ */
+public class DeferredIdTransactionTest {
+
+    /** 採番テーブルの更新とコミットの順序 */
+    private final List<String> log = new ArrayList<String>();
+
+    /**
+     * 保留中の採番が、採番クラスの登録順に関わらず採番テーブル名、採番対象IDの昇順に行われ、
+     * コミットの後に値が設定されること。
+     */
+    @Test
+    public void commitInTableAndIdOrder() {
+        final DeferredIdTransaction sut = new DeferredIdTransaction(createTransaction(false));
+        final TableIdGenerator b = createGenerator("b_tbl", null);
+        final TableIdGenerator a = createGenerator("a_tbl", null);
+        sut.begin();
+        final DeferredId b02 = defer(sut, b, "02");
+        final DeferredId a02 = defer(sut, a, "02");
+        final DeferredId b01 = defer(sut, b, "01");
+        final DeferredId a01 = defer(sut, a, "01");
+        final DeferredId a02second = defer(sut, a, "02");
+        sut.commit();
+
+        assertThat(log.toString(), is("[reserve A_TBL 01 1, reserve A_TBL 02 2, reserve B_TBL 01 1, "
+                + "reserve B_TBL 02 1, commit]"));
+        assertThat(a01.getValue(), is(1L));
+        assertThat(a02.getValue(), is(1L));
+        assertThat(a02second.getValue(), is(2L));
+        assertThat(b01.getValue(), is(1L));
+        assertThat(b02.getValue(), is(1L));
+    }
+
+    /**
+     * 採番に失敗した場合は、コミットされず、採番済みの採番対象IDも含めて値が設定されないこと。
+     */
+    @Test
+    public void reserveFailed() {
+        final DeferredIdTransaction sut = new DeferredIdTransaction(createTransaction(false));
+        final TableIdGenerator generator = createGenerator("sbn_tbl", "02");
+        sut.begin();
+        final DeferredId first = defer(sut, generator, "01");
+        final DeferredId second = defer(sut, generator, "02");
+        try {
+            sut.commit();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("id was not found. id:02"));
+        }
+        assertThat(log.toString(), is("[reserve SBN_TBL 01 1]"));
+        assertThat(first.isGenerated(), is(false));
+        assertThat(second.isGenerated(), is(false));
+    }
+
+    /**
+     * コミットに失敗した場合は、値が設定されないこと。
+     */
+    @Test
+    public void commitFailed() {
+        final DeferredIdTransaction sut = new DeferredIdTransaction(createTransaction(true));
+        final TableIdGenerator generator = createGenerator("sbn_tbl", null);
+        sut.begin();
+        final DeferredId deferredId = defer(sut, generator, "01");
+        try {
+            sut.commit();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("commit failed."));
+        }
+        assertThat(deferredId.isGenerated(), is(false));
+    }
+
+    /**
+     * ロールバックした場合は、保留中の採番が破棄されること。
+     */
+    @Test
+    public void rollback() {
+        final DeferredIdTransaction sut = new DeferredIdTransaction(createTransaction(false));
+        final TableIdGenerator generator = createGenerator("sbn_tbl", null);
+        sut.begin();
+        final DeferredId deferredId = defer(sut, generator, "01");
+        sut.rollback();
+        sut.commit();
+
+        assertThat(log.toString(), is("[rollback, commit]"));
+        assertThat(deferredId.isGenerated(), is(false));
+    }
+
+    /**
+     * 採番を保留する。
+     *
+     * @param sut テスト対象
+     * @param generator 採番クラス
+     * @param id 採番対象を識別するID
+     * @return コミット時に採番される値
+     */
+    private static DeferredId defer(DeferredIdTransaction sut, TableIdGenerator generator, String id) {
+        final DeferredId deferredId = new DeferredId(id, null);
+        sut.defer(generator, deferredId);
+        return deferredId;
+    }
+
+    /**
+     * 採番テーブルの更新を記録する採番クラスを生成する。
+     *
+     * @param tableName 採番テーブル物理名
+     * @param unknownId 存在しない採番対象ID(nullの場合は全て存在する)
+     * @return 採番クラス
+     */
+    private TableIdGenerator createGenerator(String tableName, final String unknownId) {
+        final TableIdGenerator generator = new TableIdGenerator() {
+            @Override
+            IdRange reserve(String id, int count) {
+                if (id.equals(unknownId)) {
+                    throw new IllegalStateException(String.format("id was not found. id:%s", id));
+                }
+                log.add("reserve " + getTableName() + " " + id + " " + count);
+                return new IdRange(1L, count);
+            }
+        };
+        generator.setTableName(tableName);
+        return generator;
+    }
+
+    /**
+     * コミットとロールバックを記録するトランザクションを生成する。
+     *
+     * @param failOnCommit コミットで例外を送出する場合は{@code true}
+     * @return トランザクション
+     */
+    private Transaction createTransaction(final boolean failOnCommit) {
+        return new Transaction() {
+            @Override
+            public void begin() {
+            }
+
+            @Override
+            public void commit() {
+                if (failOnCommit) {
+                    throw new IllegalStateException("commit failed.");
+                }
+                log.add("commit");
+            }
+
+            @Override
+            public void rollback() {
+                log.add("rollback");
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import nablarch.core.db.dialect.DB2Dialect;
+import nablarch.core.db.dialect.DefaultDialect;
+import nablarch.core.db.dialect.H2Dialect;
+import nablarch.core.db.dialect.OracleDialect;
+import nablarch.core.db.dialect.PostgreSQLDialect;
+import nablarch.core.db.dialect.SqlServerDialect;
+
+import org.junit.Test;
+
+/**
+ * {@link DialectType}のテストクラス。
+ */
+public class DialectTypeTest {
+
+    /**
+     * ダイアレクトからデータベース製品が判定できること。
+     */
+    @Test
+    public void of() {
+        assertThat(DialectType.of(new H2Dialect()), is(DialectType.H2));
+        assertThat(DialectType.of(new PostgreSQLDialect()), is(DialectType.POSTGRESQL));
+        assertThat(DialectType.of(new OracleDialect()), is(DialectType.ORACLE));
+        assertThat(DialectType.of(new SqlServerDialect()), is(DialectType.SQLSERVER));
+        assertThat(DialectType.of(new DB2Dialect()), is(DialectType.DB2));
+        assertThat(DialectType.of(new DefaultDialect()), is(DialectType.OTHER));
+    }
+
+    /**
+     * データベース製品ごとのインクリメントと取得を1回で行うSQLが組み立てられること。
+     */
+    @Test
+    public void buildIncrementReturningSql() {
+        assertThat(DialectType.H2.buildIncrementReturningSql("SBN_TBL", "ID_COL", "NO_COL"),
+                is("SELECT NO_COL FROM FINAL TABLE (UPDATE SBN_TBL SET NO_COL = NO_COL + ? WHERE ID_COL = ?)"));
+        assertThat(DialectType.POSTGRESQL.buildIncrementReturningSql("SBN_TBL", "ID_COL", "NO_COL"),
+                is("UPDATE SBN_TBL SET NO_COL = NO_COL + ? WHERE ID_COL = ? RETURNING NO_COL"));
+        assertThat(DialectType.ORACLE.buildIncrementReturningSql("SBN_TBL", "ID_COL", "NO_COL"),
+                is("BEGIN UPDATE SBN_TBL SET NO_COL = NO_COL + ? WHERE ID_COL = ? RETURNING NO_COL INTO ?; END;"));
+        assertThat(DialectType.SQLSERVER.buildIncrementReturningSql("SBN_TBL", "ID_COL", "NO_COL"),
+                is("UPDATE SBN_TBL SET NO_COL = NO_COL + ? OUTPUT INSERTED.NO_COL WHERE ID_COL = ?"));
+        assertThat(DialectType.DB2.buildIncrementReturningSql("SBN_TBL", "ID_COL", "NO_COL"),
+                is("SELECT NO_COL FROM FINAL TABLE (UPDATE SBN_TBL SET NO_COL = NO_COL + ? WHERE ID_COL = ?)"));
+        assertThat(DialectType.OTHER.buildIncrementReturningSql("SBN_TBL", "ID_COL", "NO_COL"), is(nullValue()));
+
+        assertThat(DialectType.ORACLE.isReturningByOutParameter(), is(true));
+        assertThat(DialectType.H2.isReturningByOutParameter(), is(false));
+    }
+
+    /**
+     * データベース製品ごとのシーケンスから複数の値を1回で取得するSQLが組み立てられること。
+     */
+    @Test
+    public void buildSequenceBulkSql() {
+        assertThat(DialectType.H2.buildSequenceBulkSql("SEQ1"),
+                is("SELECT NEXT VALUE FOR SEQ1 FROM SYSTEM_RANGE(1, ?)"));
+        assertThat(DialectType.POSTGRESQL.buildSequenceBulkSql("SEQ1"),
+                is("SELECT nextval('SEQ1') FROM generate_series(1, ?)"));
+        assertThat(DialectType.ORACLE.buildSequenceBulkSql("SEQ1"),
+                is("SELECT SEQ1.NEXTVAL FROM DUAL CONNECT BY LEVEL <= ?"));
+        assertThat(DialectType.SQLSERVER.buildSequenceBulkSql("SEQ1"),
+                is("SELECT NEXT VALUE FOR SEQ1 FROM (SELECT TOP (?) 1 AS N FROM sys.all_columns A CROSS JOIN sys.all_columns B) T"));
+        assertThat(DialectType.DB2.buildSequenceBulkSql("SEQ1"),
+                is("WITH N (I) AS (SELECT 1 FROM SYSIBM.SYSDUMMY1 UNION ALL SELECT I + 1 FROM N WHERE I < ?) "
+                        + "SELECT NEXT VALUE FOR SEQ1 FROM N"));
+        assertThat(DialectType.OTHER.buildSequenceBulkSql("SEQ1"), is(nullValue()));
+    }
+}
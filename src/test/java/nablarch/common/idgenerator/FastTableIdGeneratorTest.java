@@ -4,11 +4,33 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
+import java.io.File;
 import java.math.BigDecimal;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import javax.management.Attribute;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
 
 import nablarch.common.idgenerator.formatter.LpadFormatter;
 import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.connection.ConnectionFactory;
 import nablarch.core.db.connection.DbConnectionContext;
 import nablarch.core.db.statement.SqlPStatement;
 import nablarch.core.db.statement.SqlResultSet;
@@ -20,6 +42,7 @@ import nablarch.test.support.db.helper.VariousDbTestHelper;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 
 /**
@@ -34,9 +57,15 @@ public class FastTableIdGeneratorTest {
     public SystemRepositoryResource repositoryResource = new SystemRepositoryResource(
             "nablarch/common/idgenerator/FastTableIdGeneratorTest.xml");
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @BeforeClass
     public static void classSetup() throws SQLException {
         VariousDbTestHelper.createTable(SbnTbl.class);
+        VariousDbTestHelper.createTable(ShardedSbnTbl.class);
+        VariousDbTestHelper.createTable(NodeRegistryTbl.class);
+        VariousDbTestHelper.createTable(CustomNodeRegistryTbl.class);
     }
 
     /**
@@ -210,4 +239,830 @@ public class FastTableIdGeneratorTest {
             db.endTransaction();
         }
     }
+
+    /**
+     * generateのテスト
+     * ブロックサイズを指定した場合は、ブロックサイズ分の値がまとめて予約・コミットされ、
+     * ブロック内の値はデータベースにアクセスせずに払い出されること。
+     */
+    @Test
+    public void generateWithBlock() {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        IdGenerator generator = repositoryResource.getComponent("idgenerator-block");
+
+        assertThat(generator.generateId("02"), is("1"));
+        // ブロックサイズ分が予約済みであること
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(10L)));
+
+        for (int i = 2; i <= 10; i++) {
+            assertThat(generator.generateId("02", null), is(String.valueOf(i)));
+        }
+        // ブロック内の払い出しではデータベースは更新されないこと
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(10L)));
+
+        // ブロックを使い切った場合は、次のブロックが予約されること
+        assertThat(generator.generateId("02", new LpadFormatter(5, '0')), is("00011"));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(20L)));
+
+        // 別のIDは独立して予約されること
+        assertThat(generator.generateId("01"), is("101"));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(110L)));
+    }
+
+    /**
+     * setBlockSizeのテスト
+     * 1未満のブロックサイズは設定できないこと。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void setBlockSizeInvalid() {
+        new FastTableIdGenerator().setBlockSize(0);
+    }
+
+    /**
+     * generateのテスト
+     * 先読み閾値を指定した場合は、残数が閾値以下となった時点で次のブロックがバックグラウンドで予約され、
+     * ブロックを使い切った時点で先読み済みのブロックに切り替わること。
+     */
+    @Test
+    public void generateWithPrefetch() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-prefetch");
+        try {
+            for (int i = 1; i <= 6; i++) {
+                assertThat(generator.generateId("02"), is(String.valueOf(i)));
+            }
+            // 閾値に達していないため、先読みは行われないこと
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(10L)));
+
+            // 残数が閾値以下となったため、次のブロックが先読みされること
+            assertThat(generator.generateId("02"), is("7"));
+            waitForNo("02", new BigDecimal(20L));
+
+            for (int i = 8; i <= 13; i++) {
+                assertThat(generator.generateId("02"), is(String.valueOf(i)));
+            }
+            // 先読み済みのブロックから払い出されるため、追加の予約は行われないこと
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(20L)));
+        } finally {
+            generator.dispose();
+        }
+
+        // 廃棄後は先読みを行わずに採番できること
+        for (int i = 14; i <= 21; i++) {
+            assertThat(generator.generateId("02"), is(String.valueOf(i)));
+        }
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(30L)));
+    }
+
+    /**
+     * generateのテスト
+     * ブロックサイズの決定方法を指定した場合は、予約の都度ブロックサイズが決定されること。
+     */
+    @Test
+    public void generateWithBlockSizePolicy() {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        IdGenerator generator = repositoryResource.getComponent("idgenerator-adaptive");
+
+        // 初回は最小値で予約されること
+        assertThat(generator.generateId("02"), is("1"));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(5L)));
+
+        // 目標間隔よりも早く消費されたため、倍のサイズで予約されること
+        for (int i = 2; i <= 6; i++) {
+            assertThat(generator.generateId("02"), is(String.valueOf(i)));
+        }
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(15L)));
+
+        // 最大値を超えないこと
+        for (int i = 7; i <= 16; i++) {
+            assertThat(generator.generateId("02"), is(String.valueOf(i)));
+        }
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(35L)));
+    }
+
+    /**
+     * generateLongIdのテスト
+     * 数値で採番できること。ブロック単位で予約する場合も同様に採番できること。
+     */
+    @Test
+    public void generateLongId() {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        LongIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        assertThat(generator.generateLongId("01"), is(101L));
+        assertThat(generator.generateLongId("01"), is(102L));
+
+        LongIdGenerator blockGenerator = repositoryResource.getComponent("idgenerator-block");
+        assertThat(blockGenerator.generateLongId("02"), is(1L));
+        assertThat(blockGenerator.generateLongId("02"), is(2L));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(10L)));
+    }
+
+    /**
+     * generateIdsのテスト
+     * 指定した数の連続する値が採番され、採番処理内でコミットされること。
+     */
+    @Test
+    public void generateIds() {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("03", new BigDecimal(200L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        try {
+            FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+
+            assertThat(generator.generateIds("03", 100), is(new IdRange(201L, 300L)));
+            assertThat(generator.generateIds("03", 1), is(new IdRange(301L, 301L)));
+
+            db.rollbackTransaction();
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "03").noCol, is(new BigDecimal(301L)));
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * generateIdsのテスト
+     * 複数のIDの採番が1つのトランザクションで行われ、コミットされること。
+     */
+    @Test
+    public void generateIdsMultiKey() {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)),
+                new SbnTbl("03", new BigDecimal(200L)));
+
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        counts.put("01", 1);
+        counts.put("02", 1);
+        counts.put("03", 3);
+
+        FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        final Map<String, IdRange> result = generator.generateIds(counts);
+
+        assertThat(result.get("01"), is(new IdRange(101L, 101L)));
+        assertThat(result.get("02"), is(new IdRange(1L, 1L)));
+        assertThat(result.get("03"), is(new IdRange(201L, 203L)));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "03").noCol, is(new BigDecimal(203L)));
+    }
+
+    /**
+     * JMXのテスト
+     * 統計情報と払い出し中のブロックの残数が公開され、ブロックサイズが実行中に変更できること。
+     */
+    @Test
+    public void jmx() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("nablarch:type=FastTableIdGenerator,name=test");
+        FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-jmx");
+        generator.initialize();
+        try {
+            final FastTableIdGeneratorMXBean mbean = JMX.newMXBeanProxy(server, name, FastTableIdGeneratorMXBean.class);
+
+            for (int i = 1; i <= 3; i++) {
+                assertThat(generator.generateId("02"), is(String.valueOf(i)));
+            }
+            final IdGeneratorKeyStatistics stats = mbean.getKeyStatistics().get("02");
+            assertThat(stats.getCallCount(), is(3L));
+            assertThat(stats.getCommitCount(), is(1L));
+            assertThat(stats.getRoundTripCount(), is(3L));
+            assertThat(stats.getFailureCount(), is(0L));
+            assertThat(mbean.getRemainingInBlock().get("02"), is(7L));
+
+            // ブロックサイズを変更した場合は、次の予約から適用されること
+            server.setAttribute(name, new Attribute("BlockSize", 100));
+            assertThat(mbean.getBlockSize(), is(100));
+            for (int i = 4; i <= 11; i++) {
+                assertThat(generator.generateId("02"), is(String.valueOf(i)));
+            }
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(110L)));
+            assertThat(mbean.getRemainingInBlock().get("02"), is(99L));
+        } finally {
+            generator.dispose();
+        }
+        assertThat(server.isRegistered(name), is(false));
+    }
+
+    /**
+     * JMXのテスト
+     * ブロックサイズを2以上から1に変更できず、予約済みのブロックから払い出しが継続されること。
+     */
+    @Test
+    public void jmxBlockSizeToOne() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("nablarch:type=FastTableIdGenerator,name=test");
+        FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-jmx");
+        generator.initialize();
+        try {
+            assertThat(generator.generateId("02"), is("1"));
+            try {
+                server.setAttribute(name, new Attribute("BlockSize", 1));
+                fail("");
+            } catch (RuntimeMBeanException e) {
+                assertThat(e.getCause(), is(instanceOf(IllegalArgumentException.class)));
+                assertThat(e.getCause().getMessage(), is("blockSize cannot be changed between 1 and greater than 1 "
+                        + "at runtime. current blockSize = 10, blockSize = 1"));
+            }
+            assertThat(generator.generateId("02"), is("2"));
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(10L)));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * JMXのテスト
+     * ブロックサイズを1から2以上に変更できず、採番の都度コミットが継続されること。
+     */
+    @Test
+    public void jmxBlockSizeFromOne() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("nablarch:type=FastTableIdGenerator,name=test");
+        FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-jmx");
+        generator.setBlockSize(1);
+        generator.initialize();
+        try {
+            assertThat(generator.generateId("02"), is("1"));
+            try {
+                server.setAttribute(name, new Attribute("BlockSize", 100));
+                fail("");
+            } catch (RuntimeMBeanException e) {
+                assertThat(e.getCause().getMessage(), is("blockSize cannot be changed between 1 and greater than 1 "
+                        + "at runtime. current blockSize = 1, blockSize = 100"));
+            }
+            assertThat(generator.generateId("02"), is("2"));
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(2L)));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 非同期の採番のテスト
+     * ブロックの予約が必要な場合は非同期に採番され、予約済みのブロックから払い出せる場合は完了済みで返却されること。
+     */
+    @Test
+    public void generateAsync() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)),
+                new SbnTbl("05", new BigDecimal(999L)));
+
+        FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        assertThat(generator.generateIdAsync("05").get(), is("1000"));
+        assertThat(generator.generateIdAsync("05", new LpadFormatter(5, '0')).get(), is("01001"));
+
+        FastTableIdGenerator blockGenerator = repositoryResource.getComponent("idgenerator-block");
+        assertThat(blockGenerator.generateLongIdAsync("02").get(), is(1L));
+        final CompletableFuture<Long> second = blockGenerator.generateLongIdAsync("02");
+        assertThat(second.isDone(), is(true));
+        assertThat(second.get(), is(2L));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(10L)));
+    }
+
+    /**
+     * 非同期の採番のテスト
+     * 存在しないIDの場合は、例外で完了すること。
+     */
+    @Test
+    public void generateAsyncNotFound() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        try {
+            generator.generateIdAsync("04").get();
+            fail("");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), is("failed in generation of id. id = 04"));
+        }
+    }
+
+    /**
+     * 同時の採番をまとめる場合のテスト
+     * 同時に呼び出された採番が、重複なく連続した値でまとめて採番され、コミット回数が呼び出し回数より少ないこと。
+     */
+    @Test
+    public void generateWithCoalescing() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-coalescing");
+        generator.initialize();
+        try {
+            final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+            final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < 10; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            ids.add(generator.generateLongId("02"));
+                        } catch (Throwable e) {
+                            failures.add(e);
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertThat(failures.isEmpty(), is(true));
+            assertThat(ids.size(), is(10));
+            for (long i = 1; i <= 10; i++) {
+                assertThat(ids.contains(i), is(true));
+            }
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(10L)));
+
+            final FastTableIdGeneratorMXBean mbean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                    new ObjectName("nablarch:type=FastTableIdGenerator,name=coalescing"), FastTableIdGeneratorMXBean.class);
+            final IdGeneratorKeyStatistics stats = mbean.getKeyStatistics().get("02");
+            assertThat(stats.getCallCount(), is(10L));
+            assertThat(stats.getCommitCount() < 10L, is(true));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 同時の採番をまとめる場合のテスト
+     * 存在しないIDの場合は、例外が送出されること。
+     */
+    @Test
+    public void generateWithCoalescingNotFound() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-coalescing");
+        generator.initialize();
+        try {
+            generator.generateId("04");
+            fail("");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), is("failed in generation of id. id = 04"));
+            assertThat(e.getCause().getMessage(), is("id was not found. id:04"));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 同時の採番をまとめる場合のテスト
+     * まとめて採番した呼び出しが失敗した場合は、待機していた全ての呼び出しで、失敗した例外を原因に含む例外が送出されること。
+     */
+    @Test
+    public void generateWithCoalescingNotFoundConcurrently() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-coalescing");
+        generator.initialize();
+        try {
+            final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < 10; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            generator.generateLongId("04");
+                        } catch (Throwable e) {
+                            failures.add(e);
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertThat(failures.size(), is(10));
+            for (Throwable failure : failures) {
+                assertThat(failure.getMessage(), is("failed in generation of id. id = 04"));
+                Throwable cause = failure.getCause();
+                while (!(cause instanceof IllegalStateException)) {
+                    assertThat(cause.getMessage(), is("failed in generation of id. id = 04"));
+                    cause = cause.getCause();
+                }
+                assertThat(cause.getMessage(), is("id was not found. id:04"));
+            }
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * ノードごとに分割番号を割り当てる場合のテスト
+     * 各ノードがノード番号の剰余の値のみを払い出し、同一のノード名で登録済みのノード番号は引き継がれること。
+     * また、他のノードが使用中のノード番号では初期化できず、廃棄時に登録が解除されること。
+     */
+    @Test
+    public void generateWithNodeIndex() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new ShardedSbnTbl("01", 0, new BigDecimal(0L)),
+                new ShardedSbnTbl("01", 1, new BigDecimal(0L)));
+        // ノード1は再起動前の登録が残っている
+        VariousDbTestHelper.setUpTable(
+                new NodeRegistryTbl(1, "node1", 2));
+
+        final FastTableIdGenerator node0 = repositoryResource.getComponent("idgenerator-node0");
+        final FastTableIdGenerator node1 = repositoryResource.getComponent("idgenerator-node1");
+        final FastTableIdGenerator other = repositoryResource.getComponent("idgenerator-node0-other");
+        node0.initialize();
+        node1.initialize();
+        try {
+            assertThat(node0.generateLongId("01"), is(2L));
+            assertThat(node1.generateLongId("01"), is(3L));
+            assertThat(node0.generateLongId("01"), is(4L));
+            assertThat(node1.generateLongId("01"), is(5L));
+            assertThat(node0.generateIds("01", 3), is(new IdRange(22L, 26L, 2L)));
+
+            assertThat(VariousDbTestHelper.findById(ShardedSbnTbl.class, "01", 0).noCol, is(new BigDecimal(13L)));
+            assertThat(VariousDbTestHelper.findById(ShardedSbnTbl.class, "01", 1).noCol, is(new BigDecimal(10L)));
+            assertThat(VariousDbTestHelper.findById(NodeRegistryTbl.class, 0).nodeName, is("node0"));
+
+            try {
+                other.initialize();
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("node index is already in use. "
+                        + "node index = 0, node name = other, registered node name = node0"));
+            } finally {
+                other.dispose();
+            }
+        } finally {
+            node0.dispose();
+            node1.dispose();
+        }
+        assertThat(VariousDbTestHelper.findById(NodeRegistryTbl.class, 0), is(nullValue()));
+        assertThat(VariousDbTestHelper.findById(NodeRegistryTbl.class, 1), is(nullValue()));
+    }
+
+    /**
+     * ノードごとに分割番号を割り当てる場合のテスト
+     * ノード登録テーブルのカラム名を変更できること。
+     */
+    @Test
+    public void generateWithNodeIndexCustomColumns() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new ShardedSbnTbl("01", 0, new BigDecimal(0L)),
+                new ShardedSbnTbl("01", 1, new BigDecimal(0L)));
+        VariousDbTestHelper.delete(CustomNodeRegistryTbl.class);
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-node0-custom-columns");
+        generator.initialize();
+        try {
+            assertThat(generator.generateLongId("01"), is(2L));
+            final CustomNodeRegistryTbl registered = VariousDbTestHelper.findById(CustomNodeRegistryTbl.class, 0);
+            assertThat(registered.hostName, is("node0"));
+            assertThat(registered.nodeCount, is(2));
+        } finally {
+            generator.dispose();
+        }
+        assertThat(VariousDbTestHelper.findById(CustomNodeRegistryTbl.class, 0), is(nullValue()));
+    }
+
+    /**
+     * ノードごとに分割番号を割り当てる場合のテスト
+     * 登録済みのノードとクラスタのノード数が異なる場合は、初期化できないこと。
+     */
+    @Test
+    public void generateWithNodeIndexClusterSizeMismatch() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new NodeRegistryTbl(1, "node1", 2));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-node2-size3");
+        try {
+            generator.initialize();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("cluster size does not match the registered node. "
+                    + "cluster size = 3, registered node index = 1, registered cluster size = 2"));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 採番テーブルの更新専用の接続を使用する場合のテスト
+     * 自動コミットで採番され、複数スレッドから同時に採番した場合も重複も欠番もないこと。
+     */
+    @Test
+    public void generateWithDedicatedConnections() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-dedicated");
+        generator.setConnectionFactory(repositoryResource.getComponentByType(ConnectionFactory.class));
+        generator.initialize();
+        try {
+            assertThat(generator.generateLongId("01"), is(101L));
+            assertThat(generator.generateId("01"), is("102"));
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(102L)));
+
+            try {
+                generator.generateLongId("99");
+                fail("");
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage(), is("failed in generation of id. id = 99"));
+                assertThat(e.getCause().getMessage(), is("id was not found. id:99"));
+            }
+
+            final ConcurrentGenerationHarness.Result result = new ConcurrentGenerationHarness(8, 50).run(
+                    Collections.<ConcurrentGenerationHarness.Generation>singletonList(
+                            new ConcurrentGenerationHarness.Generation() {
+                                @Override
+                                public long generate() {
+                                    return generator.generateLongId("02");
+                                }
+                            }), 1L, 400L);
+            assertThat(result.toString(), result.getFailures().isEmpty(), is(true));
+            assertThat(result.toString(), result.getDuplicateCount(), is(0L));
+            assertThat(result.toString(), result.getGapCount(), is(0L));
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(400L)));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 採番テーブルの更新専用の接続を使用する場合のテスト
+     * 接続ファクトリが設定されていない場合は、初期化できないこと。
+     */
+    @Test
+    public void generateWithDedicatedConnectionsWithoutConnectionFactory() throws Exception {
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-dedicated");
+        try {
+            generator.initialize();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("connectionFactory must be set when dedicatedConnectionCount is set."));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * ウォームアップのテスト
+     * 初期化時に全ての採番対象IDの最初のブロックが予約され、採番時にはデータベースにアクセスせずに払い出されること。
+     */
+    @Test
+    public void warmUp() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(0L)),
+                new SbnTbl("02", new BigDecimal(100L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-warmup");
+        generator.initialize();
+        try {
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(10L)));
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(110L)));
+
+            // 予約済みのブロックから払い出されるため、採番テーブルは更新されないこと
+            VariousDbTestHelper.delete(SbnTbl.class);
+            assertThat(generator.generateLongId("01"), is(1L));
+            assertThat(generator.generateLongId("02"), is(101L));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * ウォームアップのテスト
+     * 採番対象IDの行が存在しない場合、初期化時に例外が送出されること。
+     */
+    @Test
+    public void warmUpWithUnknownId() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(0L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-warmup");
+        generator.setWarmUpIds(Arrays.asList("01", "99"));
+        try {
+            generator.initialize();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("id was not found. id:99"));
+        } finally {
+            generator.dispose();
+        }
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(BigDecimal.ZERO));
+    }
+
+    /**
+     * 採番対象IDを初期化時に読み込む場合のテスト
+     * 存在しない採番対象IDは採番テーブルを更新せずにエラーとなり、
+     * 再読み込みの間隔内は採番テーブルに追加されてもエラーとなること。
+     */
+    @Test
+    public void generateWithPreloadedIds() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(0L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-preload");
+        generator.initialize();
+        try {
+            assertThat(generator.generateLongId("01"), is(1L));
+
+            VariousDbTestHelper.setUpTable(
+                    new SbnTbl("01", new BigDecimal(10L)),
+                    new SbnTbl("02", new BigDecimal(0L)));
+            try {
+                generator.generateLongId("02");
+                fail("");
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage(), is("failed in generation of id. id = 02"));
+                assertThat(e.getCause().getMessage(), is("id was not found. id:02"));
+            }
+            try {
+                generator.generateIds("02", 3);
+                fail("");
+            } catch (RuntimeException e) {
+                assertThat(e.getCause().getMessage(), is("id was not found. id:02"));
+            }
+            try {
+                generator.generateLongIdAsync("02").get();
+                fail("");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause().getMessage(), is("failed in generation of id. id = 02"));
+            }
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(BigDecimal.ZERO));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 採番対象IDを初期化時に読み込む場合のテスト
+     * 再読み込みの間隔を経過していれば、採番テーブルに追加された採番対象IDが再読み込みされること。
+     */
+    @Test
+    public void generateWithPreloadedIdsAfterRefresh() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(0L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-preload");
+        generator.setIdRefreshIntervalMillis(0L);
+        generator.initialize();
+        try {
+            VariousDbTestHelper.setUpTable(
+                    new SbnTbl("01", new BigDecimal(0L)),
+                    new SbnTbl("02", new BigDecimal(100L)),
+                    new SbnTbl("03", new BigDecimal(200L)));
+            assertThat(generator.generateLongId("02"), is(101L));
+            assertThat("非同期の採番では、非同期採番用のスレッドで再読み込みされること",
+                    generator.generateLongIdAsync("03").get(), is(201L));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 廃棄処理で未払い出しの値を返却する場合のテスト
+     * 予約後に採番テーブルが更新されていなければ未払い出しの値が返却され、
+     * 更新されていれば返却されないこと。
+     */
+    @Test
+    public void releaseUnusedOnDispose() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(0L)),
+                new SbnTbl("02", new BigDecimal(100L)));
+
+        final FastTableIdGenerator generator = repositoryResource.getComponent("idgenerator-release");
+        generator.initialize();
+        try {
+            assertThat(generator.generateLongId("01"), is(1L));
+            assertThat(generator.generateLongId("01"), is(2L));
+            assertThat(generator.generateLongId("01"), is(3L));
+            assertThat(generator.generateLongId("02"), is(101L));
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(10L)));
+
+            // 他のノードによる予約を模擬する
+            VariousDbTestHelper.setUpTable(
+                    new SbnTbl("01", new BigDecimal(10L)),
+                    new SbnTbl("02", new BigDecimal(120L)));
+        } finally {
+            generator.dispose();
+        }
+
+        assertThat("未払い出しの値が返却されること",
+                VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(3L)));
+        assertThat("予約後に更新された場合は返却されないこと",
+                VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(120L)));
+
+        final FastTableIdGenerator restarted = repositoryResource.getComponent("idgenerator-release");
+        restarted.initialize();
+        try {
+            assertThat("返却された値から採番されること", restarted.generateLongId("01"), is(4L));
+        } finally {
+            restarted.dispose();
+        }
+    }
+
+    /**
+     * 予約状態の記録ファイルを使用する場合のテスト
+     * 再起動後は前回払い出し中のブロックの未払い出しの値から払い出しが再開され、
+     * 採番テーブルが初期化されている場合は再開されないこと。
+     */
+    @Test
+    public void resumeFromJournal() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(0L)));
+        final String journalPath = new File(temporaryFolder.getRoot(), "journal.dat").getPath();
+
+        FastTableIdGenerator generator = createJournaledGenerator(journalPath);
+        try {
+            assertThat(generator.generateLongId("01"), is(1L));
+            assertThat(generator.generateLongId("01"), is(2L));
+            assertThat(generator.generateLongId("01"), is(3L));
+        } finally {
+            generator.dispose();
+        }
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(10L)));
+
+        generator = createJournaledGenerator(journalPath);
+        try {
+            assertThat("未払い出しの値から再開されること", generator.generateLongId("01"), is(4L));
+            assertThat("採番テーブルは更新されないこと",
+                    VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(10L)));
+        } finally {
+            generator.dispose();
+        }
+
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(0L)));
+        generator = createJournaledGenerator(journalPath);
+        try {
+            assertThat("採番テーブルが初期化されている場合は再開されないこと", generator.generateLongId("01"), is(1L));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 予約状態の記録ファイルを使用する採番クラスを生成し、初期化する。
+     *
+     * @param journalPath 予約状態の記録ファイルのパス
+     * @return 採番クラス
+     */
+    private FastTableIdGenerator createJournaledGenerator(String journalPath) {
+        final FastTableIdGenerator generator = new FastTableIdGenerator();
+        generator.setTableName("sbn_tbl");
+        generator.setIdColumnName("id_col");
+        generator.setNoColumnName("no_col");
+        generator.setBlockSize(10);
+        generator.setJournalPath(journalPath);
+        generator.setDbTransactionManager(repositoryResource.<SimpleDbTransactionManager>getComponent("dbManager"));
+        generator.initialize();
+        return generator;
+    }
+
+    /**
+     * 採番テーブルの値が期待値になるまで待機する。
+     *
+     * @param id ID
+     * @param expected 期待値
+     */
+    private static void waitForNo(String id, BigDecimal expected) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (expected.equals(VariousDbTestHelper.findById(SbnTbl.class, id).noCol)) {
+                return;
+            }
+            Thread.sleep(100L);
+        }
+        fail("no_col was not updated. expected = " + expected);
+    }
 }
@@ -0,0 +1,67 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * {@link IdGeneratorStatistics}のテストクラス。
+ */
+public class IdGeneratorStatisticsTest {
+
+    /** テスト対象 */
+    private IdGeneratorStatistics sut = new IdGeneratorStatistics();
+
+    /**
+     * 処理時間は区間の上限値を超えない区間に分類されること。
+     */
+    @Test
+    public void bucket() {
+        for (long nanos = 0; nanos < 100000; nanos++) {
+            final int bucket = IdGeneratorStatistics.bucketOf(nanos);
+            assertTrue("nanos = " + nanos, nanos <= IdGeneratorStatistics.upperBoundOf(bucket));
+            if (bucket > 0) {
+                assertTrue("nanos = " + nanos, nanos > IdGeneratorStatistics.upperBoundOf(bucket - 1));
+            }
+        }
+        assertTrue(IdGeneratorStatistics.bucketOf(Long.MAX_VALUE) < 64 * 4);
+    }
+
+    /**
+     * 採番対象のIDごとに統計情報が集計されること。
+     */
+    @Test
+    public void snapshot() {
+        for (int i = 1; i <= 100; i++) {
+            sut.recordCall("01", i * 1000L, true);
+        }
+        sut.recordCall("02", 5000L, false);
+        sut.recordDatabaseAccess("01", 3, 1);
+        sut.recordDatabaseAccess("01", 3, 1);
+        sut.recordRetry("01");
+
+        final Map<String, IdGeneratorKeyStatistics> snapshot = sut.snapshot();
+        assertThat(snapshot.size(), is(2));
+
+        final IdGeneratorKeyStatistics first = snapshot.get("01");
+        assertThat(first.getCallCount(), is(100L));
+        assertThat(first.getMeanLatencyMicros(), is(50.5D));
+        // 99パーセンタイルは、99マイクロ秒を含む区間の上限値で近似されること
+        assertTrue(first.getP99LatencyMicros() >= 99D && first.getP99LatencyMicros() < 100D * 1.25D);
+        assertThat(first.getRoundTripCount(), is(6L));
+        assertThat(first.getCommitCount(), is(2L));
+        assertThat(first.getRetryCount(), is(1L));
+        assertThat(first.getFailureCount(), is(0L));
+
+        final IdGeneratorKeyStatistics second = snapshot.get("02");
+        assertThat(second.getCallCount(), is(1L));
+        assertThat(second.getFailureCount(), is(1L));
+
+        sut.reset();
+        assertThat(sut.snapshot().isEmpty(), is(true));
+    }
+}
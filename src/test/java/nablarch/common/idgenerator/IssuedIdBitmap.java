@@ -0,0 +1,126 @@
+package nablarch.common.idgenerator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 払い出されたIDをビットマップで記録し、重複と欠番を検出するクラス。<br>
+ * <br>
+ * IDごとに1ビットのみを使用するため、数千万件のIDでも数MBのメモリで記録できる。
+ * 記録処理はCASのみで行うため、複数スレッドから同時に呼び出すことができる。
+ */
+class IssuedIdBitmap {
+
+    /** 記録できる最小のID */
+    private final long base;
+
+    /** 記録できるIDの数 */
+    private final long capacity;
+
+    /** ビットマップ */
+    private final AtomicLongArray words;
+
+    /** 記録したIDの最大値 */
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /** 重複したIDの数 */
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /** 記録できる範囲外のIDの数 */
+    private final AtomicLong outOfRange = new AtomicLong();
+
+    /**
+     * コンストラクタ。
+     *
+     * @param base 記録できる最小のID
+     * @param capacity 記録できるIDの数
+     */
+    IssuedIdBitmap(long base, long capacity) {
+        if (capacity < 1 || (capacity + 63) / 64 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity is invalid. capacity = " + capacity);
+        }
+        this.base = base;
+        this.capacity = capacity;
+        this.words = new AtomicLongArray((int) ((capacity + 63) / 64));
+    }
+
+    /**
+     * 払い出されたIDを記録する。
+     *
+     * @param id 払い出されたID
+     * @return 初めて記録したIDの場合は{@code true}
+     */
+    boolean add(long id) {
+        final long offset = id - base;
+        if (offset < 0 || offset >= capacity) {
+            outOfRange.incrementAndGet();
+            return false;
+        }
+        final int index = (int) (offset >>> 6);
+        final long mask = 1L << offset;
+        while (true) {
+            final long current = words.get(index);
+            if ((current & mask) != 0) {
+                duplicates.incrementAndGet();
+                return false;
+            }
+            if (words.compareAndSet(index, current, current | mask)) {
+                break;
+            }
+        }
+        long currentMax = max.get();
+        while (id > currentMax && !max.compareAndSet(currentMax, id)) {
+            currentMax = max.get();
+        }
+        return true;
+    }
+
+    /**
+     * 記録したIDの最大値を返却する。
+     *
+     * @return 記録したIDの最大値。記録していない場合は{@link Long#MIN_VALUE}
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 重複したIDの数を返却する。
+     *
+     * @return 重複したIDの数
+     */
+    long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * 記録できる範囲外のIDの数を返却する。
+     *
+     * @return 記録できる範囲外のIDの数
+     */
+    long getOutOfRangeCount() {
+        return outOfRange.get();
+    }
+
+    /**
+     * 最小のIDから記録したIDの最大値までの間で、記録されていないIDの数を返却する。
+     *
+     * @return 欠番の数
+     */
+    long getGapCount() {
+        final long currentMax = max.get();
+        if (currentMax == Long.MIN_VALUE) {
+            return 0L;
+        }
+        final long length = currentMax - base + 1;
+        final int lastIndex = (int) ((length - 1) >>> 6);
+        long issued = 0L;
+        for (int i = 0; i < lastIndex; i++) {
+            issued += Long.bitCount(words.get(i));
+        }
+        final int tailBits = (int) (length - ((long) lastIndex << 6));
+        final long tailMask = tailBits == 64 ? -1L : (1L << tailBits) - 1;
+        issued += Long.bitCount(words.get(lastIndex) & tailMask);
+        return length - issued;
+    }
+}
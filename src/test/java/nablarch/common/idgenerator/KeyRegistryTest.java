@@ -0,0 +1,170 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * {@link KeyRegistry}のテストクラス。
+ */
+public class KeyRegistryTest {
+
+    /** 採番テーブルに存在する採番対象ID */
+    private final List<String> table = new ArrayList<String>(Arrays.asList("01", "02"));
+
+    /** 採番対象IDを読み込んだ回数 */
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    /**
+     * 読み込んだ採番対象IDの状態が返却され、存在しない採番対象IDはnullとなること。
+     */
+    @Test
+    public void get() {
+        final KeyRegistry<StringBuilder> sut = createRegistry(60000L);
+        sut.load();
+
+        assertThat(sut.get("01").toString(), is("01"));
+        assertThat(sut.get("01"), sameInstance(sut.get("01")));
+        assertThat(sut.get("02").toString(), is("02"));
+        assertThat(sut.get("99"), is(nullValue()));
+        assertThat(sut.states().keySet().toString(), is("[01, 02]"));
+    }
+
+    /**
+     * 再読み込みの間隔内は、存在しない採番対象IDを指定しても再読み込みされないこと。
+     */
+    @Test
+    public void negativeCache() {
+        final KeyRegistry<StringBuilder> sut = createRegistry(60000L);
+        sut.load();
+        table.add("03");
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(sut.get("03"), is(nullValue()));
+        }
+        assertThat(loaded.get(), is(1));
+    }
+
+    /**
+     * 再読み込みの間隔を経過していれば、存在しない採番対象IDの指定時に再読み込みされ、
+     * 読み込み済みの採番対象IDの状態は引き継がれること。
+     */
+    @Test
+    public void refreshOnMiss() {
+        final KeyRegistry<StringBuilder> sut = createRegistry(0L);
+        sut.load();
+        final StringBuilder state = sut.get("02");
+        table.remove("01");
+        table.add("03");
+
+        assertThat(sut.get("03").toString(), is("03"));
+        assertThat(loaded.get(), is(2));
+        assertThat(sut.get("02"), sameInstance(state));
+        assertThat("削除された採番対象IDは存在しないこと", sut.get("01"), is(nullValue()));
+        assertThat(sut.states().keySet().toString(), is("[02, 03]"));
+    }
+
+    /**
+     * 読み込み済みの採番対象IDのみを参照する場合は、再読み込みの間隔を経過していても再読み込みされないこと。
+     */
+    @Test
+    public void peek() {
+        final KeyRegistry<StringBuilder> sut = createRegistry(0L);
+        sut.load();
+        table.add("03");
+
+        assertThat(sut.peek("01"), sameInstance(sut.get("01")));
+        assertThat(sut.peek("03"), is(nullValue()));
+        assertThat(loaded.get(), is(1));
+    }
+
+    /**
+     * 読み込む前に参照した場合は、参照時に読み込まれること。
+     */
+    @Test
+    public void loadOnFirstGet() {
+        final KeyRegistry<StringBuilder> sut = createRegistry(60000L);
+
+        assertThat(sut.states().isEmpty(), is(true));
+        assertThat(sut.peek("01"), is(nullValue()));
+        assertThat(sut.get("01").toString(), is("01"));
+        assertThat(sut.get("99"), is(nullValue()));
+        assertThat(loaded.get(), is(1));
+    }
+
+    /**
+     * 参照時の再読み込みに失敗した場合は、採番処理の失敗として例外が送出され、
+     * 読み込み済みの採番対象IDは引き続き参照できること。
+     */
+    @Test
+    public void refreshFailed() {
+        final IllegalStateException failure = new IllegalStateException("connection failed.");
+        final KeyRegistry<StringBuilder> sut = new KeyRegistry<StringBuilder>(0L) {
+            @Override
+            List<String> loadIds() {
+                if (loaded.incrementAndGet() > 1) {
+                    throw failure;
+                }
+                return new ArrayList<String>(table);
+            }
+
+            @Override
+            StringBuilder createState(String id) {
+                return new StringBuilder(id);
+            }
+        };
+        sut.load();
+
+        try {
+            sut.get("03");
+            fail("");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), is("failed in generation of id. id = 03"));
+            assertThat(e.getCause(), sameInstance((Throwable) failure));
+        }
+        assertThat(sut.peek("01").toString(), is("01"));
+    }
+
+    /**
+     * 再読み込みの間隔に負数を指定した場合、例外が送出されること。
+     */
+    @Test
+    public void invalidRefreshInterval() {
+        try {
+            createRegistry(-1L);
+            fail("");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("refreshIntervalMillis must not be negative. refreshIntervalMillis = -1"));
+        }
+    }
+
+    /**
+     * テスト用の採番対象IDの一覧を生成する。
+     *
+     * @param refreshIntervalMillis 再読み込みの間隔
+     * @return 採番対象IDの一覧
+     */
+    private KeyRegistry<StringBuilder> createRegistry(long refreshIntervalMillis) {
+        return new KeyRegistry<StringBuilder>(refreshIntervalMillis) {
+            @Override
+            List<String> loadIds() {
+                loaded.incrementAndGet();
+                return new ArrayList<String>(table);
+            }
+
+            @Override
+            StringBuilder createState(String id) {
+                return new StringBuilder(id);
+            }
+        };
+    }
+}
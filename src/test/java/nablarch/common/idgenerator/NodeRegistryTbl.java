@@ -0,0 +1,33 @@
+package nablarch.common.idgenerator;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * ノード登録テーブル
+ */
+@Entity
+@Table(name = "NODE_REGISTRY")
+public class NodeRegistryTbl {
+
+    public NodeRegistryTbl() {
+    }
+
+    public NodeRegistryTbl(Integer nodeIndex, String nodeName, Integer clusterSize) {
+        this.nodeIndex = nodeIndex;
+        this.nodeName = nodeName;
+        this.clusterSize = clusterSize;
+    }
+
+    @Id
+    @Column(name = "NODE_INDEX", length = 3, nullable = false)
+    public Integer nodeIndex;
+
+    @Column(name = "NODE_NAME", length = 64, nullable = false)
+    public String nodeName;
+
+    @Column(name = "CLUSTER_SIZE", length = 3, nullable = false)
+    public Integer clusterSize;
+}
@@ -0,0 +1,87 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * {@link ReservationJournal}のテストクラス。
+ */
+public class ReservationJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 記録したブロックの未払い出しの範囲が、ファイルを開き直した後に読み込めること。
+     */
+    @Test
+    public void unusedRanges() throws Exception {
+        final String path = new File(folder.getRoot(), "journal.dat").getPath();
+        final ReservationJournal sut = new ReservationJournal(path, 4);
+        final int slot1 = sut.slotOf("01");
+        sut.record(slot1, new IdRange(11L, 20L));
+        sut.issued(slot1, 11L);
+        sut.issued(slot1, 13L);
+        // 払い出し済みの最大値より小さい値では更新されないこと
+        sut.issued(slot1, 12L);
+        final int slot2 = sut.slotOf("02");
+        sut.record(slot2, new IdRange(3L, 30L, 3L));
+        sut.issued(slot2, 30L);
+        final int slot3 = sut.slotOf("03");
+        sut.record(slot3, new IdRange(1L, 10L));
+        sut.clear(slot3);
+        sut.close();
+
+        final ReservationJournal reopened = new ReservationJournal(path, 4);
+        try {
+            final Map<String, IdRange> unused = reopened.unusedRanges();
+            assertThat(unused.size(), is(1));
+            assertThat(unused.get("01"), is(new IdRange(14L, 20L)));
+            assertThat("割り当て済みのスロットが使用されること", reopened.slotOf("01"), is(slot1));
+            assertThat(reopened.slotOf("04"), is(3));
+            assertThat("空きスロットが無い場合は-1", reopened.slotOf("05"), is(-1));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * 使用中のファイルは開くことができないこと。
+     */
+    @Test
+    public void locked() throws Exception {
+        final String path = new File(folder.getRoot(), "journal.dat").getPath();
+        final ReservationJournal sut = new ReservationJournal(path, 4);
+        try {
+            new ReservationJournal(path, 4);
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("journal file is used by another process. path = " + path));
+        } finally {
+            sut.close();
+        }
+    }
+
+    /**
+     * スロット数が異なるファイルは開くことができないこと。
+     */
+    @Test
+    public void incompatible() throws Exception {
+        final String path = new File(folder.getRoot(), "journal.dat").getPath();
+        new ReservationJournal(path, 4).close();
+        try {
+            new ReservationJournal(path, 8);
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("journal file is incompatible. path = " + path + ", capacity = 8"));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import nablarch.core.db.DbAccessException;
+
+import org.junit.Test;
+
+/**
+ * {@link RetryPolicy}のテストクラス。
+ */
+public class RetryPolicyTest {
+
+    /** テスト対象 */
+    private RetryPolicy sut = new RetryPolicy();
+
+    /**
+     * データベース製品ごとに定義されたSQLSTATE・ベンダーエラーコードの例外は再試行対象となること。
+     */
+    @Test
+    public void isRetryable() {
+        // H2のロックタイムアウト
+        assertThat(sut.isRetryable(DialectType.H2,
+                new DbAccessException("lock timeout", new SQLException("timeout", "HYT00", 50200))), is(true));
+        // Oracleのデッドロック
+        assertThat(sut.isRetryable(DialectType.ORACLE,
+                new DbAccessException("deadlock", new SQLException("deadlock", "61000", 60))), is(true));
+        // PostgreSQLのデッドロック(原因例外を辿って判定されること)
+        assertThat(sut.isRetryable(DialectType.POSTGRESQL,
+                new RuntimeException(new DbAccessException("deadlock", new SQLException("deadlock", "40P01")))),
+                is(true));
+        // 連鎖した例外で判定されること
+        final SQLException batch = new SQLException("batch", "HY000");
+        batch.setNextException(new SQLException("deadlock", "40001", 1205));
+        assertThat(sut.isRetryable(DialectType.SQLSERVER, new DbAccessException("batch", batch)), is(true));
+    }
+
+    /**
+     * デッドロック・ロックタイムアウト以外の例外は再試行対象とならないこと。
+     */
+    @Test
+    public void isNotRetryable() {
+        assertThat(sut.isRetryable(DialectType.H2,
+                new DbAccessException("too long", new SQLException("value too long", "22001"))), is(false));
+        assertThat(sut.isRetryable(DialectType.H2, new IllegalStateException("id was not found. id:01")), is(false));
+        // 他のデータベース製品のエラーコードでは判定しないこと
+        assertThat(sut.isRetryable(DialectType.H2,
+                new DbAccessException("deadlock", new SQLException("deadlock", "61000", 60))), is(false));
+    }
+
+    /**
+     * 追加したSQLSTATEの例外は再試行対象となること。
+     */
+    @Test
+    public void additionalSqlStates() {
+        sut.setAdditionalSqlStates(Arrays.asList("08006"));
+        assertThat(sut.isRetryable(DialectType.POSTGRESQL,
+                new DbAccessException("connection failure", new SQLException("failure", "08006"))), is(true));
+    }
+
+    /**
+     * 待機時間は再試行回数に応じた上限を超えず、制限時間を超える場合は再試行しないこと。
+     */
+    @Test
+    public void nextBackoffMillis() {
+        sut.setInitialBackoffMillis(10L);
+        sut.setMaxBackoffMillis(50L);
+        sut.setMaxRetryTimeMillis(1000L);
+        final DbAccessException deadlock = new DbAccessException("deadlock", new SQLException("deadlock", "40001"));
+
+        for (int i = 0; i < 100; i++) {
+            final long first = sut.nextBackoffMillis(DialectType.H2, deadlock, 0, 0L);
+            assertTrue(0L <= first && first <= 10L);
+            final long third = sut.nextBackoffMillis(DialectType.H2, deadlock, 2, 0L);
+            assertTrue(0L <= third && third <= 40L);
+            final long tenth = sut.nextBackoffMillis(DialectType.H2, deadlock, 9, 0L);
+            assertTrue(0L <= tenth && tenth <= 50L);
+        }
+        assertThat(sut.nextBackoffMillis(DialectType.H2, deadlock, 3, 1001L), is(-1L));
+        assertThat(sut.nextBackoffMillis(DialectType.H2, new IllegalStateException(), 0, 0L), is(-1L));
+    }
+}
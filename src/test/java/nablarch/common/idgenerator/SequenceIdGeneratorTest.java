@@ -21,6 +21,7 @@ import org.mockito.Mockito;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -60,10 +61,15 @@ public class SequenceIdGeneratorTest {
         sut.setDbTransactionName(CONNECTION_NAME);
 
         createSequence(connection, "SEQ1", "SEQ2");
+        createSequenceWithOptions(connection, " INCREMENT BY 10", "POOLED_SEQ");
         OnMemoryLogWriter.clear();
     }
 
     private void createSequence(TransactionManagerConnection connection, String... sequences) {
+        createSequenceWithOptions(connection, "", sequences);
+    }
+
+    private void createSequenceWithOptions(TransactionManagerConnection connection, String options, String... sequences) {
         for (String sequence : sequences) {
             final SqlPStatement drop = connection.prepareStatement("DROP SEQUENCE " + sequence);
             try {
@@ -73,7 +79,7 @@ public class SequenceIdGeneratorTest {
                 ignore.printStackTrace();
             }
             drop.close();
-            final SqlPStatement create = connection.prepareStatement("create SEQUENCE " + sequence);
+            final SqlPStatement create = connection.prepareStatement("create SEQUENCE " + sequence + options);
             create.execute();
             create.close();
             connection.commit();
@@ -104,6 +110,19 @@ public class SequenceIdGeneratorTest {
                 is(Integer.parseInt(first) + 1));
     }
 
+    /**
+     * シーケンスを用いた採番が数値で行えること。
+     */
+    @Test
+    public void generateLongId() throws Exception {
+        final long first = sut.generateLongId("SEQ1");
+        final long second = sut.generateLongId("SEQ1");
+
+        assertThat("2回目の呼び出しで1回目から値がインクリメントされていること", second, is(first + 1));
+        assertThat("文字列での採番と同じシーケンスから採番されること",
+                Long.parseLong(sut.generateId("SEQ1")), is(second + 1));
+    }
+
     /**
      * シーケンスを用いた採番が出来、フォーマットされた値が返却されること。
      */
@@ -178,5 +197,92 @@ public class SequenceIdGeneratorTest {
             OnMemoryLogWriter.assertLogContains("writer.memory", "failed to ResultSetIterator#close");
         }
     }
-}
 
+    /**
+     * プール対象のシーケンスの場合、1回のシーケンス取得で増分の数だけの値が連番で払い出されること。
+     */
+    @Test
+    public void generateLongId_pooled() throws Exception {
+        sut.setPooledSequenceNames(Arrays.asList("POOLED_SEQ"));
+
+        final long first = sut.generateLongId("POOLED_SEQ");
+        for (int i = 1; i < 25; i++) {
+            assertThat(sut.generateLongId("POOLED_SEQ"), is(first + i));
+        }
+
+        final SequenceIdGenerator notPooled = new SequenceIdGenerator();
+        notPooled.setDbTransactionName(CONNECTION_NAME);
+        assertThat("シーケンスの取得は3回(増分10ごと)であること", notPooled.generateLongId("POOLED_SEQ"), is(first + 30));
+        assertThat("増分を超えて払い出していないこと", sut.generateLongId("POOLED_SEQ"), is(first + 25));
+    }
+
+    /**
+     * 増分が1のシーケンスをプール対象とした場合、毎回シーケンスから取得されること。
+     */
+    @Test
+    public void generateLongId_pooledWithIncrementOne() throws Exception {
+        sut.setPooledSequenceNames(Arrays.asList("SEQ1"));
+
+        final long first = sut.generateLongId("SEQ1");
+        assertThat(sut.generateLongId("SEQ1"), is(first + 1));
+
+        final SequenceIdGenerator notPooled = new SequenceIdGenerator();
+        notPooled.setDbTransactionName(CONNECTION_NAME);
+        assertThat(notPooled.generateLongId("SEQ1"), is(first + 2));
+    }
+
+    /**
+     * プール対象のシーケンスがカタログに存在しない場合、例外が送出されること。
+     */
+    @Test
+    public void generateLongId_pooledSequenceNotFound() throws Exception {
+        sut.setPooledSequenceNames(Arrays.asList("NOT_EXISTS_SEQ"));
+        try {
+            sut.generateLongId("NOT_EXISTS_SEQ");
+            fail("ここは通らない");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("sequence was not found in the catalog. sequence name = NOT_EXISTS_SEQ"));
+        }
+    }
+
+    /**
+     * 指定した数の値がまとめて昇順で採番されること。
+     */
+    @Test
+    public void generateLongIds() throws Exception {
+        final long[] values = sut.generateLongIds("SEQ1", 1000);
+
+        assertThat(values.length, is(1000));
+        for (int i = 1; i < values.length; i++) {
+            assertThat(values[i], is(values[0] + i));
+        }
+        assertThat(sut.generateLongId("SEQ1"), is(values[999] + 1));
+    }
+
+    /**
+     * プール対象のシーケンスの場合、プールから払い出されること。
+     */
+    @Test
+    public void generateLongIds_pooled() throws Exception {
+        sut.setPooledSequenceNames(Arrays.asList("POOLED_SEQ"));
+
+        final long[] values = sut.generateLongIds("POOLED_SEQ", 15);
+        for (int i = 1; i < values.length; i++) {
+            assertThat(values[i], is(values[0] + i));
+        }
+        assertThat(sut.generateLongId("POOLED_SEQ"), is(values[0] + 15));
+    }
+
+    /**
+     * 採番する数が1未満の場合、例外が送出されること。
+     */
+    @Test
+    public void generateLongIds_invalidCount() throws Exception {
+        try {
+            sut.generateLongIds("SEQ1", 0);
+            fail("ここは通らない");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("count must be greater than 0. count = 0"));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package nablarch.common.idgenerator;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.math.BigDecimal;
+
+/**
+ * 分割された採番テーブル
+ */
+@Entity
+@Table(name = "SHARDED_SBN_TBL")
+public class ShardedSbnTbl {
+
+    public ShardedSbnTbl() {
+    }
+
+    public ShardedSbnTbl(String idCol, Integer shardNo, BigDecimal noCol) {
+        this.idCol = idCol;
+        this.shardNo = shardNo;
+        this.noCol = noCol;
+    }
+
+    @Id
+    @Column(name = "ID_COL", length = 2, nullable = false)
+    public String idCol;
+
+    @Id
+    @Column(name = "SHARD_NO", length = 3, nullable = false)
+    public Integer shardNo;
+
+    @Column(name = "NO_COL", length = 10, nullable = false)
+    public BigDecimal noCol;
+}
@@ -0,0 +1,369 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nablarch.common.idgenerator.formatter.LpadFormatter;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.test.support.SystemRepositoryResource;
+import nablarch.test.support.db.helper.DatabaseTestRunner;
+import nablarch.test.support.db.helper.VariousDbTestHelper;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * {@link SnowflakeIdGenerator}のテスト。
+ */
+@RunWith(DatabaseTestRunner.class)
+public class SnowflakeIdGeneratorTest {
+
+    /** テストで使用する現在時刻 */
+    private static final long NOW = 1700000000000L;
+
+    @Rule
+    public SystemRepositoryResource repositoryResource = new SystemRepositoryResource(
+            "nablarch/common/idgenerator/SnowflakeIdGeneratorTest.xml");
+
+    @BeforeClass
+    public static void classSetup() throws SQLException {
+        VariousDbTestHelper.createTable(WorkerIdLeaseTbl.class);
+        VariousDbTestHelper.createTable(CustomWorkerIdLeaseTbl.class);
+    }
+
+    /**
+     * 採番のテスト
+     * 借りたワーカーIDを含む値が単調増加で払い出され、廃棄時に最後に払い出した時刻を記録してワーカーIDが返却されること。
+     */
+    @Test
+    public void generate() throws Exception {
+        VariousDbTestHelper.setUpTable(new WorkerIdLeaseTbl(0, "other", Long.MAX_VALUE));
+
+        final SnowflakeIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        generator.initialize();
+        long last;
+        try {
+            assertThat(generator.getWorkerId(), is(1));
+            final WorkerIdLeaseTbl lease = VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 1);
+            assertThat(lease.owner.trim().startsWith("node-a:"), is(true));
+
+            last = generator.generateLongId("01");
+            for (int i = 0; i < 10000; i++) {
+                final long value = generator.generateLongId("01");
+                assertThat(value > last, is(true));
+                assertThat((value >>> 12) & 1023L, is(1L));
+                last = value;
+            }
+            final String formatted = generator.generateId("01", new LpadFormatter(20, '0'));
+            assertThat(formatted.length(), is(20));
+            last = Long.parseLong(formatted);
+        } finally {
+            generator.dispose();
+        }
+        final WorkerIdLeaseTbl released = VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 1);
+        assertThat(released.expiresAt, is((last >>> 22) + 1577836800000L));
+        assertThat(VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 0).owner.trim(), is("other"));
+    }
+
+    /**
+     * 複数スレッドから同時に採番した場合のテスト
+     * 払い出された値が重複しないこと。
+     */
+    @Test
+    public void generateConcurrently() throws Exception {
+        VariousDbTestHelper.delete(WorkerIdLeaseTbl.class);
+
+        final SnowflakeIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        generator.initialize();
+        try {
+            final Set<Long> values = ConcurrentHashMap.newKeySet();
+            final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < 8; i++) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = 0; j < 20000; j++) {
+                                values.add(generator.generateLongId("01"));
+                            }
+                        } catch (Throwable e) {
+                            failures.add(e);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertThat(failures.toString(), failures.isEmpty(), is(true));
+            assertThat(values.size(), is(8 * 20000));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * ワーカーIDの貸出のテスト
+     * 未使用のワーカーIDが存在しない場合は有効期限切れのワーカーIDを引き継ぎ、
+     * 有効期限切れのワーカーIDも存在しない場合は初期化できないこと。
+     */
+    @Test
+    public void acquireExpiredWorkerId() throws Exception {
+        final WorkerIdLeaseTbl[] leases = new WorkerIdLeaseTbl[SnowflakeIdGenerator.MAX_WORKER_ID + 1];
+        for (int i = 0; i < leases.length; i++) {
+            leases[i] = new WorkerIdLeaseTbl(i, "other", i == 5 ? NOW - 1L : NOW + 60000L);
+        }
+        VariousDbTestHelper.setUpTable(leases);
+
+        final SnowflakeIdGenerator generator = createGenerator(new AtomicLong(NOW));
+        generator.initialize();
+        try {
+            assertThat(generator.getWorkerId(), is(5));
+            assertThat(VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 5).expiresAt, is(NOW + 30000L));
+
+            final SnowflakeIdGenerator full = createGenerator(new AtomicLong(NOW));
+            try {
+                full.initialize();
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("no worker id is available. table = worker_id_lease, max worker id = 1023"));
+            } finally {
+                full.dispose();
+            }
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * ワーカーIDの貸出のテスト
+     * 貸出状況の取得後に他のノードが同じワーカーIDを借りた場合は、次のワーカーIDを借りること。
+     */
+    @Test
+    public void acquireConflict() throws Exception {
+        VariousDbTestHelper.delete(WorkerIdLeaseTbl.class);
+
+        final WorkerIdLeaseTable table = new WorkerIdLeaseTable("worker_id_lease", "node-a",
+                SnowflakeIdGenerator.MAX_WORKER_ID,
+                (SimpleDbTransactionManager) repositoryResource.getComponent("dbManager")) {
+            @Override
+            Map<Integer, Long> findLeases() {
+                final Map<Integer, Long> leases = super.findLeases();
+                // 貸出状況の取得後、登録前に他のノードがワーカーID 0を借りる
+                VariousDbTestHelper.setUpTable(new WorkerIdLeaseTbl(0, "other", NOW + 60000L));
+                return leases;
+            }
+        };
+        assertThat(table.acquire(NOW, NOW + 30000L).getWorkerId(), is(1));
+        assertThat(VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 0).owner.trim(), is("other"));
+        assertThat(VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 1).owner.trim(), is("node-a"));
+    }
+
+    /**
+     * 返却したワーカーIDを再起動後に借りる場合のテスト
+     * 最後に払い出した時刻を過ぎるまでは引き継がず、引き継いだ後は払い出し済みの値より大きい値を払い出すこと。
+     */
+    @Test
+    public void restartAfterRelease() throws Exception {
+        final WorkerIdLeaseTbl[] leases = new WorkerIdLeaseTbl[SnowflakeIdGenerator.MAX_WORKER_ID];
+        for (int i = 0; i < leases.length; i++) {
+            leases[i] = new WorkerIdLeaseTbl(i + 1, "other", NOW + 60000L);
+        }
+        VariousDbTestHelper.setUpTable(leases);
+
+        final AtomicLong clock = new AtomicLong(NOW);
+        final SnowflakeIdGenerator first = createGenerator(clock);
+        first.initialize();
+        final long issued;
+        try {
+            assertThat(first.getWorkerId(), is(0));
+            issued = first.generateLongId("01");
+        } finally {
+            first.dispose();
+        }
+        final WorkerIdLeaseTbl released = VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 0);
+        assertThat(released.owner.trim().startsWith("node-a:"), is(true));
+        assertThat(released.expiresAt, is(NOW));
+
+        // 同一ミリ秒内、または時刻が戻った状態で再起動した場合は、返却したワーカーIDを引き継がない
+        for (long now : new long[] {NOW, NOW - 500L}) {
+            clock.set(now);
+            final SnowflakeIdGenerator restarted = createGenerator(clock);
+            try {
+                restarted.initialize();
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("no worker id is available. table = worker_id_lease, max worker id = 1023"));
+            } finally {
+                restarted.dispose();
+            }
+        }
+
+        clock.set(NOW + 1L);
+        final SnowflakeIdGenerator restarted = createGenerator(clock);
+        restarted.initialize();
+        try {
+            assertThat(restarted.getWorkerId(), is(0));
+            assertThat(restarted.generateLongId("01") > issued, is(true));
+        } finally {
+            restarted.dispose();
+        }
+    }
+
+    /**
+     * システム時刻が戻った場合のテスト
+     * 許容値以内であれば最後に払い出した時刻のまま採番を続け、許容値を超えた場合は例外となること。
+     */
+    @Test
+    public void clockMovedBackwards() throws Exception {
+        VariousDbTestHelper.delete(WorkerIdLeaseTbl.class);
+
+        final AtomicLong clock = new AtomicLong(NOW);
+        final SnowflakeIdGenerator generator = createGenerator(clock);
+        generator.initialize();
+        try {
+            final long first = generator.generateLongId("01");
+            clock.set(NOW - 1000L);
+            final long second = generator.generateLongId("01");
+            assertThat(second, is(first + 1L));
+
+            clock.set(NOW - 1001L);
+            try {
+                generator.generateLongId("01");
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("clock moved backwards. last timestamp = " + NOW
+                        + ", current time = " + (NOW - 1001L) + ", maxClockBackwardMillis = 1000"));
+            }
+
+            clock.set(NOW + 1L);
+            assertThat(generator.generateLongId("01") > second, is(true));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * ワーカーIDの貸出の有効期限のテスト
+     * 延長できないまま期限を過ぎた場合は採番できず、延長後は採番できること。
+     * また、他のノードに引き継がれていた場合は、別のワーカーIDを借り直すこと。
+     */
+    @Test
+    public void leaseExpiry() throws Exception {
+        VariousDbTestHelper.delete(WorkerIdLeaseTbl.class);
+
+        final AtomicLong clock = new AtomicLong(NOW);
+        final SnowflakeIdGenerator generator = createGenerator(clock);
+        generator.initialize();
+        try {
+            assertThat(generator.getWorkerId(), is(0));
+
+            // 有効期間(30秒)から時刻のずれの許容値(1秒)を引いた時点で期限切れとなる
+            clock.set(NOW + 29000L);
+            try {
+                generator.generateLongId("01");
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("worker id lease has expired. lease table = worker_id_lease, worker id = 0"));
+            }
+
+            generator.heartbeat();
+            assertThat(VariousDbTestHelper.findById(WorkerIdLeaseTbl.class, 0).expiresAt, is(NOW + 59000L));
+            final long renewed = generator.generateLongId("01");
+            assertThat((renewed >>> 12) & 1023L, is(0L));
+
+            // 他のノードに引き継がれた場合
+            VariousDbTestHelper.setUpTable(new WorkerIdLeaseTbl(0, "other", NOW + 120000L));
+            generator.heartbeat();
+            assertThat(generator.getWorkerId(), is(1));
+            final long reacquired = generator.generateLongId("01");
+            assertThat((reacquired >>> 12) & 1023L, is(1L));
+            assertThat(reacquired > renewed, is(true));
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    /**
+     * 貸出テーブルのカラム名を変更した場合のテスト
+     * 設定したカラムを使用してワーカーIDを借り、廃棄時に最後に払い出した時刻を記録して返却されること。
+     */
+    @Test
+    public void customColumnNames() throws Exception {
+        VariousDbTestHelper.setUpTable(new CustomWorkerIdLeaseTbl(0, "other", Long.MAX_VALUE));
+
+        final SnowflakeIdGenerator generator = createGenerator(new AtomicLong(NOW));
+        generator.setLeaseTableName("custom_worker_id_lease");
+        generator.setWorkerIdColumnName("worker_no");
+        generator.setOwnerColumnName("leased_by");
+        generator.setExpiresAtColumnName("lease_until");
+        generator.initialize();
+        try {
+            assertThat(generator.getWorkerId(), is(1));
+            final CustomWorkerIdLeaseTbl lease = VariousDbTestHelper.findById(CustomWorkerIdLeaseTbl.class, 1);
+            assertThat(lease.leasedBy.trim().startsWith("node-a:"), is(true));
+            assertThat(lease.leaseUntil, is(NOW + 30000L));
+            generator.generateLongId("01");
+        } finally {
+            generator.dispose();
+        }
+        assertThat(VariousDbTestHelper.findById(CustomWorkerIdLeaseTbl.class, 1).leaseUntil, is(NOW));
+    }
+
+    /**
+     * 設定値のテスト
+     * 貸出の延長間隔が有効期間に対して長すぎる場合は、初期化できないこと。
+     */
+    @Test
+    public void invalidHeartbeatInterval() throws Exception {
+        final SnowflakeIdGenerator generator = createGenerator(new AtomicLong(NOW));
+        generator.setHeartbeatIntervalMillis(29000L);
+        try {
+            generator.initialize();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("heartbeatIntervalMillis must be less than leaseDurationMillis - maxClockBackwardMillis. "
+                    + "heartbeatIntervalMillis = 29000, leaseDurationMillis = 30000, maxClockBackwardMillis = 1000"));
+        }
+    }
+
+    /**
+     * 指定された時刻を現在時刻として使用する採番クラスを生成する。
+     *
+     * @param clock 現在時刻
+     * @return 採番クラス
+     */
+    private SnowflakeIdGenerator createGenerator(final AtomicLong clock) {
+        final SnowflakeIdGenerator generator = new SnowflakeIdGenerator() {
+            @Override
+            long currentTimeMillis() {
+                return clock.get();
+            }
+        };
+        generator.setLeaseTableName("worker_id_lease");
+        generator.setNodeName("node-a");
+        generator.setLeaseDurationMillis(30000L);
+        generator.setHeartbeatIntervalMillis(10000L);
+        generator.setDbTransactionManager((SimpleDbTransactionManager) repositoryResource.getComponent("dbManager"));
+        return generator;
+    }
+}
@@ -0,0 +1,117 @@
+package nablarch.common.idgenerator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * {@link SqlCache}のテストクラス。
+ */
+public class SqlCacheTest {
+
+    /** SQLを生成した回数 */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * 生成したSQLがキャッシュされ、同一の名前では再生成されないこと。
+     */
+    @Test
+    public void get() {
+        final SqlCache sut = createCache(10);
+
+        assertThat(sut.get("SEQ1"), is("SELECT SEQ1.NEXTVAL FROM DUAL"));
+        assertThat(sut.get("SEQ1"), is("SELECT SEQ1.NEXTVAL FROM DUAL"));
+        assertThat(sut.get("SEQ2"), is("SELECT SEQ2.NEXTVAL FROM DUAL"));
+        assertThat(created.get(), is(2));
+        assertThat(sut.size(), is(2));
+    }
+
+    /**
+     * 上限件数を超えた場合、最近参照されていないSQLから破棄されること。
+     */
+    @Test
+    public void evict() {
+        final SqlCache sut = createCache(10);
+        for (int i = 0; i < 10; i++) {
+            sut.get("SEQ" + i);
+        }
+        // SEQ0を参照し、最近参照されたSQLとする
+        sut.get("SEQ0");
+        sut.get("SEQ10");
+
+        assertThat("上限件数の9割まで減ること", sut.size(), is(9));
+        assertThat(created.get(), is(11));
+
+        sut.get("SEQ0");
+        sut.get("SEQ3");
+        assertThat("参照したSQLは破棄されないこと", created.get(), is(11));
+        sut.get("SEQ1");
+        sut.get("SEQ2");
+        assertThat("破棄されたSQLは再生成されること", created.get(), is(13));
+    }
+
+    /**
+     * 複数スレッドから同時に参照した場合でも、正しいSQLが返却され、その後の登録で上限件数以内に戻ること。
+     */
+    @Test
+    public void concurrentAccess() throws Exception {
+        final SqlCache sut = createCache(100);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final int offset = i;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; j++) {
+                        final String name = "SEQ" + ((j * 7 + offset) % 1000);
+                        assertThat(sut.get(name), is("SELECT " + name + ".NEXTVAL FROM DUAL"));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sut.get("LAST");
+        assertThat(String.valueOf(sut.size()), sut.size() <= 100, is(true));
+    }
+
+    /**
+     * 上限件数が1未満の場合、例外が送出されること。
+     */
+    @Test
+    public void invalidCapacity() {
+        try {
+            createCache(0);
+            fail("ここは通らない");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("capacity must be greater than 0. capacity = 0"));
+        }
+    }
+
+    private SqlCache createCache(int capacity) {
+        return new SqlCache(capacity) {
+            @Override
+            String createSql(String name) {
+                created.incrementAndGet();
+                return "SELECT " + name + ".NEXTVAL FROM DUAL";
+            }
+        };
+    }
+}
@@ -21,6 +21,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * {@link TableIdGenerator}のテストクラス。
@@ -37,6 +41,7 @@ public class TableIdGeneratorTest {
     @BeforeClass
     public static void classSetup() {
         VariousDbTestHelper.createTable(SbnTbl.class);
+        VariousDbTestHelper.createTable(ShardedSbnTbl.class);
     }
 
     /**
@@ -181,5 +186,413 @@ public class TableIdGeneratorTest {
             db.endTransaction();
         }
     }
-}
 
+    /**
+     * generateLongIdのテスト
+     * 数値で採番できること
+     */
+    @Test
+    public void generateLongId() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("05", new BigDecimal(999L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        long first;
+        long second;
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+            generator.initialize();
+            first = generator.generateLongId("05");
+            second = generator.generateLongId("05");
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        assertThat(first, is(1000L));
+        assertThat(second, is(1001L));
+    }
+
+    /**
+     * generateIdsのテスト
+     * 指定した数の連続する値が1回の更新で採番され、コミットまではDBに反映されないこと。
+     */
+    @Test
+    public void generateIds() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        IdRange range;
+        IdRange next;
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+            generator.initialize();
+            range = generator.generateIds("01", 50);
+            next = generator.generateIds("01", 1);
+
+            // コミット前は、値がインクリメントされていないこと
+            assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(100L)));
+
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        assertThat(range, is(new IdRange(101L, 150L)));
+        assertThat(range.size(), is(50L));
+        assertThat(next, is(new IdRange(151L, 151L)));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(151L)));
+    }
+
+    /**
+     * generateIdsのテスト
+     * 複数のIDについて、指定した数の値が1つのトランザクションで採番され、IDの昇順に返却されること。
+     */
+    @Test
+    public void generateIdsMultiKey() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)),
+                new SbnTbl("03", new BigDecimal(200L)));
+
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("03", 1);
+        counts.put("01", 5);
+        counts.put("02", 2);
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        Map<String, IdRange> result;
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+            generator.initialize();
+            result = generator.generateIds(counts);
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        final Iterator<Map.Entry<String, IdRange>> iterator = result.entrySet().iterator();
+        Map.Entry<String, IdRange> entry = iterator.next();
+        assertThat(entry.getKey(), is("01"));
+        assertThat(entry.getValue(), is(new IdRange(101L, 105L)));
+        entry = iterator.next();
+        assertThat(entry.getKey(), is("02"));
+        assertThat(entry.getValue(), is(new IdRange(1L, 2L)));
+        entry = iterator.next();
+        assertThat(entry.getKey(), is("03"));
+        assertThat(entry.getValue(), is(new IdRange(201L, 201L)));
+
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(105L)));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(new BigDecimal(2L)));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "03").noCol, is(new BigDecimal(201L)));
+    }
+
+    /**
+     * generateIdsのテスト
+     * 複数のIDのうち、対応するデータが存在しないIDがある場合は例外が送出されること。
+     */
+    @Test
+    public void generateIdsMultiKeyNotFound() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)));
+
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("01", 1);
+        counts.put("04", 1);
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+            generator.initialize();
+            generator.generateIds(counts);
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("id was not found. id:04"));
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * generateIdsのテスト
+     * 採番する数に1未満を指定した場合は例外が送出されること。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void generateIdsInvalidCount() throws Exception {
+        TableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        generator.initialize();
+        generator.generateIds("01", 0);
+    }
+
+    /**
+     * generateのテスト
+     * インクリメントと取得を1回のSQLで行う場合でも、2回のSQLで行う場合と同じ値が採番されること。
+     */
+    @Test
+    public void generateWithSingleStatement() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        String id;
+        IdRange range;
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator-single");
+            generator.initialize();
+            id = generator.generateId("02", new LpadFormatter(3, '0'));
+            range = generator.generateIds("01", 10);
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        assertThat(id, is("001"));
+        assertThat(range, is(new IdRange(101L, 110L)));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(BigDecimal.ONE));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(110L)));
+    }
+
+    /**
+     * generateのテスト
+     * インクリメントと取得を1回のSQLで行う場合で、指定されたIDに対応するデータが存在しない場合
+     */
+    @Test
+    public void generateWithSingleStatementNotFound() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator-single");
+            generator.initialize();
+            generator.generateId("04");
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("id was not found. id:04"));
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 採番テーブルを分割する場合のテスト
+     * スレッドに対応する分割番号の行のみが更新され、採番結果は分割番号と分割数から一意な値となること。
+     */
+    @Test
+    public void generateWithShards() throws Exception {
+        for (String component : new String[] {"idgenerator-sharded", "idgenerator-sharded-single"}) {
+            VariousDbTestHelper.setUpTable(
+                    new ShardedSbnTbl("01", 0, new BigDecimal(10L)),
+                    new ShardedSbnTbl("01", 1, new BigDecimal(10L)),
+                    new ShardedSbnTbl("01", 2, new BigDecimal(10L)));
+
+            SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+            db.beginTransaction();
+            long first;
+            long second;
+            IdRange range;
+            try {
+                TableIdGenerator generator = repositoryResource.getComponent(component);
+                generator.initialize();
+                first = generator.generateLongId("01");
+                second = generator.generateLongId("01");
+                range = generator.generateIds("01", 4);
+                db.commitTransaction();
+            } finally {
+                db.endTransaction();
+            }
+
+            final int shard = (int) (first % 3);
+            assertThat(component, first, is(11L * 3 + shard));
+            assertThat(component, second, is(12L * 3 + shard));
+            assertThat(component, range, is(new IdRange(13L * 3 + shard, 16L * 3 + shard, 3L)));
+            assertThat(range.size(), is(4L));
+            for (int i = 0; i < 3; i++) {
+                assertThat(component, VariousDbTestHelper.findById(ShardedSbnTbl.class, "01", i).noCol,
+                        is(new BigDecimal(i == shard ? 16L : 10L)));
+            }
+        }
+    }
+
+    /**
+     * 分割された行の作成のテスト
+     * 行が存在しない場合は全ての分割番号の行が作成され、
+     * 分割番号0の行のみが存在する場合は払い出し済みの値より大きな値が採番されるように作成されること。
+     */
+    @Test
+    public void provisionShards() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new ShardedSbnTbl("01", 0, new BigDecimal(100L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        long id;
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator-sharded");
+            generator.initialize();
+            generator.provisionShards("01");
+            generator.provisionShards("02");
+            // 作成済みの場合は何もしないこと
+            generator.provisionShards("02");
+            id = generator.generateLongId("01");
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        assertThat(id > 100L, is(true));
+        for (int i = 0; i < 3; i++) {
+            assertThat(VariousDbTestHelper.findById(ShardedSbnTbl.class, "01", i).noCol,
+                    is(new BigDecimal(i == id % 3 ? 34L : 33L)));
+            assertThat(VariousDbTestHelper.findById(ShardedSbnTbl.class, "02", i).noCol, is(BigDecimal.ZERO));
+        }
+    }
+
+    /**
+     * 分割された行の作成のテスト
+     * 分割された行の一部のみが存在する場合は例外が送出されること。
+     */
+    @Test
+    public void provisionShardsPartially() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new ShardedSbnTbl("01", 0, new BigDecimal(100L)),
+                new ShardedSbnTbl("01", 2, new BigDecimal(100L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        try {
+            TableIdGenerator generator = repositoryResource.getComponent("idgenerator-sharded");
+            generator.initialize();
+            generator.provisionShards("01");
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("shards were partially provisioned. id:01, existing shards:[0, 2]"));
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * ウォームアップのテスト
+     * 初期化時に採番テーブルは更新されず、初期化後は通常通り採番できること。
+     */
+    @Test
+    public void warmUp() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+
+        TableIdGenerator generator = repositoryResource.getComponent("idgenerator-warmup");
+        generator.initialize();
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(100L)));
+
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        long id;
+        try {
+            id = generator.generateLongId("01");
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+        assertThat(id, is(101L));
+    }
+
+    /**
+     * ウォームアップのテスト
+     * 採番対象IDの行が存在しない場合、初期化時に例外が送出されること。
+     */
+    @Test
+    public void warmUpWithUnknownId() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)));
+
+        TableIdGenerator generator = repositoryResource.getComponent("idgenerator-warmup");
+        generator.setWarmUpIds(Arrays.asList("01", "99"));
+        try {
+            generator.initialize();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("id was not found. id:99"));
+        }
+    }
+
+    /**
+     * ウォームアップのテスト
+     * トランザクションマネージャが設定されていない場合、初期化時に例外が送出されること。
+     */
+    @Test
+    public void warmUpWithoutTransactionManager() throws Exception {
+        TableIdGenerator generator = repositoryResource.getComponent("idgenerator");
+        generator.setWarmUpIds(Arrays.asList("01"));
+        try {
+            generator.initialize();
+            fail("");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("warmUpDbTransactionManager must be set when warmUpIds is set."));
+        }
+    }
+
+    /**
+     * 採番対象IDを読み込む場合のテスト
+     * 最初の採番時に読み込まれ、読み込んでいない採番対象IDは採番テーブルを更新せずにエラーとなること。
+     */
+    @Test
+    public void generateWithPreloadedIds() throws Exception {
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(100L)));
+
+        TableIdGenerator generator = repositoryResource.getComponent("idgenerator-preload");
+        generator.initialize();
+        SimpleDbTransactionManager db = repositoryResource.getComponent("dbManager-default");
+        db.beginTransaction();
+        try {
+            assertThat(generator.generateLongId("01"), is(101L));
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+
+        VariousDbTestHelper.setUpTable(
+                new SbnTbl("01", new BigDecimal(101L)),
+                new SbnTbl("02", new BigDecimal(0L)));
+        db.beginTransaction();
+        try {
+            try {
+                generator.generateLongId("02");
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("id was not found. id:02"));
+            }
+            try {
+                generator.generateIds("02", 3);
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("id was not found. id:02"));
+            }
+            Map<String, Integer> counts = new HashMap<String, Integer>();
+            counts.put("01", 1);
+            counts.put("02", 1);
+            try {
+                generator.generateIds(counts);
+                fail("");
+            } catch (IllegalStateException e) {
+                assertThat(e.getMessage(), is("id was not found. id:02"));
+            }
+            db.commitTransaction();
+        } finally {
+            db.endTransaction();
+        }
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "01").noCol, is(new BigDecimal(101L)));
+        assertThat(VariousDbTestHelper.findById(SbnTbl.class, "02").noCol, is(BigDecimal.ZERO));
+    }
+}
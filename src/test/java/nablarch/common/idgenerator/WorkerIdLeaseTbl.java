@@ -0,0 +1,33 @@
+package nablarch.common.idgenerator;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * ワーカーID貸出テーブル
+ */
+@Entity
+@Table(name = "WORKER_ID_LEASE")
+public class WorkerIdLeaseTbl {
+
+    public WorkerIdLeaseTbl() {
+    }
+
+    public WorkerIdLeaseTbl(Integer workerId, String owner, Long expiresAt) {
+        this.workerId = workerId;
+        this.owner = owner;
+        this.expiresAt = expiresAt;
+    }
+
+    @Id
+    @Column(name = "WORKER_ID", length = 4, nullable = false)
+    public Integer workerId;
+
+    @Column(name = "OWNER", length = 128, nullable = false)
+    public String owner;
+
+    @Column(name = "EXPIRES_AT", length = 19, nullable = false)
+    public Long expiresAt;
+}